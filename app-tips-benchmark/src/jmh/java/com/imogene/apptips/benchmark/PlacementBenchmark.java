@@ -0,0 +1,63 @@
+package com.imogene.apptips.benchmark;
+
+import com.imogene.apptips.placement.Placement;
+import com.imogene.apptips.placement.PlacementEngine;
+import com.imogene.apptips.placement.PlacementInput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the placement of a single tip: the alignment decision
+ * that is made when the alignment is {@code ALIGN_AUTO} and the
+ * computation of the position and pointer for a known alignment,
+ * with both the rules and the scored strategies.
+ */
+@State(Scope.Thread)
+public class PlacementBenchmark {
+
+    private PlacementInput[] autoInputs;
+    private PlacementInput[] fixedInputs;
+    private PlacementInput[] scoredInputs;
+    private final Placement placement = new Placement();
+    private int index;
+
+    @Setup
+    public void setUp(){
+        autoInputs = Scenarios.newPlacementInputs(42L, PlacementEngine.ALIGN_AUTO);
+        fixedInputs = Scenarios.newPlacementInputs(42L, 0);
+        scoredInputs = Scenarios.newPlacementInputs(42L, PlacementEngine.ALIGN_AUTO);
+        for(PlacementInput input : scoredInputs){
+            input.setStrategy(PlacementEngine.STRATEGY_SCORED);
+        }
+    }
+
+    @Benchmark
+    public int determineAlignment(){
+        index = Scenarios.next(index);
+        return PlacementEngine.determineAlignment(autoInputs[index]);
+    }
+
+    @Benchmark
+    public int placeAutoAlignment(){
+        index = Scenarios.next(index);
+        PlacementEngine.place(autoInputs[index], placement);
+        return placement.getX() + placement.getY() + placement.getPointerOffset();
+    }
+
+    @Benchmark
+    public int placeFixedAlignment(){
+        index = Scenarios.next(index);
+        PlacementEngine.place(fixedInputs[index], placement);
+        return placement.getX() + placement.getY() + placement.getPointerOffset();
+    }
+
+    @Benchmark
+    public int placeScoredAlignment(){
+        index = Scenarios.next(index);
+        PlacementEngine.place(scoredInputs[index], placement);
+        return placement.getX() + placement.getY() + placement.getPointerOffset();
+    }
+}
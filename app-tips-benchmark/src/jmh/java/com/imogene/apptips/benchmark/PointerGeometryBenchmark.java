@@ -0,0 +1,60 @@
+package com.imogene.apptips.benchmark;
+
+import com.imogene.apptips.placement.PointerGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures the computation of the pointer triangle of a tip view.
+ * The computation runs whenever the size, mode or pointer of a tip
+ * view changes and on every frame of the pointer animations.
+ */
+@State(Scope.Thread)
+public class PointerGeometryBenchmark {
+
+    private final int[] modes = new int[Scenarios.COUNT];
+    private final int[] widths = new int[Scenarios.COUNT];
+    private final int[] heights = new int[Scenarios.COUNT];
+    private final int[] pointerSizes = new int[Scenarios.COUNT];
+    private final float[] positions = new float[Scenarios.COUNT];
+    private final int[] offsets = new int[Scenarios.COUNT];
+    private final float[] protrusions = new float[Scenarios.COUNT];
+    private final float[] points = new float[PointerGeometry.POINTS_SIZE];
+    private int index;
+
+    @Setup
+    public void setUp(){
+        Random random = new Random(42L);
+        for(int i = 0; i < Scenarios.COUNT; i++){
+            float density = 2F + random.nextInt(3);
+            modes[i] = random.nextInt(4);
+            pointerSizes[i] = Scenarios.dp(12, density);
+            widths[i] = Scenarios.dp(144 + random.nextInt(105), density);
+            heights[i] = Scenarios.dp(36 + random.nextInt(61), density) + pointerSizes[i];
+            positions[i] = 0.1F + random.nextFloat() * 0.8F;
+            offsets[i] = random.nextBoolean() ? 0 : random.nextInt(widths[i] / 2) - widths[i] / 4;
+            protrusions[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public float computePoints(){
+        final int i = index = Scenarios.next(index);
+        PointerGeometry.computePoints(modes[i], widths[i], heights[i], pointerSizes[i],
+                positions[i], offsets[i], 1F, points);
+        return points[0] + points[3] + points[4];
+    }
+
+    @Benchmark
+    public float computePointsDuringAnimation(){
+        final int i = index = Scenarios.next(index);
+        PointerGeometry.computePoints(modes[i], widths[i], heights[i], pointerSizes[i],
+                positions[i], offsets[i], protrusions[i], points);
+        return points[0] + points[3] + points[4];
+    }
+}
@@ -0,0 +1,57 @@
+package com.imogene.apptips.benchmark;
+
+import com.imogene.apptips.placement.Placement;
+import com.imogene.apptips.placement.PlacementInput;
+import com.imogene.apptips.placement.PortionSolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the placement of a whole portion of tips with the collision
+ * avoidance: adding the tips to the solver, solving and reading the
+ * placements back, i.e. all the work done per portion.
+ */
+@State(Scope.Thread)
+public class PortionSolverBenchmark {
+
+    private static final int SCREEN = 1;
+
+    @Param({"4", "16", "64"})
+    public int tipCount;
+
+    private PlacementInput[] inputs;
+    private final PortionSolver solver = new PortionSolver();
+    private final Placement placement = new Placement();
+    private int frameTop;
+    private int frameRight;
+    private int frameBottom;
+
+    @Setup
+    public void setUp(){
+        inputs = Scenarios.newPortionInputs(42L, SCREEN, tipCount);
+        frameTop = Scenarios.getFrameTop(SCREEN);
+        frameRight = Scenarios.getFrameWidth(SCREEN);
+        frameBottom = Scenarios.getFrameHeight(SCREEN);
+    }
+
+    @Benchmark
+    public int solvePortion(){
+        final PortionSolver solver = this.solver;
+        final PlacementInput[] inputs = this.inputs;
+        solver.reset(0, frameTop, frameRight, frameBottom);
+        for(PlacementInput input : inputs){
+            solver.addTip(input);
+        }
+        solver.solve();
+        int sum = 0;
+        for(int i = 0; i < inputs.length; i++){
+            solver.getPlacement(i, placement);
+            sum += placement.getX() + placement.getY();
+        }
+        return sum;
+    }
+}
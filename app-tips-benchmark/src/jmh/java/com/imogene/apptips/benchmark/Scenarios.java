@@ -0,0 +1,159 @@
+package com.imogene.apptips.benchmark;
+
+import com.imogene.apptips.placement.PlacementEngine;
+import com.imogene.apptips.placement.PlacementInput;
+
+import java.util.Random;
+
+/**
+ * Generates realistic placement inputs: common phone screens with
+ * a status bar and the typical targets of the tips such as toolbar
+ * actions, floating action buttons, list items, buttons and cards.
+ * The inputs are generated with a fixed seed, so that every run of
+ * the benchmarks measures the same distribution.
+ */
+final class Scenarios {
+
+    /** Number of generated inputs. It is a power of two. */
+    static final int COUNT = 1024;
+
+    private static final int MASK = COUNT - 1;
+
+    // width, height (in pixels) and density of the screens
+    private static final float[][] SCREENS = {
+            {720, 1280, 2F},
+            {1080, 1920, 3F},
+            {1080, 2340, 2.75F},
+            {1440, 2560, 4F}
+    };
+
+    private static final int STATUS_BAR_DP = 24;
+    private static final int POINTER_SIZE_DP = 12;
+
+    private static final int TARGET_TOOLBAR_ACTION = 0;
+    private static final int TARGET_FAB = 1;
+    private static final int TARGET_LIST_ITEM = 2;
+    private static final int TARGET_BUTTON = 3;
+    private static final int TARGET_CARD = 4;
+    private static final int TARGET_POINT = 5;
+    private static final int TARGET_TYPES = 6;
+
+    private Scenarios(){}
+
+    static int next(int index){
+        return (index + 1) & MASK;
+    }
+
+    /**
+     * Generates the inputs with the given alignment. If the alignment
+     * is {@code 0} every input gets a random fixed alignment.
+     */
+    static PlacementInput[] newPlacementInputs(long seed, int align){
+        Random random = new Random(seed);
+        PlacementInput[] inputs = new PlacementInput[COUNT];
+        for(int i = 0; i < COUNT; i++){
+            PlacementInput input = new PlacementInput();
+            float[] screen = SCREENS[random.nextInt(SCREENS.length)];
+            int width = (int) screen[0];
+            int height = (int) screen[1];
+            float density = screen[2];
+            int statusBar = dp(STATUS_BAR_DP, density);
+            input.setVisibleFrame(0, statusBar, width, height);
+            setRandomTarget(input, random, width, height, statusBar, density);
+
+            int pointerSize = dp(POINTER_SIZE_DP, density);
+            int tipWidth = dp(144 + random.nextInt(105), density);
+            int tipHeight = dp(36 + random.nextInt(61), density) + pointerSize;
+            input.setTipSize(tipWidth, tipHeight, pointerSize);
+
+            int offset = random.nextInt(4) == 0 ? dp(8, density) : 0;
+            input.setOffsets(offset, offset);
+            input.setAlign(align != 0 ? align :
+                    PlacementEngine.ALIGN_LEFT_ABOVE + random.nextInt(13));
+            inputs[i] = input;
+        }
+        return inputs;
+    }
+
+    /**
+     * Generates the inputs of the tips shown together on the given
+     * screen (see {@link #SCREENS}), all with the automatic alignment.
+     */
+    static PlacementInput[] newPortionInputs(long seed, int screenIndex, int count){
+        Random random = new Random(seed);
+        float[] screen = SCREENS[screenIndex];
+        int width = (int) screen[0];
+        int height = (int) screen[1];
+        float density = screen[2];
+        int statusBar = dp(STATUS_BAR_DP, density);
+        int pointerSize = dp(POINTER_SIZE_DP, density);
+        PlacementInput[] inputs = new PlacementInput[count];
+        for(int i = 0; i < count; i++){
+            PlacementInput input = new PlacementInput();
+            input.setVisibleFrame(0, statusBar, width, height);
+            setRandomTarget(input, random, width, height, statusBar, density);
+            int tipWidth = dp(96 + random.nextInt(65), density);
+            int tipHeight = dp(36 + random.nextInt(25), density) + pointerSize;
+            input.setTipSize(tipWidth, tipHeight, pointerSize);
+            inputs[i] = input;
+        }
+        return inputs;
+    }
+
+    static int getFrameWidth(int screenIndex){
+        return (int) SCREENS[screenIndex][0];
+    }
+
+    static int getFrameHeight(int screenIndex){
+        return (int) SCREENS[screenIndex][1];
+    }
+
+    static int getFrameTop(int screenIndex){
+        return dp(STATUS_BAR_DP, SCREENS[screenIndex][2]);
+    }
+
+    private static void setRandomTarget(PlacementInput input, Random random, int width,
+                                        int height, int statusBar, float density){
+        final int x, y, targetWidth, targetHeight;
+        switch (random.nextInt(TARGET_TYPES)){
+            case TARGET_TOOLBAR_ACTION:
+                targetWidth = targetHeight = dp(48, density);
+                x = width - targetWidth * (1 + random.nextInt(3));
+                y = statusBar + dp(4, density);
+                break;
+            case TARGET_FAB:
+                targetWidth = targetHeight = dp(56, density);
+                x = width - targetWidth - dp(16, density);
+                y = height - targetHeight - dp(16, density);
+                break;
+            case TARGET_LIST_ITEM:
+                targetWidth = width;
+                targetHeight = dp(72, density);
+                x = 0;
+                y = statusBar + random.nextInt(height - statusBar - targetHeight);
+                break;
+            case TARGET_BUTTON:
+                targetWidth = dp(88, density);
+                targetHeight = dp(36, density);
+                x = random.nextInt(width - targetWidth);
+                y = statusBar + random.nextInt(height - statusBar - targetHeight);
+                break;
+            case TARGET_CARD:
+                targetWidth = width - dp(32, density);
+                targetHeight = dp(160 + random.nextInt(160), density);
+                x = dp(16, density);
+                y = statusBar + random.nextInt(height - statusBar - targetHeight);
+                break;
+            default:
+                targetWidth = targetHeight = 0;
+                x = random.nextInt(width);
+                y = statusBar + random.nextInt(height - statusBar);
+                break;
+        }
+        input.setTarget(x, y, targetWidth, targetHeight);
+    }
+
+    static int dp(int value, float density){
+        return (int) (value * density + 0.5F);
+    }
+}
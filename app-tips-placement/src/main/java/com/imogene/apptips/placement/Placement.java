@@ -0,0 +1,71 @@
+package com.imogene.apptips.placement;
+
+/**
+ * The result of a placement computed by the {@link PlacementEngine}:
+ * the resolved alignment, the position of the tip view and the
+ * position of the pointer.
+ * <p>
+ * The object is mutable and is intended to be owned by the caller
+ * and reused for any number of placements.
+ */
+public final class Placement {
+
+    /** The pointer position is not changed by the placement. */
+    public static final int POINTER_UNCHANGED = 0;
+
+    /** The pointer must be centered along the appropriate side. */
+    public static final int POINTER_CENTER = 1;
+
+    /** The pointer must be moved by the {@link #getPointerOffset()}. */
+    public static final int POINTER_OFFSET = 2;
+
+    int align;
+    int x;
+    int y;
+    int pointerMode;
+    int pointerOffset;
+
+    /**
+     * Returns the resolved alignment. It is never
+     * {@link PlacementEngine#ALIGN_AUTO}.
+     * @return resolved alignment.
+     */
+    public int getAlign() {
+        return align;
+    }
+
+    /**
+     * Returns the X coordinate of the tip view.
+     * @return X coordinate of the tip view.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the Y coordinate of the tip view.
+     * @return Y coordinate of the tip view.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns how the pointer must be positioned. One of the
+     * {@link #POINTER_UNCHANGED}, {@link #POINTER_CENTER} or
+     * {@link #POINTER_OFFSET}.
+     * @return pointer mode.
+     */
+    public int getPointerMode() {
+        return pointerMode;
+    }
+
+    /**
+     * Returns the offset of the pointer in pixels. This value makes
+     * sense only if the pointer mode is {@link #POINTER_OFFSET}.
+     * @return offset of the pointer.
+     */
+    public int getPointerOffset() {
+        return pointerOffset;
+    }
+}
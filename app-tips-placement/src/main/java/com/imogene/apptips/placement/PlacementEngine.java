@@ -0,0 +1,478 @@
+package com.imogene.apptips.placement;
+
+/**
+ * Computes the alignment, position and pointer position of a tip by
+ * the geometry of it's target, the size of the tip view and the visible
+ * frame of the window. The engine does not depend on the Android
+ * framework and does not allocate, so it can be called on any thread
+ * and as often as needed.
+ * <p>
+ * Simple example:
+ * <pre><code>
+ * PlacementInput input = new PlacementInput();
+ * Placement placement = new Placement();
+ *
+ * input.setTarget(targetX, targetY, targetWidth, targetHeight)
+ *         .setTipSize(tipWidth, tipHeight, pointerSize)
+ *         .setVisibleFrame(0, statusBarHeight, screenWidth, screenHeight);
+ * PlacementEngine.place(input, placement);
+ *
+ * int x = placement.getX();
+ * int y = placement.getY();
+ * </code></pre>
+ */
+public final class PlacementEngine {
+
+    // the alignment constants have the same values as the
+    // corresponding constants of the com.imogene.apptips.Tip
+
+    public static final int ALIGN_LEFT_ABOVE = 1;
+    public static final int ALIGN_LEFT_BELOW = 2;
+    public static final int ALIGN_RIGHT_ABOVE = 3;
+    public static final int ALIGN_RIGHT_BELOW = 4;
+    public static final int ALIGN_CENTER_ABOVE = 5;
+    public static final int ALIGN_CENTER_BELOW = 6;
+    public static final int ALIGN_LEFT = 7;
+    public static final int ALIGN_RIGHT = 8;
+    public static final int ALIGN_LEFT_TOP = 9;
+    public static final int ALIGN_LEFT_BOTTOM = 10;
+    public static final int ALIGN_RIGHT_TOP = 11;
+    public static final int ALIGN_RIGHT_BOTTOM = 12;
+    public static final int ALIGN_CENTER_INSIDE = 13;
+    public static final int ALIGN_AUTO = 14;
+
+    /**
+     * Placement strategy. The alignment is determined by a fixed set of
+     * rules that checks where the tip fits in the order of preference,
+     * the tip is placed exactly at the chosen side even if it does not
+     * fit the visible frame. This is the default strategy.
+     */
+    public static final int STRATEGY_RULES = 1;
+
+    /**
+     * Placement strategy. All the alignments are scored by the area of
+     * the tip that is out of the visible frame, the area of the target
+     * covered by the tip, the skew of the pointer and the distance to
+     * the target. The tip is clamped to the visible frame and the
+     * pointer is aimed at the target again after the clamping.
+     */
+    public static final int STRATEGY_SCORED = 2;
+
+    /**
+     * The alignments in the order of preference, the first of
+     * the equally scored alignments is chosen.
+     */
+    static final int[] CANDIDATE_ALIGNMENTS = {
+            ALIGN_CENTER_ABOVE,
+            ALIGN_CENTER_BELOW,
+            ALIGN_RIGHT,
+            ALIGN_LEFT,
+            ALIGN_LEFT_ABOVE,
+            ALIGN_RIGHT_ABOVE,
+            ALIGN_LEFT_BELOW,
+            ALIGN_RIGHT_BELOW,
+            ALIGN_RIGHT_TOP,
+            ALIGN_RIGHT_BOTTOM,
+            ALIGN_LEFT_TOP,
+            ALIGN_LEFT_BOTTOM,
+            ALIGN_CENTER_INSIDE
+    };
+
+    // the weights of the scored strategy
+    private static final long OVERFLOW_WEIGHT = 16;
+    private static final long COVER_WEIGHT = 8;
+    private static final long UNREACHABLE_WEIGHT = 64;
+    private static final long SKEW_WEIGHT = 4;
+    private static final long DISTANCE_WEIGHT = 1;
+
+    private PlacementEngine(){}
+
+    /**
+     * Places the tip described by the given input and writes the
+     * result to the specified placement object.
+     * @param input geometry of the tip.
+     * @param result the object to write the result to.
+     */
+    public static void place(PlacementInput input, Placement result){
+        int align = input.align;
+        if(align == ALIGN_AUTO){
+            align = determineAlignment(input);
+        }
+        result.align = align;
+        if(input.autoPointerPositionEnabled){
+            computePointer(input, align, result);
+        } else {
+            result.pointerMode = Placement.POINTER_UNCHANGED;
+            result.pointerOffset = 0;
+        }
+        computePosition(input, align, result);
+        if(input.strategy == STRATEGY_SCORED){
+            clampToFrame(input, align, result);
+        }
+    }
+
+    /**
+     * Determines the most appropriate alignment for the tip by the
+     * position and size of the target. With the {@link #STRATEGY_RULES}
+     * returns {@link #ALIGN_CENTER_INSIDE} if the tip does not fit
+     * anywhere around the target, with the {@link #STRATEGY_SCORED}
+     * returns the alignment with the lowest score.
+     * @param input geometry of the tip.
+     * @return determined alignment.
+     */
+    public static int determineAlignment(PlacementInput input){
+        if(input.strategy == STRATEGY_SCORED){
+            return determineScoredAlignment(input);
+        }
+        final int availableWidth = input.frameRight - input.frameLeft;
+        final int availableHeight = input.frameBottom - input.frameTop;
+        final int targetX = input.targetX;
+        final int targetY = input.targetY - input.frameTop;
+        final int targetWidth = input.targetWidth;
+        final int targetHeight = input.targetHeight;
+
+        final int offsetX = input.horizontalOffset;
+        final int offsetY = input.verticalOffset;
+
+        final int availableAbove = targetY - offsetY;
+        final int availableBelow = availableHeight - (targetY + targetHeight + offsetY);
+        final int availableToRight = availableWidth - (targetX + targetWidth + offsetX);
+        final int availableToLeft = targetX - offsetX;
+
+        final int tipHeight = input.tipHeight;
+        final int tipWidth = input.tipWidth;
+
+        final boolean canAlignAbove = availableAbove >= tipHeight;
+        final boolean canAlignBelow = availableBelow >= tipHeight;
+        final boolean canAlignToRight = availableToRight >= tipWidth;
+        final boolean canAlignToLeft = availableToLeft >= tipWidth;
+
+        final boolean canAlignVertically = canAlignAbove || canAlignBelow;
+        final boolean canAlignHorizontally = canAlignToRight || canAlignToLeft;
+
+        if(!(canAlignVertically || canAlignHorizontally)){
+            return ALIGN_CENTER_INSIDE;
+        }
+
+        if(canAlignVertically){
+            final boolean canCenterHorizontally;
+            if(tipWidth <= targetWidth){
+                canCenterHorizontally = true;
+            } else {
+                int delta = (tipWidth - targetWidth) / 2;
+                int left = targetX - delta;
+                int right = targetX + targetWidth + delta;
+                boolean fitToLeft = left >= 0;
+                boolean fitToRight = right <= input.frameRight;
+                canCenterHorizontally = fitToLeft && fitToRight;
+            }
+
+            if(canCenterHorizontally){
+                boolean above = availableAbove >= availableBelow;
+                return above ? ALIGN_CENTER_ABOVE : ALIGN_CENTER_BELOW;
+            }
+        }
+
+        if(canAlignHorizontally){
+            final boolean canCenterVertically;
+            if(tipHeight <= targetHeight){
+                canCenterVertically = true;
+            } else {
+                int delta = (tipHeight - targetHeight) / 2;
+                int top = targetY - delta;
+                int bottom = targetY + targetHeight + delta;
+                boolean fitAbove = top >= 0;
+                boolean fitBelow = bottom <= input.frameBottom;
+                canCenterVertically = fitAbove && fitBelow;
+            }
+
+            if(canCenterVertically){
+                boolean toRight = availableToRight >= availableToLeft;
+                return toRight ? ALIGN_RIGHT : ALIGN_LEFT;
+            }
+        }
+
+        if(canAlignVertically){
+            boolean above = availableAbove >= availableBelow;
+            boolean toLeft = availableToLeft <= availableToRight;
+            return above ? toLeft ? ALIGN_LEFT_ABOVE :
+                    ALIGN_RIGHT_ABOVE : toLeft ?
+                    ALIGN_LEFT_BELOW : ALIGN_RIGHT_BELOW;
+        } else {
+            boolean toRight = availableToRight >= availableToLeft;
+            boolean top = availableAbove <= availableBelow;
+            return toRight ? top ? ALIGN_RIGHT_TOP :
+                    ALIGN_RIGHT_BOTTOM : top ?
+                    ALIGN_LEFT_TOP : ALIGN_LEFT_BOTTOM;
+        }
+    }
+
+    /**
+     * Scores all the alignments at their clamped positions and returns
+     * the one with the lowest score. The scratch placement of the input
+     * is used, so nothing is allocated.
+     */
+    private static int determineScoredAlignment(PlacementInput input){
+        final Placement placement = input.scratch;
+        final int[] alignments = CANDIDATE_ALIGNMENTS;
+        int bestAlign = alignments[0];
+        long bestScore = Long.MAX_VALUE;
+        for(int align : alignments){
+            if(input.autoPointerPositionEnabled){
+                computePointer(input, align, placement);
+            } else {
+                placement.pointerOffset = 0;
+            }
+            computePosition(input, align, placement);
+            final int x = placement.x;
+            final int y = placement.y;
+            clampToFrame(input, align, placement);
+            final long score = score(input, align, placement,
+                    x != placement.x || y != placement.y);
+            if(score < bestScore){
+                bestScore = score;
+                bestAlign = align;
+            }
+        }
+        return bestAlign;
+    }
+
+    /**
+     * Scores the placed tip, the lower score is the better.
+     */
+    private static long score(PlacementInput input, int align, Placement placement,
+                              boolean clamped){
+        final int left = placement.x;
+        final int top = placement.y;
+        final int right = left + input.tipWidth;
+        final int bottom = top + input.tipHeight;
+        final long area = (long) input.tipWidth * input.tipHeight;
+        long score = OVERFLOW_WEIGHT * (area - intersection(left, top, right, bottom,
+                input.frameLeft, input.frameTop, input.frameRight, input.frameBottom));
+
+        // a point target is treated as a square of the pointer size
+        final int pointerSize = input.pointerSize;
+        final int targetCenterX = input.targetX + input.targetWidth / 2;
+        final int targetCenterY = input.targetY + input.targetHeight / 2;
+        final int halfWidth = Math.max(input.targetWidth, pointerSize) / 2;
+        final int halfHeight = Math.max(input.targetHeight, pointerSize) / 2;
+        score += COVER_WEIGHT * intersection(left, top, right, bottom,
+                targetCenterX - halfWidth, targetCenterY - halfHeight,
+                targetCenterX + halfWidth, targetCenterY + halfHeight);
+
+        final int offset = placement.pointerOffset;
+        score += SKEW_WEIGHT * Math.abs(offset);
+        if(clamped){
+            // the pointer can not reach the target if the tip is
+            // shifted farther than the half of it's side
+            final int side = isHorizontal(align) ? input.tipHeight : input.tipWidth;
+            final int excess = Math.abs(offset) - getMaxPointerOffset(side, pointerSize);
+            if(excess > 0){
+                score += UNREACHABLE_WEIGHT * excess;
+            }
+        }
+        score += DISTANCE_WEIGHT * (Math.abs((left + right) / 2 - targetCenterX) +
+                Math.abs((top + bottom) / 2 - targetCenterY));
+        return score;
+    }
+
+    /**
+     * Moves the placed tip inside the visible frame (to it's top left
+     * corner if the tip is larger than the frame) and moves the pointer
+     * back by the shift along the side of the pointer, so that it keeps
+     * looking at the target.
+     */
+    static void clampToFrame(PlacementInput input, int align, Placement result){
+        final int x = clamp(result.x, input.frameLeft, input.frameRight - input.tipWidth);
+        final int y = clamp(result.y, input.frameTop, input.frameBottom - input.tipHeight);
+        final int shift;
+        final int side;
+        if(isHorizontal(align)){
+            shift = y - result.y;
+            side = input.tipHeight;
+        } else {
+            shift = x - result.x;
+            side = input.tipWidth;
+        }
+        result.x = x; result.y = y;
+        if(shift == 0 || !input.autoPointerPositionEnabled){
+            return;
+        }
+        final int maxOffset = getMaxPointerOffset(side, input.pointerSize);
+        final int offset = clamp(result.pointerOffset - shift, -maxOffset, maxOffset);
+        result.pointerMode = offset != 0 ?
+                Placement.POINTER_OFFSET : Placement.POINTER_CENTER;
+        result.pointerOffset = offset;
+    }
+
+    /**
+     * Returns the largest offset of the pointer from the center of the
+     * side of the given length, so that the pointer stays on the side.
+     */
+    private static int getMaxPointerOffset(int side, int pointerSize){
+        return Math.max(0, side / 2 - pointerSize);
+    }
+
+    private static int clamp(int value, int min, int max){
+        return Math.max(min, Math.min(max, value));
+    }
+
+    static long intersection(int left1, int top1, int right1, int bottom1,
+                             int left2, int top2, int right2, int bottom2){
+        final long width = Math.min(right1, right2) - Math.max(left1, left2);
+        final long height = Math.min(bottom1, bottom2) - Math.max(top1, top2);
+        return width > 0 && height > 0 ? width * height : 0;
+    }
+
+    /**
+     * Checks whether the pointer is on the left or right
+     * side of the tip with the given alignment.
+     */
+    static boolean isHorizontal(int align){
+        switch (align){
+            case ALIGN_LEFT:
+            case ALIGN_RIGHT:
+            case ALIGN_LEFT_TOP:
+            case ALIGN_LEFT_BOTTOM:
+            case ALIGN_RIGHT_TOP:
+            case ALIGN_RIGHT_BOTTOM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Computes the position of the pointer for the given resolved
+     * alignment so that the pointer looks at the center of the target.
+     */
+    static void computePointer(PlacementInput input, int align, Placement result){
+        final int tipWidth = input.tipWidth;
+        final int tipHeight = input.tipHeight;
+        final int targetWidth = input.targetWidth;
+        final int targetHeight = input.targetHeight;
+        int offset = 0;
+
+        switch (align) {
+            case ALIGN_CENTER_ABOVE:
+            case ALIGN_CENTER_BELOW:
+            case ALIGN_RIGHT:
+            case ALIGN_LEFT:
+            case ALIGN_CENTER_INSIDE:
+                break;
+            case ALIGN_RIGHT_ABOVE:
+            case ALIGN_LEFT_ABOVE:
+            case ALIGN_RIGHT_BELOW:
+            case ALIGN_LEFT_BELOW:
+                if(tipWidth > targetWidth){
+                    offset = (tipWidth - targetWidth) / 2;
+                    if(align == ALIGN_LEFT_ABOVE || align == ALIGN_LEFT_BELOW){
+                        offset *= -1;
+                    }
+                }
+                break;
+            default:
+                if(tipHeight > targetHeight){
+                    offset = (tipHeight - targetHeight) / 2;
+                    if(align == ALIGN_RIGHT_TOP || align == ALIGN_LEFT_TOP){
+                        offset *= -1;
+                    }
+                }
+                break;
+        }
+
+        if(offset != 0){
+            result.pointerMode = Placement.POINTER_OFFSET;
+        } else {
+            result.pointerMode = Placement.POINTER_CENTER;
+        }
+        result.pointerOffset = offset;
+    }
+
+    /**
+     * Calculates the absolute position of the tip view for the given
+     * resolved alignment according to the absolute position and size
+     * of the target.
+     */
+    static void computePosition(PlacementInput input, int align, Placement result){
+        final int targetX = input.targetX;
+        final int targetY = input.targetY;
+        final int targetWidth = input.targetWidth;
+        final int targetHeight = input.targetHeight;
+        final int tipHeight = input.tipHeight;
+        final int tipWidth = input.tipWidth;
+        final int offsetX = input.horizontalOffset;
+        final int offsetY = input.verticalOffset;
+        int delta;
+        final int x, y;
+        switch (align){
+            case ALIGN_LEFT_BELOW:
+                x = targetX + offsetX;
+                y = targetY + targetHeight + offsetY;
+                break;
+            case ALIGN_RIGHT_BELOW:
+                delta = targetWidth - tipWidth;
+                x = targetX + delta + offsetX;
+                y = targetY + targetHeight + offsetY;
+                break;
+            case ALIGN_CENTER_BELOW:
+                delta = (targetWidth - tipWidth) / 2;
+                x = targetX + delta + offsetX;
+                y = targetY + targetHeight + offsetY;
+                break;
+            case ALIGN_LEFT_ABOVE:
+                x = targetX + offsetX;
+                y = targetY - tipHeight - offsetY;
+                break;
+            case ALIGN_RIGHT_ABOVE:
+                delta = targetWidth - tipWidth;
+                x = targetX + delta + offsetX;
+                y = targetY - tipHeight - offsetY;
+                break;
+            case ALIGN_CENTER_ABOVE:
+                delta = (targetWidth - tipWidth) / 2;
+                x = targetX + delta + offsetX;
+                y = targetY - tipHeight - offsetY;
+                break;
+            case ALIGN_LEFT:
+                x = targetX - tipWidth - offsetX;
+                delta = (targetHeight - tipHeight) / 2;
+                y = targetY + delta + offsetY;
+                break;
+            case ALIGN_LEFT_TOP:
+                x = targetX - tipWidth - offsetX;
+                y = targetY + offsetY;
+                break;
+            case ALIGN_LEFT_BOTTOM:
+                x = targetX - tipWidth - offsetX;
+                delta = targetHeight - tipHeight;
+                y = targetY + delta - offsetY;
+                break;
+            case ALIGN_RIGHT:
+                x = targetX + targetWidth + offsetX;
+                delta = (targetHeight - tipHeight) / 2;
+                y = targetY + delta + offsetY;
+                break;
+            case ALIGN_RIGHT_TOP:
+                x = targetX + targetWidth + offsetX;
+                y = targetY + offsetY;
+                break;
+            case ALIGN_RIGHT_BOTTOM:
+                x = targetX + targetWidth + offsetX;
+                delta = targetHeight - tipHeight;
+                y = targetY + delta - offsetY;
+                break;
+            case ALIGN_CENTER_INSIDE:
+                delta = (targetWidth - tipWidth) / 2;
+                x = targetX + delta + offsetX;
+                int tipBodyHeight = tipHeight - input.pointerSize;
+                delta = (targetHeight - tipBodyHeight) / 2;
+                y = targetY + delta + offsetY;
+                break;
+            default:
+                x = 0; y = 0;
+                break;
+        }
+        result.x = x; result.y = y;
+    }
+}
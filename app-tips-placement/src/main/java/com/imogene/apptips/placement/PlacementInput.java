@@ -0,0 +1,138 @@
+package com.imogene.apptips.placement;
+
+/**
+ * Holds the geometry the {@link PlacementEngine} needs to place a
+ * single tip: the target rectangle, the size of the tip view, the
+ * visible frame of the window and the offsets of the tip. All the
+ * values are in screen pixels.
+ * <p>
+ * The object is mutable and is intended to be owned by the caller
+ * and reused for any number of placements, so that the placement
+ * itself does not allocate.
+ */
+public final class PlacementInput {
+
+    int targetX;
+    int targetY;
+    int targetWidth;
+    int targetHeight;
+
+    int tipWidth;
+    int tipHeight;
+    int pointerSize;
+
+    int frameLeft;
+    int frameTop;
+    int frameRight;
+    int frameBottom;
+
+    int horizontalOffset;
+    int verticalOffset;
+
+    int align = PlacementEngine.ALIGN_AUTO;
+    boolean autoPointerPositionEnabled = true;
+    int strategy = PlacementEngine.STRATEGY_RULES;
+
+    // the candidates of the scored strategy are placed
+    // here, so that the placement does not allocate
+    final Placement scratch = new Placement();
+
+    /**
+     * Sets the position and size of the target. The point targets
+     * have zero width and height.
+     * @param x X coordinate of the target.
+     * @param y Y coordinate of the target.
+     * @param width width of the target.
+     * @param height height of the target.
+     * @return this object.
+     */
+    public PlacementInput setTarget(int x, int y, int width, int height){
+        targetX = x;
+        targetY = y;
+        targetWidth = width;
+        targetHeight = height;
+        return this;
+    }
+
+    /**
+     * Sets the size of the tip view including the pointer and the
+     * size of the pointer itself.
+     * @param width width of the tip view.
+     * @param height height of the tip view.
+     * @param pointerSize size of the pointer triangle.
+     * @return this object.
+     */
+    public PlacementInput setTipSize(int width, int height, int pointerSize){
+        tipWidth = width;
+        tipHeight = height;
+        this.pointerSize = pointerSize;
+        return this;
+    }
+
+    /**
+     * Sets the visible display frame of the window in which the tip
+     * is shown.
+     * @param left left side of the frame.
+     * @param top top side of the frame.
+     * @param right right side of the frame.
+     * @param bottom bottom side of the frame.
+     * @return this object.
+     */
+    public PlacementInput setVisibleFrame(int left, int top, int right, int bottom){
+        frameLeft = left;
+        frameTop = top;
+        frameRight = right;
+        frameBottom = bottom;
+        return this;
+    }
+
+    /**
+     * Sets the horizontal and vertical offsets of the tip view.
+     * @param horizontalOffset horizontal offset of the tip view.
+     * @param verticalOffset vertical offset of the tip view.
+     * @return this object.
+     */
+    public PlacementInput setOffsets(int horizontalOffset, int verticalOffset){
+        this.horizontalOffset = horizontalOffset;
+        this.verticalOffset = verticalOffset;
+        return this;
+    }
+
+    /**
+     * Sets the requested alignment of the tip. If the alignment is
+     * {@link PlacementEngine#ALIGN_AUTO} the engine determines it.
+     * @param align requested alignment.
+     * @return this object.
+     */
+    public PlacementInput setAlign(int align){
+        this.align = align;
+        return this;
+    }
+
+    /**
+     * Specifies whether the engine should compute the pointer position.
+     * @param enabled {@code true} to compute the pointer position.
+     * @return this object.
+     */
+    public PlacementInput setAutoPointerPositionEnabled(boolean enabled){
+        autoPointerPositionEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the strategy of the placement. Can be either
+     * {@link PlacementEngine#STRATEGY_RULES} (the default) or
+     * {@link PlacementEngine#STRATEGY_SCORED}.
+     * @param strategy the placement strategy.
+     * @return this object.
+     */
+    public PlacementInput setStrategy(int strategy){
+        if(strategy != PlacementEngine.STRATEGY_RULES &&
+                strategy != PlacementEngine.STRATEGY_SCORED){
+            throw new IllegalArgumentException(
+                    "Unsupported strategy: " + strategy + ".");
+        }
+        this.strategy = strategy;
+        return this;
+    }
+}
@@ -0,0 +1,93 @@
+package com.imogene.apptips.placement;
+
+/**
+ * Computes the vertices of the pointer triangle of a tip view. The
+ * pointer is an equilateral triangle whose apex looks at the target
+ * and whose base lies on the appropriate side of the rectangle of the
+ * tip view.
+ */
+public final class PointerGeometry {
+
+    // the mode constants have the same values as the
+    // corresponding constants of the com.imogene.apptips.TipView
+
+    public static final int MODE_BELOW_TARGET = 0;
+    public static final int MODE_ABOVE_TARGET = 1;
+    public static final int MODE_TO_LEFT_TARGET = 2;
+    public static final int MODE_TO_RIGHT_TARGET = 3;
+
+    /** Number of floats written by {@link #computePoints}. */
+    public static final int POINTS_SIZE = 6;
+
+    // half of the base of the equilateral triangle divided by it's height
+    private static final float INV_SQRT_3 = (float) (1 / Math.sqrt(3));
+
+    private PointerGeometry(){}
+
+    /**
+     * Computes the vertices of the pointer triangle and writes them to
+     * the given array in the order: apex (A), first base vertex (B),
+     * second base vertex (C), each one as an x, y pair.
+     * @param mode mode of the tip view, one of the {@code MODE_*} constants.
+     * @param viewWidth width of the tip view.
+     * @param viewHeight height of the tip view.
+     * @param pointerSize full size of the pointer.
+     * @param pointerPosition position of the pointer as a fraction
+     *                        of the appropriate side.
+     * @param pointerOffset offset of the pointer from the center of the
+     *                      appropriate side, takes precedence over the
+     *                      position if it is not {@code 0}.
+     * @param pointerProtrusion fraction of the pointer size that is
+     *                          currently visible.
+     * @param out the array to write the points to, must have at least
+     *            {@link #POINTS_SIZE} elements.
+     */
+    public static void computePoints(int mode, int viewWidth, int viewHeight,
+                                     int pointerSize, float pointerPosition,
+                                     int pointerOffset, float pointerProtrusion,
+                                     float[] out){
+        final float dynamicSize = pointerSize * pointerProtrusion;
+        final float protrusion = pointerSize - dynamicSize;
+        final float wh, hh, bh;
+
+        if(pointerOffset != 0){
+            wh = viewWidth / 2 + pointerOffset;
+            hh = viewHeight / 2 + pointerOffset;
+        } else {
+            wh = viewWidth * pointerPosition;
+            hh = viewHeight * pointerPosition;
+        }
+        bh = dynamicSize * INV_SQRT_3;
+
+        final float bx = wh - bh;
+        final float cx = wh + bh;
+        final float by = hh - bh;
+        final float cy = hh + bh;
+
+        switch (mode){
+            case MODE_BELOW_TARGET:
+                set(out, wh, protrusion, bx, pointerSize, cx, pointerSize);
+                break;
+            case MODE_ABOVE_TARGET:
+                set(out, wh, viewHeight - protrusion,
+                        bx, viewHeight - pointerSize,
+                        cx, viewHeight - pointerSize);
+                break;
+            case MODE_TO_LEFT_TARGET:
+                set(out, viewWidth - protrusion, hh,
+                        viewWidth - pointerSize, by,
+                        viewWidth - pointerSize, cy);
+                break;
+            case MODE_TO_RIGHT_TARGET:
+                set(out, protrusion, hh, pointerSize, by, pointerSize, cy);
+                break;
+        }
+    }
+
+    private static void set(float[] out, float ax, float ay,
+                            float bx, float by, float cx, float cy){
+        out[0] = ax; out[1] = ay;
+        out[2] = bx; out[3] = by;
+        out[4] = cx; out[5] = cy;
+    }
+}
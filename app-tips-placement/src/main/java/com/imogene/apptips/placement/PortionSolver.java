@@ -0,0 +1,467 @@
+package com.imogene.apptips.placement;
+
+/**
+ * Places all the tips of a portion together, so that the tips do not
+ * overlap each other and the targets of the portion (which are
+ * highlighted) when it is possible. Each tip with the
+ * {@link PlacementEngine#ALIGN_AUTO} alignment gets one of the
+ * alignments with the lowest cost, the cost adds up the area of the tip
+ * that overlaps the other tips and targets, the area that is out of the
+ * visible frame, the skew of the pointer and the distance to the target.
+ * <p>
+ * The tips are placed one by one greedily, then each tip is placed
+ * again with all the others fixed, until nothing changes or the limit
+ * of the passes is reached. The overlaps are looked up in a uniform
+ * grid over the visible frame, so a candidate is checked only against
+ * the tips and targets nearby. The solver reuses it's arrays, so it does
+ * not allocate once it has grown to the size of the portion.
+ * <p>
+ * Example:
+ * <pre><code>
+ * solver.reset(frameLeft, frameTop, frameRight, frameBottom);
+ * for(...){
+ *     input.setTarget(...).setTipSize(...);
+ *     indices[i] = solver.addTip(input);
+ * }
+ * solver.solve();
+ * solver.getPlacement(indices[i], placement);
+ * </code></pre>
+ */
+public final class PortionSolver {
+
+    private static final long OVERFLOW_WEIGHT = 16;
+    private static final long OVERLAP_WEIGHT = 8;
+    private static final long SKEW_WEIGHT = 4;
+    private static final long DISTANCE_WEIGHT = 1;
+
+    private static final int MAX_PASSES = 3;
+    private static final int MIN_CELL_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int frameLeft;
+    private int frameTop;
+    private int frameRight;
+    private int frameBottom;
+
+    // the tips, the index of a tip is also the index of it's
+    // target rectangle, the tip rectangle is at count + index
+    private int count;
+    private int[] targetX = new int[INITIAL_CAPACITY];
+    private int[] targetY = new int[INITIAL_CAPACITY];
+    private int[] targetWidth = new int[INITIAL_CAPACITY];
+    private int[] targetHeight = new int[INITIAL_CAPACITY];
+    private int[] tipWidth = new int[INITIAL_CAPACITY];
+    private int[] tipHeight = new int[INITIAL_CAPACITY];
+    private int[] horizontalTipWidth = new int[INITIAL_CAPACITY];
+    private int[] horizontalTipHeight = new int[INITIAL_CAPACITY];
+    private int[] pointerSize = new int[INITIAL_CAPACITY];
+    private int[] horizontalOffset = new int[INITIAL_CAPACITY];
+    private int[] verticalOffset = new int[INITIAL_CAPACITY];
+    private int[] requestedAlign = new int[INITIAL_CAPACITY];
+    private boolean[] autoPointer = new boolean[INITIAL_CAPACITY];
+    private int[] solvedAlign = new int[INITIAL_CAPACITY];
+
+    // the rectangles of the targets and the tips
+    private int[] rectLeft = new int[INITIAL_CAPACITY * 2];
+    private int[] rectTop = new int[INITIAL_CAPACITY * 2];
+    private int[] rectRight = new int[INITIAL_CAPACITY * 2];
+    private int[] rectBottom = new int[INITIAL_CAPACITY * 2];
+    private boolean[] rectActive = new boolean[INITIAL_CAPACITY * 2];
+    private int[] rectStamp = new int[INITIAL_CAPACITY * 2];
+    private int stamp;
+
+    // the grid, each cell is a linked list of entries referring to
+    // the rectangles, the moved rectangles are added again and the
+    // stale entries are filtered out by the intersection test
+    private int cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellHeads = new int[0];
+    private int[] entryNext = new int[INITIAL_CAPACITY * 4];
+    private int[] entryRect = new int[INITIAL_CAPACITY * 4];
+    private int entryCount;
+
+    private final PlacementInput input = new PlacementInput();
+    private final Placement placement = new Placement();
+
+    /**
+     * Clears the tips added before and sets the visible frame of the
+     * window in which the tips are shown.
+     * @param left left side of the frame.
+     * @param top top side of the frame.
+     * @param right right side of the frame.
+     * @param bottom bottom side of the frame.
+     */
+    public void reset(int left, int top, int right, int bottom){
+        frameLeft = left;
+        frameTop = top;
+        frameRight = right;
+        frameBottom = bottom;
+        count = 0;
+        input.setVisibleFrame(left, top, right, bottom);
+    }
+
+    /**
+     * Adds the tip described by the given input, the input is copied,
+     * so it can be reused for the next tip. The visible frame of the
+     * input is ignored. If the alignment of the input is
+     * {@link PlacementEngine#ALIGN_AUTO} the tip size must be the size
+     * in the vertical mode (the pointer is above or below the body),
+     * the size in the horizontal mode is derived from it as if the text
+     * is not wrapped differently.
+     * @param input geometry of the tip.
+     * @return the index of the tip in this solver.
+     */
+    public int addTip(PlacementInput input){
+        return addTip(input, input.tipWidth + input.pointerSize,
+                input.tipHeight - input.pointerSize);
+    }
+
+    /**
+     * Adds the tip described by the given input like the
+     * {@link #addTip(PlacementInput)} does, but with the size of the tip
+     * in the horizontal mode (the pointer is to the left or right of the
+     * body) measured separately, since the text of the tip may be wrapped
+     * differently in that mode. The horizontal size is used only if the
+     * alignment of the input is {@link PlacementEngine#ALIGN_AUTO}.
+     * @param input geometry of the tip.
+     * @param horizontalTipWidth width of the tip in the horizontal mode.
+     * @param horizontalTipHeight height of the tip in the horizontal mode.
+     * @return the index of the tip in this solver.
+     */
+    public int addTip(PlacementInput input, int horizontalTipWidth, int horizontalTipHeight){
+        final int index = count;
+        ensureCapacity(index + 1);
+        targetX[index] = input.targetX;
+        targetY[index] = input.targetY;
+        targetWidth[index] = input.targetWidth;
+        targetHeight[index] = input.targetHeight;
+        tipWidth[index] = input.tipWidth;
+        tipHeight[index] = input.tipHeight;
+        this.horizontalTipWidth[index] = horizontalTipWidth;
+        this.horizontalTipHeight[index] = horizontalTipHeight;
+        pointerSize[index] = input.pointerSize;
+        horizontalOffset[index] = input.horizontalOffset;
+        verticalOffset[index] = input.verticalOffset;
+        requestedAlign[index] = input.align;
+        autoPointer[index] = input.autoPointerPositionEnabled;
+        count = index + 1;
+        return index;
+    }
+
+    /**
+     * Returns the number of the added tips.
+     * @return number of tips.
+     */
+    public int getTipCount() {
+        return count;
+    }
+
+    /**
+     * Chooses the alignments of all the added tips.
+     */
+    public void solve(){
+        final int count = this.count;
+        setUpGrid();
+        for(int i = 0; i < count; i++){
+            setRect(i, targetX[i], targetY[i],
+                    targetX[i] + targetWidth[i], targetY[i] + targetHeight[i]);
+            rectActive[i] = true;
+            insert(i);
+            rectActive[count + i] = false;
+        }
+        // the tips with the fixed alignments are obstacles for the others
+        for(int i = 0; i < count; i++){
+            if(requestedAlign[i] != PlacementEngine.ALIGN_AUTO){
+                moveTip(i, requestedAlign[i]);
+            }
+        }
+        for(int i = 0; i < count; i++){
+            if(requestedAlign[i] == PlacementEngine.ALIGN_AUTO){
+                moveTip(i, findBestAlign(i));
+            }
+        }
+        for(int pass = 1; pass < MAX_PASSES; pass++){
+            boolean changed = false;
+            for(int i = 0; i < count; i++){
+                if(requestedAlign[i] != PlacementEngine.ALIGN_AUTO){
+                    continue;
+                }
+                final int rect = count + i;
+                rectActive[rect] = false;
+                if(!isColliding(rect)){
+                    // the tip is already placed well
+                    rectActive[rect] = true;
+                    continue;
+                }
+                final int align = findBestAlign(i);
+                if(align != solvedAlign[i]){
+                    moveTip(i, align);
+                    changed = true;
+                } else {
+                    rectActive[rect] = true;
+                }
+            }
+            if(!changed){
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes the placement of the tip with the given index to the
+     * specified placement object. The tip size used for the placement
+     * is the size in the mode of the resolved alignment, so if the tip
+     * view is measured again in that mode the placement is the same
+     * as if it is computed by the {@link PlacementEngine} for the
+     * resolved alignment.
+     * @param index the index of the tip returned by {@link #addTip(PlacementInput)}.
+     * @param result the object to write the placement to.
+     */
+    public void getPlacement(int index, Placement result){
+        if(index < 0 || index >= count){
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", tip count: " + count + ".");
+        }
+        final int align = solvedAlign[index];
+        setUpInput(index, align);
+        input.setAlign(align);
+        PlacementEngine.place(input, result);
+    }
+
+    /**
+     * Checks whether the placed tip overlaps other tips or targets or
+     * is out of the frame, the tip's own rectangle must not be active.
+     */
+    private boolean isColliding(int rect){
+        final int left = rectLeft[rect];
+        final int top = rectTop[rect];
+        final int right = rectRight[rect];
+        final int bottom = rectBottom[rect];
+        return left < frameLeft || top < frameTop ||
+                right > frameRight || bottom > frameBottom ||
+                getOverlap(left, top, right, bottom, 0) > 0;
+    }
+
+    /**
+     * Returns the alignment with the lowest cost for the tip, the
+     * tip's own rectangle must not be active.
+     */
+    private int findBestAlign(int index){
+        int bestAlign = PlacementEngine.CANDIDATE_ALIGNMENTS[0];
+        long bestCost = Long.MAX_VALUE;
+        for(int align : PlacementEngine.CANDIDATE_ALIGNMENTS){
+            final long cost = getCost(index, align, bestCost);
+            if(cost < bestCost){
+                bestCost = cost;
+                bestAlign = align;
+            }
+        }
+        return bestAlign;
+    }
+
+    /**
+     * Computes the cost of the given alignment of the tip, the
+     * computation stops as soon as the cost exceeds the given bound.
+     */
+    private long getCost(int index, int align, long bound){
+        setUpInput(index, align);
+        final Placement placement = this.placement;
+        PlacementEngine.computePosition(input, align, placement);
+        final int left = placement.x;
+        final int top = placement.y;
+        final int right = left + input.tipWidth;
+        final int bottom = top + input.tipHeight;
+
+        // the skew and the distance are cheap, so they go first
+        long cost = 0;
+        if(autoPointer[index]){
+            PlacementEngine.computePointer(input, align, placement);
+            cost += SKEW_WEIGHT * Math.abs(placement.pointerOffset);
+        }
+        final int targetCenterX = targetX[index] + targetWidth[index] / 2;
+        final int targetCenterY = targetY[index] + targetHeight[index] / 2;
+        cost += DISTANCE_WEIGHT * (Math.abs((left + right) / 2 - targetCenterX) +
+                Math.abs((top + bottom) / 2 - targetCenterY));
+
+        final long area = (long) (right - left) * (bottom - top);
+        cost += OVERFLOW_WEIGHT * (area - PlacementEngine.intersection(
+                left, top, right, bottom, frameLeft, frameTop, frameRight, frameBottom));
+        if(cost >= bound){
+            return cost;
+        }
+        final long limit = (bound - cost) / OVERLAP_WEIGHT;
+        return cost + OVERLAP_WEIGHT * getOverlap(left, top, right, bottom, limit);
+    }
+
+    /**
+     * Returns the total area of the active rectangles that overlap
+     * the given one, the lookup stops as soon as the area exceeds
+     * the given limit.
+     */
+    private long getOverlap(int left, int top, int right, int bottom, long limit){
+        final int stamp = ++this.stamp;
+        final int firstColumn = getColumn(left);
+        final int lastColumn = getColumn(right - 1);
+        final int firstRow = getRow(top);
+        final int lastRow = getRow(bottom - 1);
+        long overlap = 0;
+        for(int row = firstRow; row <= lastRow; row++){
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int entry = cellHeads[row * columns + column];
+                while (entry >= 0){
+                    final int rect = entryRect[entry];
+                    if(rectStamp[rect] != stamp){
+                        rectStamp[rect] = stamp;
+                        if(rectActive[rect]){
+                            overlap += PlacementEngine.intersection(left, top, right, bottom,
+                                    rectLeft[rect], rectTop[rect],
+                                    rectRight[rect], rectBottom[rect]);
+                            if(overlap > limit){
+                                return overlap;
+                            }
+                        }
+                    }
+                    entry = entryNext[entry];
+                }
+            }
+        }
+        return overlap;
+    }
+
+    private void moveTip(int index, int align){
+        solvedAlign[index] = align;
+        setUpInput(index, align);
+        PlacementEngine.computePosition(input, align, placement);
+        final int rect = count + index;
+        final int left = placement.x;
+        final int top = placement.y;
+        setRect(rect, left, top, left + input.tipWidth, top + input.tipHeight);
+        rectActive[rect] = true;
+        insert(rect);
+    }
+
+    /**
+     * Sets up the shared input for the tip with the given index and
+     * the size of the tip in the mode of the given alignment.
+     */
+    private void setUpInput(int index, int align){
+        int width = tipWidth[index];
+        int height = tipHeight[index];
+        final int pointerSize = this.pointerSize[index];
+        if(requestedAlign[index] == PlacementEngine.ALIGN_AUTO &&
+                PlacementEngine.isHorizontal(align)){
+            // the pointer moves from the top or bottom to the side
+            width = horizontalTipWidth[index];
+            height = horizontalTipHeight[index];
+        }
+        input.setTarget(targetX[index], targetY[index], targetWidth[index], targetHeight[index])
+                .setTipSize(width, height, pointerSize)
+                .setOffsets(horizontalOffset[index], verticalOffset[index])
+                .setAutoPointerPositionEnabled(autoPointer[index]);
+    }
+
+    private void setRect(int rect, int left, int top, int right, int bottom){
+        rectLeft[rect] = left;
+        rectTop[rect] = top;
+        rectRight[rect] = Math.max(right, left + 1);
+        rectBottom[rect] = Math.max(bottom, top + 1);
+    }
+
+    /**
+     * Chooses the cell size so that a cell holds about one tip and
+     * clears the cells.
+     */
+    private void setUpGrid(){
+        final int width = Math.max(1, frameRight - frameLeft);
+        final int height = Math.max(1, frameBottom - frameTop);
+        long tipArea = 0;
+        for(int i = 0; i < count; i++){
+            tipArea += (long) tipWidth[i] * tipHeight[i];
+        }
+        int cellSize = count > 0 ? (int) Math.sqrt(tipArea / count) : width;
+        cellSize = Math.max(cellSize, MIN_CELL_SIZE);
+        this.cellSize = cellSize;
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        final int cells = columns * rows;
+        if(cellHeads.length < cells){
+            cellHeads = new int[cells];
+        }
+        for(int i = 0; i < cells; i++){
+            cellHeads[i] = -1;
+        }
+        entryCount = 0;
+    }
+
+    private void insert(int rect){
+        final int firstColumn = getColumn(rectLeft[rect]);
+        final int lastColumn = getColumn(rectRight[rect] - 1);
+        final int firstRow = getRow(rectTop[rect]);
+        final int lastRow = getRow(rectBottom[rect] - 1);
+        for(int row = firstRow; row <= lastRow; row++){
+            for(int column = firstColumn; column <= lastColumn; column++){
+                final int cell = row * columns + column;
+                final int entry = entryCount++;
+                if(entry == entryNext.length){
+                    entryNext = grow(entryNext, entry * 2);
+                    entryRect = grow(entryRect, entry * 2);
+                }
+                entryRect[entry] = rect;
+                entryNext[entry] = cellHeads[cell];
+                cellHeads[cell] = entry;
+            }
+        }
+    }
+
+    /**
+     * The rectangles out of the frame are kept in the
+     * cells at the edges.
+     */
+    private int getColumn(int x){
+        final int column = (x - frameLeft) / cellSize;
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    private int getRow(int y){
+        final int row = (y - frameTop) / cellSize;
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity <= targetX.length){
+            return;
+        }
+        final int size = Math.max(capacity, targetX.length * 2);
+        targetX = grow(targetX, size);
+        targetY = grow(targetY, size);
+        targetWidth = grow(targetWidth, size);
+        targetHeight = grow(targetHeight, size);
+        tipWidth = grow(tipWidth, size);
+        tipHeight = grow(tipHeight, size);
+        horizontalTipWidth = grow(horizontalTipWidth, size);
+        horizontalTipHeight = grow(horizontalTipHeight, size);
+        pointerSize = grow(pointerSize, size);
+        horizontalOffset = grow(horizontalOffset, size);
+        verticalOffset = grow(verticalOffset, size);
+        requestedAlign = grow(requestedAlign, size);
+        solvedAlign = grow(solvedAlign, size);
+        boolean[] autoPointer = new boolean[size];
+        System.arraycopy(this.autoPointer, 0, autoPointer, 0, this.autoPointer.length);
+        this.autoPointer = autoPointer;
+
+        final int rects = size * 2;
+        rectLeft = grow(rectLeft, rects);
+        rectTop = grow(rectTop, rects);
+        rectRight = grow(rectRight, rects);
+        rectBottom = grow(rectBottom, rects);
+        rectStamp = grow(rectStamp, rects);
+        rectActive = new boolean[rects];
+    }
+
+    private static int[] grow(int[] array, int size){
+        int[] grown = new int[size];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
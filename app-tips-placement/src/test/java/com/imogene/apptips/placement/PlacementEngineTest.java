@@ -0,0 +1,366 @@
+package com.imogene.apptips.placement;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlacementEngineTest {
+
+    private static final long SEED = 0x5EEDL;
+    private static final int ITERATIONS = 20000;
+
+    private static final int FRAME_WIDTH = 1080;
+    private static final int FRAME_HEIGHT = 1920;
+    private static final int STATUS_BAR = 72;
+    private static final int POINTER_SIZE = 36;
+
+    // the expected placements below are the ones of the baseline AppTips,
+    // they cover every branch of the alignment and position rules
+
+    @Test
+    public void autoAlignsCenteredAboveOrBelow(){
+        assertPlacement(newInput(440, 1400, 200, 100, 400, 200),
+                PlacementEngine.ALIGN_CENTER_ABOVE, 340, 1200, Placement.POINTER_CENTER, 0);
+        assertPlacement(newInput(440, 200, 200, 100, 400, 200),
+                PlacementEngine.ALIGN_CENTER_BELOW, 340, 300, Placement.POINTER_CENTER, 0);
+    }
+
+    @Test
+    public void autoAlignsCenteredToSide(){
+        assertPlacement(newInput(0, STATUS_BAR, 300, FRAME_HEIGHT - STATUS_BAR, 400, 200),
+                PlacementEngine.ALIGN_RIGHT, 300, 896, Placement.POINTER_CENTER, 0);
+        assertPlacement(newInput(780, STATUS_BAR, 300, FRAME_HEIGHT - STATUS_BAR, 400, 200),
+                PlacementEngine.ALIGN_LEFT, 380, 896, Placement.POINTER_CENTER, 0);
+    }
+
+    @Test
+    public void autoAlignsInsideTarget(){
+        assertPlacement(newInput(0, STATUS_BAR, FRAME_WIDTH, FRAME_HEIGHT - STATUS_BAR, 400, 200),
+                PlacementEngine.ALIGN_CENTER_INSIDE, 340, 914, Placement.POINTER_CENTER, 0);
+    }
+
+    @Test
+    public void autoAlignsToCornerAboveOrBelow(){
+        // the tips are too wide to be centered or put to the side
+        assertPlacement(newInput(20, 1400, 100, 100, 1000, 200),
+                PlacementEngine.ALIGN_LEFT_ABOVE, 20, 1200, Placement.POINTER_OFFSET, -450);
+        assertPlacement(newInput(960, 1400, 100, 100, 1000, 200),
+                PlacementEngine.ALIGN_RIGHT_ABOVE, 60, 1200, Placement.POINTER_OFFSET, 450);
+        assertPlacement(newInput(20, 200, 100, 100, 1000, 200),
+                PlacementEngine.ALIGN_LEFT_BELOW, 20, 300, Placement.POINTER_OFFSET, -450);
+        assertPlacement(newInput(960, 200, 100, 100, 1000, 200),
+                PlacementEngine.ALIGN_RIGHT_BELOW, 60, 300, Placement.POINTER_OFFSET, 450);
+    }
+
+    @Test
+    public void autoAlignsToCornerOnSide(){
+        // the tips are too tall to be put above, below or centered on the side
+        assertPlacement(newInput(100, 100, 100, 100, 400, 1800),
+                PlacementEngine.ALIGN_RIGHT_TOP, 200, 100, Placement.POINTER_OFFSET, -850);
+        assertPlacement(newInput(100, 1700, 100, 100, 400, 1800),
+                PlacementEngine.ALIGN_RIGHT_BOTTOM, 200, 0, Placement.POINTER_OFFSET, 850);
+        assertPlacement(newInput(880, 100, 100, 100, 400, 1800),
+                PlacementEngine.ALIGN_LEFT_TOP, 480, 100, Placement.POINTER_OFFSET, -850);
+        assertPlacement(newInput(880, 1700, 100, 100, 400, 1800),
+                PlacementEngine.ALIGN_LEFT_BOTTOM, 480, 0, Placement.POINTER_OFFSET, 850);
+    }
+
+    @Test
+    public void autoAlignsPointTarget(){
+        assertPlacement(newInput(540, 1000, 0, 0, 400, 200),
+                PlacementEngine.ALIGN_CENTER_ABOVE, 340, 800, Placement.POINTER_CENTER, 0);
+        // too close to the right edge to be centered
+        assertPlacement(newInput(FRAME_WIDTH - 10, STATUS_BAR + 8, 0, 0, 400, 200),
+                PlacementEngine.ALIGN_RIGHT_BELOW, 670, 80, Placement.POINTER_OFFSET, 200);
+    }
+
+    @Test
+    public void autoAlignsWithOffsets(){
+        assertPlacement(newInput(440, 1400, 200, 100, 400, 200).setOffsets(30, 30),
+                PlacementEngine.ALIGN_CENTER_ABOVE, 370, 1170, Placement.POINTER_CENTER, 0);
+        // the tips fit exactly above or below the targets, but not with the offsets
+        assertPlacement(newInput(440, 272, 200, 1548, 400, 200),
+                PlacementEngine.ALIGN_CENTER_ABOVE, 340, 72, Placement.POINTER_CENTER, 0);
+        assertPlacement(newInput(440, 272, 200, 1548, 400, 200).setOffsets(30, 30),
+                PlacementEngine.ALIGN_RIGHT, 670, 976, Placement.POINTER_CENTER, 0);
+        assertPlacement(newInput(440, 172, 200, 1548, 400, 200),
+                PlacementEngine.ALIGN_CENTER_BELOW, 340, 1720, Placement.POINTER_CENTER, 0);
+        assertPlacement(newInput(440, 172, 200, 1548, 400, 200).setOffsets(30, 30),
+                PlacementEngine.ALIGN_RIGHT, 670, 876, Placement.POINTER_CENTER, 0);
+    }
+
+    @Test
+    public void placesWithFixedAlignments(){
+        // {align, x, y, pointer mode, pointer offset}
+        final int[][] expected = {
+                {PlacementEngine.ALIGN_LEFT_ABOVE, 310, 590, Placement.POINTER_OFFSET, -100},
+                {PlacementEngine.ALIGN_LEFT_BELOW, 310, 1060, Placement.POINTER_OFFSET, -100},
+                {PlacementEngine.ALIGN_RIGHT_ABOVE, 110, 590, Placement.POINTER_OFFSET, 100},
+                {PlacementEngine.ALIGN_RIGHT_BELOW, 110, 1060, Placement.POINTER_OFFSET, 100},
+                {PlacementEngine.ALIGN_CENTER_ABOVE, 210, 590, Placement.POINTER_CENTER, 0},
+                {PlacementEngine.ALIGN_CENTER_BELOW, 210, 1060, Placement.POINTER_CENTER, 0},
+                {PlacementEngine.ALIGN_LEFT, -110, 835, Placement.POINTER_CENTER, 0},
+                {PlacementEngine.ALIGN_RIGHT, 510, 835, Placement.POINTER_CENTER, 0},
+                {PlacementEngine.ALIGN_LEFT_TOP, -110, 910, Placement.POINTER_OFFSET, -75},
+                {PlacementEngine.ALIGN_LEFT_BOTTOM, -110, 740, Placement.POINTER_OFFSET, 75},
+                {PlacementEngine.ALIGN_RIGHT_TOP, 510, 910, Placement.POINTER_OFFSET, -75},
+                {PlacementEngine.ALIGN_RIGHT_BOTTOM, 510, 740, Placement.POINTER_OFFSET, 75},
+                {PlacementEngine.ALIGN_CENTER_INSIDE, 210, 853, Placement.POINTER_CENTER, 0}
+        };
+        for(int[] placement : expected){
+            PlacementInput input = newInput(300, 900, 200, 150, 400, 300)
+                    .setOffsets(10, 10)
+                    .setAlign(placement[0]);
+            assertPlacement(input, placement[0], placement[1], placement[2],
+                    placement[3], placement[4]);
+        }
+    }
+
+    @Test
+    public void placesPointTargetWithFixedAlignments(){
+        assertPlacement(newInput(500, 900, 0, 0, 400, 300)
+                        .setAlign(PlacementEngine.ALIGN_LEFT_ABOVE),
+                PlacementEngine.ALIGN_LEFT_ABOVE, 500, 600, Placement.POINTER_OFFSET, -200);
+        assertPlacement(newInput(500, 900, 0, 0, 400, 300)
+                        .setAlign(PlacementEngine.ALIGN_RIGHT_TOP),
+                PlacementEngine.ALIGN_RIGHT_TOP, 500, 900, Placement.POINTER_OFFSET, -150);
+        assertPlacement(newInput(500, 900, 0, 0, 400, 300)
+                        .setAlign(PlacementEngine.ALIGN_LEFT_BOTTOM),
+                PlacementEngine.ALIGN_LEFT_BOTTOM, 100, 600, Placement.POINTER_OFFSET, 150);
+        assertPlacement(newInput(500, 900, 0, 0, 400, 300)
+                        .setAlign(PlacementEngine.ALIGN_CENTER_INSIDE),
+                PlacementEngine.ALIGN_CENTER_INSIDE, 300, 768, Placement.POINTER_CENTER, 0);
+    }
+
+    @Test
+    public void alignsAboveTargetWithMoreSpaceAbove(){
+        PlacementInput input = newInput(440, 1400, 200, 100, 400, 200);
+        assertEquals(PlacementEngine.ALIGN_CENTER_ABOVE,
+                PlacementEngine.determineAlignment(input));
+    }
+
+    @Test
+    public void alignsBelowTargetUnderStatusBar(){
+        PlacementInput input = newInput(440, STATUS_BAR + 10, 200, 100, 400, 200);
+        assertEquals(PlacementEngine.ALIGN_CENTER_BELOW,
+                PlacementEngine.determineAlignment(input));
+    }
+
+    @Test
+    public void alignsToSideOfTallTarget(){
+        PlacementInput input = newInput(0, STATUS_BAR, 300, FRAME_HEIGHT - STATUS_BAR, 400, 200);
+        assertEquals(PlacementEngine.ALIGN_RIGHT,
+                PlacementEngine.determineAlignment(input));
+    }
+
+    @Test
+    public void alignsInsideTargetThatFillsFrame(){
+        PlacementInput input = newInput(0, STATUS_BAR, FRAME_WIDTH,
+                FRAME_HEIGHT - STATUS_BAR, 400, 200);
+        assertEquals(PlacementEngine.ALIGN_CENTER_INSIDE,
+                PlacementEngine.determineAlignment(input));
+    }
+
+    @Test
+    public void placesCenteredAboveTarget(){
+        PlacementInput input = newInput(440, 1400, 200, 100, 400, 200)
+                .setOffsets(10, 20);
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        assertEquals(PlacementEngine.ALIGN_CENTER_ABOVE, placement.getAlign());
+        assertEquals(440 + (200 - 400) / 2 + 10, placement.getX());
+        assertEquals(1400 - 200 - 20, placement.getY());
+        assertEquals(Placement.POINTER_CENTER, placement.getPointerMode());
+    }
+
+    @Test
+    public void movesPointerToTargetOfNarrowTarget(){
+        PlacementInput input = newInput(40, 1400, 100, 100, 400, 200)
+                .setAlign(PlacementEngine.ALIGN_LEFT_ABOVE);
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        assertEquals(40, placement.getX());
+        assertEquals(Placement.POINTER_OFFSET, placement.getPointerMode());
+        assertEquals(-(400 - 100) / 2, placement.getPointerOffset());
+    }
+
+    @Test
+    public void keepsPointerIfAutoPointerPositionDisabled(){
+        PlacementInput input = newInput(40, 1400, 100, 100, 400, 200)
+                .setAlign(PlacementEngine.ALIGN_LEFT_ABOVE)
+                .setAutoPointerPositionEnabled(false);
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        assertEquals(40, placement.getX());
+        assertEquals(1400 - 200, placement.getY());
+        assertEquals(Placement.POINTER_UNCHANGED, placement.getPointerMode());
+    }
+
+    @Test
+    public void scoredPlacementKeepsTipsInFrame(){
+        Random random = new Random(SEED + 2);
+        PlacementInput input = new PlacementInput();
+        Placement placement = new Placement();
+        for(int i = 0; i < ITERATIONS; i++){
+            setRandomGeometry(input, random);
+            input.setStrategy(PlacementEngine.STRATEGY_SCORED);
+            input.setAlign(PlacementEngine.ALIGN_LEFT_ABOVE + random.nextInt(14));
+            if(input.tipWidth > input.frameRight - input.frameLeft ||
+                    input.tipHeight > input.frameBottom - input.frameTop){
+                continue;
+            }
+            PlacementEngine.place(input, placement);
+            String message = describe(i, input);
+            assertTrue(message, placement.x >= input.frameLeft);
+            assertTrue(message, placement.y >= input.frameTop);
+            assertTrue(message, placement.x + input.tipWidth <= input.frameRight);
+            assertTrue(message, placement.y + input.tipHeight <= input.frameBottom);
+            // the tip moved along the side with the pointer keeps it on the side
+            final Placement rules = rulesPlacement(input, placement.align);
+            final boolean horizontal = PlacementEngine.isHorizontal(placement.align);
+            final int shift = horizontal ? placement.y - rules.y : placement.x - rules.x;
+            if(shift != 0){
+                final int side = horizontal ? input.tipHeight : input.tipWidth;
+                final int maxOffset = Math.max(0, side / 2 - input.pointerSize);
+                assertTrue(message, Math.abs(placement.pointerOffset) <= maxOffset);
+            }
+        }
+    }
+
+    @Test
+    public void clampToFrameAimsPointerAtTarget(){
+        // a toolbar action at the right edge, the centered tip
+        // would stick out of the frame to the right
+        PlacementInput input = newInput(FRAME_WIDTH - 144, STATUS_BAR + 12, 144, 144, 400, 200)
+                .setAlign(PlacementEngine.ALIGN_CENTER_BELOW)
+                .setStrategy(PlacementEngine.STRATEGY_SCORED);
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        assertEquals(FRAME_WIDTH - 400, placement.getX());
+        assertEquals(STATUS_BAR + 12 + 144, placement.getY());
+        assertEquals(Placement.POINTER_OFFSET, placement.getPointerMode());
+        final int pointerX = placement.getX() + 400 / 2 + placement.getPointerOffset();
+        assertEquals(FRAME_WIDTH - 144 / 2, pointerX);
+
+        Placement rules = rulesPlacement(input, input.align);
+        assertTrue(rules.getX() + 400 > FRAME_WIDTH);
+    }
+
+    @Test
+    public void clampToFrameLimitsPointerOffset(){
+        // a point target in the corner, the pointer can not reach it
+        PlacementInput input = newInput(FRAME_WIDTH - 2, STATUS_BAR + 2, 0, 0, 400, 200)
+                .setAlign(PlacementEngine.ALIGN_CENTER_BELOW)
+                .setStrategy(PlacementEngine.STRATEGY_SCORED);
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        assertEquals(FRAME_WIDTH - 400, placement.getX());
+        assertEquals(400 / 2 - POINTER_SIZE, placement.getPointerOffset());
+    }
+
+    @Test
+    public void clampToFrameMovesTooLargeTipToTopLeft(){
+        PlacementInput input = newInput(100, 1000, 100, 100, FRAME_WIDTH + 100,
+                FRAME_HEIGHT + 100).setStrategy(PlacementEngine.STRATEGY_SCORED);
+        Placement placement = new Placement();
+        placement.x = 300;
+        placement.y = 500;
+        PlacementEngine.clampToFrame(input, PlacementEngine.ALIGN_CENTER_ABOVE, placement);
+        assertEquals(0, placement.getX());
+        assertEquals(STATUS_BAR, placement.getY());
+    }
+
+    @Test
+    public void clampToFrameKeepsPointerIfAutoPointerPositionDisabled(){
+        PlacementInput input = newInput(FRAME_WIDTH - 144, 1000, 144, 144, 400, 200)
+                .setAutoPointerPositionEnabled(false);
+        Placement placement = new Placement();
+        placement.x = FRAME_WIDTH - 272;
+        placement.y = 800;
+        placement.pointerMode = Placement.POINTER_UNCHANGED;
+        PlacementEngine.clampToFrame(input, PlacementEngine.ALIGN_CENTER_ABOVE, placement);
+        assertEquals(FRAME_WIDTH - 400, placement.getX());
+        assertEquals(Placement.POINTER_UNCHANGED, placement.getPointerMode());
+    }
+
+    /**
+     * Places the tip with the given alignment by the rules strategy,
+     * which does not clamp the tip to the frame.
+     */
+    private static Placement rulesPlacement(PlacementInput input, int align){
+        final int strategy = input.strategy;
+        final int inputAlign = input.align;
+        Placement placement = new Placement();
+        input.setStrategy(PlacementEngine.STRATEGY_RULES);
+        input.setAlign(align);
+        PlacementEngine.place(input, placement);
+        input.setStrategy(strategy);
+        input.setAlign(inputAlign);
+        return placement;
+    }
+
+    static PlacementInput newInput(int targetX, int targetY, int targetWidth,
+                                   int targetHeight, int tipWidth, int tipHeight){
+        return new PlacementInput()
+                .setVisibleFrame(0, STATUS_BAR, FRAME_WIDTH, FRAME_HEIGHT)
+                .setTarget(targetX, targetY, targetWidth, targetHeight)
+                .setTipSize(tipWidth, tipHeight, POINTER_SIZE);
+    }
+
+    /**
+     * Sets a random geometry, the targets are anywhere within and
+     * around the frame, some of them are points.
+     */
+    static void setRandomGeometry(PlacementInput input, Random random){
+        final int frameWidth = 480 + random.nextInt(1000);
+        final int frameTop = random.nextInt(100);
+        final int frameBottom = frameTop + 640 + random.nextInt(1900);
+        input.setVisibleFrame(0, frameTop, frameWidth, frameBottom);
+
+        final boolean point = random.nextInt(6) == 0;
+        final int targetWidth = point ? 0 : random.nextInt(frameWidth);
+        final int targetHeight = point ? 0 : random.nextInt(frameBottom - frameTop);
+        final int targetX = random.nextInt(frameWidth + 100) - 50 - targetWidth / 2;
+        final int targetY = frameTop + random.nextInt(frameBottom - frameTop + 100) - 50 -
+                targetHeight / 2;
+        input.setTarget(targetX, targetY, targetWidth, targetHeight);
+
+        final int pointerSize = random.nextInt(40);
+        input.setTipSize(100 + random.nextInt(700),
+                pointerSize + 40 + random.nextInt(400), pointerSize);
+        final int offset = random.nextInt(3) == 0 ? random.nextInt(40) : 0;
+        input.setOffsets(offset, offset);
+        input.setAutoPointerPositionEnabled(true);
+        input.setStrategy(PlacementEngine.STRATEGY_RULES);
+    }
+
+    static String describe(int iteration, PlacementInput input){
+        return "#" + iteration + " target [" + input.targetX + ", " + input.targetY + ", " +
+                input.targetWidth + "x" + input.targetHeight + "], tip " + input.tipWidth +
+                "x" + input.tipHeight + ", frame [" + input.frameLeft + ", " +
+                input.frameTop + ", " + input.frameRight + ", " + input.frameBottom +
+                "], align " + input.align;
+    }
+
+    /**
+     * Places the tip by the rules strategy and checks the result,
+     * the alignment is checked against the automatic one too.
+     */
+    private static void assertPlacement(PlacementInput input, int align, int x, int y,
+                                        int pointerMode, int pointerOffset){
+        Placement placement = new Placement();
+        PlacementEngine.place(input, placement);
+        String message = describe(0, input);
+        if(input.align == PlacementEngine.ALIGN_AUTO){
+            assertEquals(message, align, PlacementEngine.determineAlignment(input));
+        }
+        assertEquals(message, align, placement.getAlign());
+        assertEquals(message, x, placement.getX());
+        assertEquals(message, y, placement.getY());
+        assertEquals(message, pointerMode, placement.getPointerMode());
+        assertEquals(message, pointerOffset, placement.getPointerOffset());
+    }
+}
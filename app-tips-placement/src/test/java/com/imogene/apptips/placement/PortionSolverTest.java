@@ -0,0 +1,174 @@
+package com.imogene.apptips.placement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PortionSolverTest {
+
+    private static final int FRAME_WIDTH = 1080;
+    private static final int FRAME_HEIGHT = 1920;
+    private static final int STATUS_BAR = 72;
+    private static final int POINTER_SIZE = 36;
+
+    private PortionSolver solver;
+    private PlacementInput input;
+    // the targets, the sizes in both modes and the alignments of the added tips
+    private List<int[]> tips;
+
+    @Before
+    public void setUp(){
+        solver = new PortionSolver();
+        solver.reset(0, STATUS_BAR, FRAME_WIDTH, FRAME_HEIGHT);
+        input = new PlacementInput();
+        tips = new ArrayList<>();
+    }
+
+    @Test
+    public void separatesTipsOfAdjacentTargets(){
+        // two toolbar actions, both tips would be centered above them
+        addTip(648, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        addTip(792, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        solver.solve();
+        assertNoOverlaps();
+    }
+
+    @Test
+    public void separatesTipsOfDensePortion(){
+        // a grid of 3 x 4 icons, the tips are wider than the columns,
+        // so the tips of the neighbours collide if aligned alike
+        for(int row = 0; row < 4; row++){
+            for(int column = 0; column < 3; column++){
+                addTip(120 + column * 340, 240 + row * 440, 120, 120, 380, 120,
+                        PlacementEngine.ALIGN_AUTO);
+            }
+        }
+        solver.solve();
+        assertEquals(12, solver.getTipCount());
+        assertNoOverlaps();
+    }
+
+    @Test
+    public void separatesWrappedTips(){
+        // the texts wrap into more lines to the side of the targets, the
+        // first tip centered to the right of it's target would be short
+        // enough to pass above the second target only if it did not wrap
+        addWrappedTip(100, 572, 140, 140, 600, 200, 560, 300);
+        addWrappedTip(440, 772, 140, 100, 600, 200, 560, 300);
+        solver.solve();
+        assertNoOverlaps();
+    }
+
+    @Test
+    public void keepsFixedAlignment(){
+        addTip(440, 900, 200, 100, 400, 200, PlacementEngine.ALIGN_CENTER_ABOVE);
+        addTip(440, 1100, 200, 100, 400, 200, PlacementEngine.ALIGN_AUTO);
+        solver.solve();
+        Placement placement = new Placement();
+        solver.getPlacement(0, placement);
+        assertEquals(PlacementEngine.ALIGN_CENTER_ABOVE, placement.getAlign());
+        assertNoOverlaps();
+    }
+
+    @Test
+    public void resetClearsTips(){
+        addTip(648, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        addTip(792, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        solver.solve();
+        Placement first = new Placement();
+        solver.getPlacement(1, first);
+
+        solver.reset(0, STATUS_BAR, FRAME_WIDTH, FRAME_HEIGHT);
+        tips.clear();
+        assertEquals(0, solver.getTipCount());
+        addTip(648, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        addTip(792, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        solver.solve();
+        Placement second = new Placement();
+        solver.getPlacement(1, second);
+        assertEquals(first.getAlign(), second.getAlign());
+        assertEquals(first.getX(), second.getX());
+        assertEquals(first.getY(), second.getY());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getPlacementRejectsUnknownIndex(){
+        addTip(648, 900, 144, 144, 400, 200, PlacementEngine.ALIGN_AUTO);
+        solver.solve();
+        solver.getPlacement(1, new Placement());
+    }
+
+    private void addTip(int targetX, int targetY, int targetWidth, int targetHeight,
+                        int tipWidth, int tipHeight, int align){
+        input.setTarget(targetX, targetY, targetWidth, targetHeight)
+                .setTipSize(tipWidth, tipHeight, POINTER_SIZE)
+                .setAlign(align);
+        solver.addTip(input);
+        tips.add(new int[]{targetX, targetY, targetWidth, targetHeight, tipWidth, tipHeight,
+                tipWidth + POINTER_SIZE, tipHeight - POINTER_SIZE, align});
+    }
+
+    /**
+     * Adds the tip with the automatic alignment, the text of which
+     * is wrapped differently in the horizontal mode.
+     */
+    private void addWrappedTip(int targetX, int targetY, int targetWidth, int targetHeight,
+                               int tipWidth, int tipHeight, int horizontalTipWidth,
+                               int horizontalTipHeight){
+        input.setTarget(targetX, targetY, targetWidth, targetHeight)
+                .setTipSize(tipWidth, tipHeight, POINTER_SIZE)
+                .setAlign(PlacementEngine.ALIGN_AUTO);
+        solver.addTip(input, horizontalTipWidth, horizontalTipHeight);
+        tips.add(new int[]{targetX, targetY, targetWidth, targetHeight, tipWidth, tipHeight,
+                horizontalTipWidth, horizontalTipHeight, PlacementEngine.ALIGN_AUTO});
+    }
+
+    /**
+     * Checks that the placed tips are within the frame and overlap
+     * neither each other nor the targets. The size of a tip is the
+     * size in the mode of it's resolved alignment.
+     */
+    private void assertNoOverlaps(){
+        final int count = solver.getTipCount();
+        final int[][] tipRects = new int[count][];
+        final int[][] targetRects = new int[count][];
+        Placement placement = new Placement();
+        for(int i = 0; i < count; i++){
+            final int[] tip = tips.get(i);
+            solver.getPlacement(i, placement);
+            int width = tip[4];
+            int height = tip[5];
+            if(tip[8] == PlacementEngine.ALIGN_AUTO &&
+                    PlacementEngine.isHorizontal(placement.align)){
+                width = tip[6];
+                height = tip[7];
+            }
+            tipRects[i] = new int[]{placement.x, placement.y,
+                    placement.x + width, placement.y + height};
+            targetRects[i] = new int[]{tip[0], tip[1], tip[0] + tip[2], tip[1] + tip[3]};
+            assertTrue("Tip " + i + " is out of the frame.", tipRects[i][0] >= 0 &&
+                    tipRects[i][1] >= STATUS_BAR && tipRects[i][2] <= FRAME_WIDTH &&
+                    tipRects[i][3] <= FRAME_HEIGHT);
+        }
+        for(int i = 0; i < count; i++){
+            for(int j = 0; j < count; j++){
+                if(i != j){
+                    assertEquals("Tips " + i + " and " + j + " overlap.", 0,
+                            intersection(tipRects[i], tipRects[j]));
+                }
+                assertEquals("Tip " + i + " overlaps target " + j + ".", 0,
+                        intersection(tipRects[i], targetRects[j]));
+            }
+        }
+    }
+
+    private static long intersection(int[] first, int[] second){
+        return PlacementEngine.intersection(first[0], first[1], first[2], first[3],
+                second[0], second[1], second[2], second[3]);
+    }
+}
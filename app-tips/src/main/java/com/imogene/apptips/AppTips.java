@@ -1,36 +1,55 @@
 package com.imogene.apptips;
 
 import android.animation.Animator;
-import android.animation.ObjectAnimator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.app.Application;
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
 import android.app.Fragment;
 import android.content.Context;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.IdRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.StringRes;
 import android.support.v4.view.ViewCompat;
+import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewManager;
+import android.view.ViewParent;
+import android.view.SurfaceView;
+import android.view.TextureView;
 import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.AbsoluteLayout;
+import android.widget.FrameLayout;
 
+import com.imogene.apptips.placement.Placement;
+import com.imogene.apptips.placement.PlacementEngine;
+import com.imogene.apptips.placement.PlacementInput;
+import com.imogene.apptips.placement.PortionSolver;
+
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,20 +80,167 @@ import java.util.List;
 @SuppressWarnings("deprecation")
 public final class AppTips {
 
-    private static final float DIM_AMOUNT = 0.3F;
+    /**
+     * Highlighting mode. The target views are captured into bitmaps that
+     * are drawn above the dimmed screen. This is the default mode.
+     */
+    public static final int HIGHLIGHTING_MODE_SNAPSHOT = 1;
+
+    /**
+     * Highlighting mode. The scrim is drawn by the tips themselves with
+     * transparent cutouts at the positions of the target views, so that
+     * the live targets are visible through them. No bitmaps are captured
+     * in this mode.
+     */
+    public static final int HIGHLIGHTING_MODE_CUTOUT = 2;
+
+    /**
+     * Highlighting mode. The target views are captured into bitmaps like
+     * in the {@link #HIGHLIGHTING_MODE_SNAPSHOT} mode, but the bitmaps are
+     * redrawn while the tips are shown whenever the targets invalidate,
+     * so the animating targets keep animating within the highlighting.
+     * The redraws are limited to a maximum rate (see
+     * {@link #setLiveHighlightingMaxRate(int)}). Before Lollipop the
+     * invalidated targets can not be told apart, so all the targets
+     * are redrawn at the maximum rate while the activity draws.
+     */
+    public static final int HIGHLIGHTING_MODE_LIVE = 3;
+
+    /**
+     * Rendering mode. Every tip is a separate view, the tips are shown
+     * either in separate windows or in a common wrapper if highlighting
+     * is enabled. This is the default mode.
+     */
+    public static final int RENDERING_MODE_VIEWS = 1;
+
+    /**
+     * Rendering mode. All the tips of a portion are laid out and drawn
+     * by a single lightweight view in a single window. The highlighting
+     * in this mode is always done with cutouts (see
+     * {@link #HIGHLIGHTING_MODE_CUTOUT}). The tip view properties that
+     * can not be applied to the text directly, such as the text appearance,
+     * are ignored in this mode, but the text color and size are respected.
+     */
+    public static final int RENDERING_MODE_OVERLAY = 2;
 
-    private final Context context;
-    private final WindowManager windowManager;
-    private final Activity activity;
-    private final Fragment fragment;
-    private final android.support.v4.app.Fragment supportFragment;
+    /**
+     * Host mode. Every tip, the highlighting wrapper or the overlay is
+     * shown in a separate window added to the WindowManager. This is the
+     * default mode.
+     */
+    public static final int HOST_MODE_WINDOW = 1;
+
+    /**
+     * Host mode. The tips are shown within the decor view of the activity
+     * instead of separate windows, so showing, advancing and moving the
+     * tips do not require any calls to the window manager. The window
+     * animations of the tips are not played in this mode and the tips can
+     * not be shown above the other windows of the activity (for example
+     * dialogs).
+     */
+    public static final int HOST_MODE_DECOR_VIEW = 2;
+
+    // the placement mode constants have the same values as the
+    // corresponding strategy constants of the PlacementEngine
+
+    /**
+     * Placement mode. The alignment of a tip with the
+     * {@link Tip#ALIGN_AUTO} is determined by a fixed set of rules that
+     * checks where the tip fits in the order of preference. A tip that
+     * does not fit anywhere is placed in the center of it's target and
+     * might be partially out of the screen. This is the default mode.
+     */
+    public static final int PLACEMENT_MODE_RULES = PlacementEngine.STRATEGY_RULES;
+
+    /**
+     * Placement mode. All the alignments are scored by how much of the
+     * tip is out of the visible frame, how much of the target it covers,
+     * how skewed the pointer is and how far the tip is from the target,
+     * the best one is chosen. The tips are always kept within the visible
+     * frame, the pointer of a tip shifted to the frame is aimed at the
+     * target again. The placement does not allocate, so it is cheap
+     * enough to place the tips on every frame while they follow their
+     * targets (see {@link #setTargetTrackingEnabled(boolean)}).
+     */
+    public static final int PLACEMENT_MODE_SCORED = PlacementEngine.STRATEGY_SCORED;
+
+    private static final float DIM_AMOUNT = 0.3F;
+    private static final int SCRIM_COLOR = (int) (DIM_AMOUNT * 0xFF) << 24;
+    private static final int DEFAULT_PREFETCH_DEPTH = 1;
+    private static final int DEFAULT_LIVE_HIGHLIGHTING_MAX_RATE = 10;
+
+    // the references to the screen are dropped when this
+    // object is destroyed, so they are not final
+    private Context context;
+    private WindowManager windowManager;
+    private Activity activity;
+    private Fragment fragment;
+    private android.support.v4.app.Fragment supportFragment;
+
+    private boolean destroyed;
+    private Lifecycle boundLifecycle;
+    private Application boundApplication;
 
     private final List<Tip> tips = new ArrayList<>();
     private int currentIndex;
-    private ViewGroup wrapper;
+    private HighlightingLayout wrapper;
+    private TipsOverlayView overlay;
+    private boolean overlayAttached;
 
     private final int[] position = new int[2];
     private final Rect activityVisibleFrame = new Rect();
+    private final Rect targetRect = new Rect();
+    private final PlacementInput placementInput = new PlacementInput();
+    private final Placement placement = new Placement();
+    private int placementMode = PLACEMENT_MODE_RULES;
+    private boolean collisionAvoidanceEnabled;
+    private PortionSolver portionSolver;
+    private final TargetIndex targetIndex = new TargetIndex();
+
+    private final HighlightBitmapPool bitmapPool = HighlightBitmapPool.getInstance();
+    private final TipViewPool tipViewPool = TipViewPool.getInstance();
+    private final Canvas highlightingCanvas = new Canvas();
+    private Bitmap.Config highlightingBitmapConfig = Bitmap.Config.ARGB_8888;
+    private int highlightingDownsampling = 1;
+    private boolean pixelCopyCaptureEnabled;
+    private PixelCopyCapturer pixelCopyCapturer;
+    private int highlightingMode = HIGHLIGHTING_MODE_SNAPSHOT;
+    private int liveHighlightingMaxRate = DEFAULT_LIVE_HIGHLIGHTING_MAX_RATE;
+    private LiveHighlighter liveHighlighter;
+    private int renderingMode = RENDERING_MODE_VIEWS;
+
+    private boolean targetTrackingEnabled;
+    private View trackingView;
+    private boolean visibleFrameDirty;
+    private final Rect visibleTargetRect = new Rect();
+
+    private int hostMode = HOST_MODE_WINDOW;
+    private ViewManager viewHost;
+    private TipHostLayout hostLayout;
+
+    private boolean crossFadeEnabled;
+    private ValueAnimator crossFadeAnimator;
+    private final List<View> fadingViews = new ArrayList<>();
+    private final List<View> appearingViews = new ArrayList<>();
+    private final List<Bitmap> fadingBitmaps = new ArrayList<>();
+
+    private TipAnimation enterAnimation;
+    private TipAnimation exitAnimation;
+    private PointerAnimation pointerAnimation = TipAnimations.POINTER_GROW;
+    private final TipsAnimator tipsAnimator;
+
+    private MetricsListener metricsListener;
+    private long showStartTime;
+    private int layoutWaits;
+
+    private JankListener jankListener;
+    private JankMonitor jankMonitor;
+
+    private SeenTipsStore seenTipsStore;
+
+    private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+    private boolean prefetchScheduled;
+    private View prefetchLayoutView;
 
     private OnCloseListener onCloseListener;
 
@@ -89,6 +255,7 @@ public final class AppTips {
         checkNonNullParameter(activity, "activity");
         context = activity;
         windowManager = activity.getWindowManager();
+        tipsAnimator = new TipsAnimator(exitCallback);
         this.activity = activity;
         this.fragment = null;
         this.supportFragment = null;
@@ -120,6 +287,7 @@ public final class AppTips {
         }
         context = activity;
         windowManager = activity.getWindowManager();
+        tipsAnimator = new TipsAnimator(exitCallback);
         this.activity = null;
         this.fragment = fragment;
         supportFragment = null;
@@ -144,11 +312,29 @@ public final class AppTips {
         }
         context = activity;
         windowManager = activity.getWindowManager();
+        tipsAnimator = new TipsAnimator(exitCallback);
         this.activity = null;
         this.fragment = null;
         supportFragment = fragment;
     }
 
+    /**
+     * Resolves the default tip properties from the {@code tipStyle} of
+     * the theme of the given context in advance. The resolved defaults
+     * are cached per theme and shared by all the tips created later, so
+     * calling this method (for example from a background thread while the
+     * activity is being created) takes the style resolution off the
+     * critical path of creating the tips.
+     * @param context the context whose theme is used for the tips.
+     */
+    public static void preloadStyle(@NonNull Context context){
+        if(context == null){
+            throw new IllegalArgumentException(
+                    "The context parameter must not be null.");
+        }
+        TipStyle.obtain(context);
+    }
+
     /**
      * Creates and returns new {@code Tip} object for the given target
      * and with the specified text.
@@ -160,7 +346,7 @@ public final class AppTips {
      * @see #newTip(View, int)
      */
     public Tip newTip(@IdRes int targetId, CharSequence text){
-        return new Tip(context, targetId, text);
+        return new Tip(requireContext(), targetId, text);
     }
 
     /**
@@ -174,7 +360,7 @@ public final class AppTips {
      * @see #newTip(View, int)
      */
     public Tip newTip(@IdRes int targetId, @StringRes int textRes){
-        String text = context.getString(textRes);
+        String text = requireContext().getString(textRes);
         return newTip(targetId, text);
     }
 
@@ -189,7 +375,7 @@ public final class AppTips {
      * @see #newTip(View, int)
      */
     public Tip newTip(View targetView, CharSequence text){
-        return new Tip(context, targetView, text);
+        return new Tip(requireContext(), targetView, text);
     }
 
     /**
@@ -203,7 +389,7 @@ public final class AppTips {
      * @see #newTip(View, CharSequence)
      */
     public Tip newTip(View targetView, @StringRes int textRes){
-        String text = context.getString(textRes);
+        String text = requireContext().getString(textRes);
         return newTip(targetView, text);
     }
 
@@ -230,7 +416,7 @@ public final class AppTips {
      */
     public Tip newTip(int targetX, int targetY, CharSequence text){
         Point target = new Point(targetX, targetY);
-        Tip tip = new Tip(context, target, text);
+        Tip tip = new Tip(requireContext(), target, text);
         tip.setHighlightingEnabled(false);
         return tip;
     }
@@ -257,7 +443,7 @@ public final class AppTips {
      * @see #newTip(int, int, CharSequence)
      */
     public Tip newTip(int targetX, int targetY, @StringRes int textRes){
-        String text = context.getString(textRes);
+        String text = requireContext().getString(textRes);
         return newTip(targetX, targetY, text);
     }
 
@@ -271,6 +457,11 @@ public final class AppTips {
     public void addTip(Tip tip){
         checkNonNullParameter(tip, "tip");
         tips.add(tip);
+        // the targets of the whole tour are resolved together
+        do {
+            targetIndex.addId(tip.targetId);
+            tip = tip.sibling;
+        } while (tip != null);
     }
 
     /**
@@ -289,12 +480,12 @@ public final class AppTips {
         if(length > 0){
             Tip tip = tips[0];
             tip.highlightingEnabled = highlightingEnabled;
-            addTip(tip);
             for (int i = 1; i < length; i++){
                 Tip sibling = tips[i];
                 tip.sibling = sibling;
                 tip = sibling;
             }
+            addTip(tips[0]);
         }
     }
 
@@ -314,6 +505,9 @@ public final class AppTips {
      * {@code false} otherwise.
      */
     public boolean isShown(){
+        if(overlay != null){
+            return true;
+        }
         if(tips.size() > 0){
             Tip tip = tips.get(currentIndex);
             do {
@@ -326,6 +520,110 @@ public final class AppTips {
         return false;
     }
 
+    /**
+     * Does a part of the work needed to show the tips in advance. On a
+     * background thread the style of the theme is resolved and the texts
+     * of all the tips are laid out, which only fills the text layout cache
+     * of the platform with the measured words, the layouts are not kept.
+     * Then the tip views of the portion that is going to be shown are
+     * created, set up and measured on the main thread, and the next call
+     * to {@link #show()} or {@link #showNext()} takes these views instead
+     * of creating them. The placement of the tips and the highlighting
+     * are still computed when the tips are shown, since they depend on
+     * the layout of the targets at that time. The effect can be measured
+     * with the {@link TipMetrics#PHASE_SHOW} and
+     * {@link TipMetrics#PHASE_PREPARE} phases.
+     * <p>
+     * The tips must be added and set up before this call, the changes
+     * made to the tips of the prepared portion after this call are not
+     * applied to their views.
+     * @param listener the listener to be notified on the main thread
+     *                 when the tips are prepared, might be null.
+     */
+    public void prepare(final OnPreparedListener listener){
+        if(destroyed){
+            return;
+        }
+        final List<Tip> tips = new ArrayList<>(this.tips);
+        final int index = currentIndex;
+        final Context context = this.context;
+        final Handler handler = new Handler(Looper.getMainLooper());
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                TipStyle.obtain(context);
+                TextLayoutWarmer warmer = new TextLayoutWarmer(context);
+                for(int i = 0, size = tips.size(); i < size; i++){
+                    Tip tip = tips.get(i);
+                    do {
+                        warmer.warmUp(tip);
+                        tip = tip.sibling;
+                    } while (tip != null);
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPrepared(index, listener);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPrepared(int index, OnPreparedListener listener){
+        if(destroyed){
+            return;
+        }
+        // the tips might be shown or reset meanwhile
+        if(index == currentIndex && index < tips.size() && !isShown() &&
+                renderingMode == RENDERING_MODE_VIEWS){
+            final long startTime = startPhase();
+            prepareTipViews(tips.get(index));
+            finishPhase(TipMetrics.PHASE_PREPARE, startTime);
+        }
+        if(listener != null){
+            listener.onPrepared();
+        }
+    }
+
+    /**
+     * Creates and measures the tip views of the portion of tips with
+     * the given root tip that are not prepared yet.
+     */
+    private void prepareTipViews(Tip tip){
+        do {
+            if(tip.preparedTipView == null){
+                TipView tipView = tipViewPool.acquire((Activity) context);
+                setUpTipView(tipView, tip);
+                measureTipView(tipView);
+                tip.preparedTipView = tipView;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+    }
+
+    /**
+     * Gives the prepared tip views and the prefetched highlighting
+     * bitmaps that are not shown back to the pools.
+     */
+    private void releasePreparedState(){
+        cancelPrefetch();
+        dropPrefetchedHighlighting();
+        final List<Tip> tips = this.tips;
+        for(int i = 0, size = tips.size(); i < size; i++){
+            Tip tip = tips.get(i);
+            tip.prefetched = false;
+            do {
+                TipView tipView = tip.preparedTipView;
+                if(tipView != null){
+                    tip.preparedTipView = null;
+                    tipViewPool.release((Activity) context, tipView);
+                }
+                tip = tip.sibling;
+            } while (tip != null);
+        }
+    }
+
     /**
      * Shows the current portion of tips if there are no tips
      * shown currently. This method can be used to show tips for
@@ -336,7 +634,7 @@ public final class AppTips {
      * @see #showNext()
      */
     public void show(){
-        if(!isShown()){
+        if(!destroyed && !isShown()){
             showTips(currentIndex);
         }
     }
@@ -352,6 +650,9 @@ public final class AppTips {
      * @see #show()
      */
     public void showNext(){
+        if(destroyed){
+            return;
+        }
         if(!isShown() && currentIndex == 0){
             showTips(0);
         } else if(currentIndex < tips.size() - 1) {
@@ -367,7 +668,14 @@ public final class AppTips {
      */
     public void close(){
         if(isShown()){
-            removeTipViews();
+            final long startTime = startPhase();
+            removeTipViews(false);
+            removeWrapper();
+            detachHostLayout();
+            cancelPrefetch();
+            dropPrefetchedHighlighting();
+            targetIndex.release();
+            finishPhase(TipMetrics.PHASE_CLOSE, startTime);
             notifyClosed(true);
         }
     }
@@ -380,7 +688,151 @@ public final class AppTips {
      */
     public void reset(){
         close();
+        releasePreparedState();
+        currentIndex = 0;
+    }
+
+    /**
+     * Binds this object to the lifecycle of the activity or fragment it
+     * is created for, so that it is destroyed (see {@link #destroy()})
+     * automatically when the activity or fragment is destroyed. The
+     * support fragments and the activities that are lifecycle owners
+     * (such as {@code AppCompatActivity}) are observed through their
+     * {@link Lifecycle}, the other activities through the activity
+     * lifecycle callbacks of the application. The platform fragments
+     * are bound to the lifecycle of their activity.
+     */
+    public void bindToLifecycle(){
+        final Activity activity = (Activity) requireContext();
+        if(boundLifecycle != null || boundApplication != null){
+            return;
+        }
+        final LifecycleOwner owner;
+        if(supportFragment != null){
+            owner = supportFragment;
+        } else if(activity instanceof LifecycleOwner){
+            owner = (LifecycleOwner) activity;
+        } else {
+            owner = null;
+        }
+        if(owner != null){
+            Lifecycle lifecycle = owner.getLifecycle();
+            if(lifecycle.getCurrentState() == Lifecycle.State.DESTROYED){
+                // the destroy event would never come
+                destroy();
+                return;
+            }
+            boundLifecycle = lifecycle;
+            lifecycle.addObserver(lifecycleObserver);
+        } else {
+            boundApplication = activity.getApplication();
+            boundApplication.registerActivityLifecycleCallbacks(activityCallbacks);
+        }
+    }
+
+    private void unbindLifecycle(){
+        if(boundLifecycle != null){
+            boundLifecycle.removeObserver(lifecycleObserver);
+            boundLifecycle = null;
+        }
+        if(boundApplication != null){
+            boundApplication.unregisterActivityLifecycleCallbacks(activityCallbacks);
+            boundApplication = null;
+        }
+    }
+
+    private final LifecycleObserver lifecycleObserver = new LifecycleObserver() {
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        public void onDestroy(){
+            destroy();
+        }
+    };
+
+    private final Application.ActivityLifecycleCallbacks activityCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if(activity == context){
+                destroy();
+            }
+        }
+    };
+
+    /**
+     * Closes the currently shown tips if any and releases all the
+     * resources held by this object: the windows of the tips are
+     * removed at once (without the exit animations), the animations
+     * are stopped, the tip views and the highlighting bitmaps are
+     * given back to the pools and the references to the activity,
+     * fragment and the tips are dropped. This object can not be used
+     * after this call, the calls that show the tips are ignored.
+     * <p>
+     * This method is called automatically when the activity or the
+     * fragment is destroyed if this object is bound to it's lifecycle
+     * (see {@link #bindToLifecycle()}).
+     */
+    public void destroy(){
+        if(destroyed){
+            return;
+        }
+        unbindLifecycle();
+        close();
+        releasePreparedState();
+        // the windows of the tips that are animated out
+        // must not outlive the activity
+        tipsAnimator.finishAll();
+        targetIndex.release();
+        stopLiveHighlighting();
+        liveHighlighter = null;
+        tips.clear();
         currentIndex = 0;
+        jankMonitor = null;
+        onCloseListener = null;
+        metricsListener = null;
+        jankListener = null;
+        viewHost = null;
+        windowManager = null;
+        activity = null;
+        fragment = null;
+        supportFragment = null;
+        context = null;
+        destroyed = true;
+    }
+
+    /**
+     * Checks whether this object is destroyed or not.
+     * @return true if this object is destroyed, false otherwise.
+     * @see #destroy()
+     */
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    private Context requireContext(){
+        if(destroyed){
+            throw new IllegalStateException(
+                    "AppTips is destroyed.");
+        }
+        return context;
     }
 
     /**
@@ -394,765 +846,2428 @@ public final class AppTips {
     }
 
     /**
-     * Removes the currently shown tip views from the screen and shows
-     * the next portion.
+     * Registers a listener to be notified with the timings of the phases
+     * of showing, advancing and closing the tips. The listener is called
+     * on the main thread. If there is no listener (the default) the
+     * timings are not measured at all.
+     * @param listener the metrics listener or null.
+     * @see TipMetrics
      */
-    private void showNextPortion(){
-        removeTipViews();
-        showTips(++currentIndex);
+    public void setMetricsListener(MetricsListener listener){
+        metricsListener = listener;
     }
 
     /**
-     * Removes all tip views from the WindowManager
-     * if there are any.
+     * Registers a listener to be notified with the janky frames counted
+     * while each portion of tips is shown. The listener is called on the
+     * main thread when the portion is removed. If there is no listener
+     * (the default) the frames are not monitored at all.
+     * @param listener the jank listener or null.
+     * @see JankStats
      */
-    private void removeTipViews(){
-        final boolean wrapped = wrapper != null;
-        if(wrapped){
-            windowManager.removeView(wrapper);
-            wrapper = null;
-        }
-        if(tips.size() > 0) {
-            Tip tip = tips.get(currentIndex);
-            do {
-                View tipView = tip.tipView;
-                if(tipView != null){
-                    tip.tipView = null;
-                    if(!wrapped){
-                        windowManager.removeView(tipView);
-                    } else {
-                        tip.highlightingView = null;
-                    }
-                }
-                tip = tip.sibling;
-            } while (tip != null);
+    public void setJankListener(JankListener listener){
+        jankListener = listener;
+        if(listener == null && jankMonitor != null){
+            jankMonitor.stop();
         }
     }
 
     /**
-     * Shows the portion of tips with the given index from
-     * the list.
+     * Sets the store that remembers the tips seen by the user. If the
+     * store is set, the portions of tips whose tips all have been seen
+     * are skipped, and the tips are marked as seen when the user moves
+     * to the next portion or clicks the tip. Only the tips with ids are
+     * remembered, see {@link Tip#setId(int)}. The store is loaded in
+     * background from within this method.
+     * @param store the store or null to show all the tips.
+     * @see SeenTipsStore#getInstance(Context)
      */
-    private void showTips(int index){
-        if(index == tips.size()){
-            notifyClosed(false);
-            currentIndex = 0;
-            return;
+    public void setSeenTipsStore(SeenTipsStore store){
+        seenTipsStore = store;
+        if(store != null){
+            store.preload();
         }
-        Tip tip = tips.get(index);
-        if(tip.highlightingEnabled){
-            showWrapped(tip);
-        } else {
-            showSeparately(tip);
+    }
+
+    /**
+     * Sets where the tips are shown. Can be either {@link #HOST_MODE_WINDOW}
+     * (the default) or {@link #HOST_MODE_DECOR_VIEW}. The new mode is
+     * applied to the portions of tips shown after this call.
+     * @param mode the host mode.
+     */
+    public void setHostMode(int mode){
+        if(mode != HOST_MODE_WINDOW && mode != HOST_MODE_DECOR_VIEW){
+            throw new IllegalArgumentException(
+                    "Unsupported host mode: " + mode + ".");
         }
+        hostMode = mode;
     }
 
     /**
-     * Show the portion of tips (as specified by the given root tip)
-     * by adding tip view to an special wrapper (AbsoluteLayout is
-     * most convenient variant in this case despite this class is
-     * deprecated) and then adding this wrapper ViewGroup to the
-     * WindowManager. This method is used when highlighting is enabled.
+     * Returns the current host mode.
+     * @return host mode.
      */
-    private void showWrapped(Tip tip){
-        final Tip firstSibling = tip;
-        wrapper = new AbsoluteLayout(context);
-        wrapper.setOnTouchListener(wrapperTouchListener);
-        // add highlighting views to the wrapper first
-        do {
-            if(tip.target != null){
-                tip = tip.sibling;
-                continue;
-            }
-            final View highlightingView = new View(context);
-            tip.highlightingView = highlightingView;
-            highlightingView.setTag(R.id.tag_id_tip, tip);
-            highlightingView.setOnClickListener(highlightingViewClickListener);
-            AbsoluteLayout.LayoutParams lp = getLayoutParamsForWrapper();
-            wrapper.addView(highlightingView, lp);
-            tip = tip.sibling;
-        } while (tip != null);
-        tip = firstSibling;
-        // add tip views to the wrapper
-        do {
-            View tipView = createTipView(tip);
-            AbsoluteLayout.LayoutParams lp = getLayoutParamsForWrapper();
-            wrapper.addView(tipView, lp);
-            tip = tip.sibling;
-        } while (tip != null);
-        // and finally add the wrapper to the WindowManager
-        WindowManager.LayoutParams lp = getWrapperLayoutParams();
-        windowManager.addView(wrapper, lp);
-        adjustPositions();
+    public int getHostMode() {
+        return hostMode;
     }
 
-    private AbsoluteLayout.LayoutParams getLayoutParamsForWrapper(){
-        int size = ViewGroup.LayoutParams.WRAP_CONTENT;
-        return new AbsoluteLayout.LayoutParams(size, size, 0, 0);
+    /**
+     * Enables or disables the cross-fade between the portions of tips
+     * shown with highlighting. The window of the highlighting is kept
+     * while the portions are shown one after another, if the cross-fade
+     * is enabled the tips of the previous portion fade out within this
+     * window while the tips of the next portion fade in. The cross-fade
+     * is disabled by default.
+     * @param enabled true to enable the cross-fade, false otherwise.
+     */
+    public void setCrossFadeEnabled(boolean enabled){
+        crossFadeEnabled = enabled;
     }
 
-    private WindowManager.LayoutParams getWrapperLayoutParams(){
-        int windowType = WindowManager.LayoutParams.TYPE_APPLICATION;
-        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(windowType);
-        lp.width = WindowManager.LayoutParams.WRAP_CONTENT;
-        lp.height = WindowManager.LayoutParams.WRAP_CONTENT;
-        lp.gravity = Gravity.TOP | Gravity.START;
-        lp.format = PixelFormat.TRANSLUCENT;
-        lp.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
-                WindowManager.LayoutParams.FLAG_DIM_BEHIND |
-                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
-        lp.dimAmount = DIM_AMOUNT;
-        return lp;
+    /**
+     * Checks whether the cross-fade between the portions of tips
+     * is enabled or not.
+     * @return true if the cross-fade is enabled, false otherwise.
+     * @see #setCrossFadeEnabled(boolean)
+     */
+    public boolean isCrossFadeEnabled() {
+        return crossFadeEnabled;
     }
 
     /**
-     * Shows tips by adding them directly into WindowManager
-     * without wrapping them into additional ViewGroup. This
-     * method is used if highlighting is disabled.
+     * Sets the animation played when the tips appear on the screen. The
+     * animations of all the tips are driven by a single frame callback.
+     * If the animation is null (the default) the tips appear without
+     * animation. The tips shown in separate windows use the dialog window
+     * animations instead if neither the enter nor the exit animation is
+     * set.
+     * <p>
+     * The animations are not played in the {@link #RENDERING_MODE_OVERLAY}.
+     * @param animation the enter animation or null.
+     * @see TipAnimations
      */
-    private void showSeparately(Tip tip){
-        boolean first = true;
-        do {
-            showConcreteTip(tip, first);
-            tip = tip.sibling;
-            first = false;
-        } while (tip != null);
-        adjustPositions();
+    public void setEnterAnimation(TipAnimation animation){
+        enterAnimation = animation;
     }
 
     /**
-     * Shows a tip by adding tip view to the WindowManager.
+     * Returns the animation played when the tips appear on the screen.
+     * @return the enter animation or null.
      */
-    private void showConcreteTip(Tip tip, boolean watchOutsideTouch){
-        View tipView = createTipView(tip);
-        WindowManager.LayoutParams lp = getTipViewLayoutParams(watchOutsideTouch);
-        windowManager.addView(tipView, lp);
+    public TipAnimation getEnterAnimation() {
+        return enterAnimation;
     }
 
     /**
-     * Creates new tip view according to the given tip options.
+     * Sets the animation played when the tips disappear from the screen.
+     * If the animation is null (the default) the tips disappear at once.
+     * The tips shown in separate windows use the dialog window animations
+     * instead if neither the enter nor the exit animation is set. The tips
+     * of the highlighting wrapper disappear at once when the wrapper itself
+     * is removed, for example when the last portion is closed.
+     * <p>
+     * The animations are not played in the {@link #RENDERING_MODE_OVERLAY}.
+     * @param animation the exit animation or null.
+     * @see TipAnimations
      */
-    private TipView createTipView(Tip tip){
-        TipView tipView = new TipView(context);
-        tipView.setTag(R.id.tag_id_tip, tip);
-        tip.tipView = tipView;
-        tipView.setColor(tip.color);
-        tipView.setTextAppearance(context, tip.textAppearanceRes);
-        tipView.setTextColor(tip.textColor);
-        tipView.setTextSize(TypedValue.COMPLEX_UNIT_PX, tip.textSize);
-        int gravity = tip.gravity == Tip.GRAVITY_START ?
-                Gravity.START | Gravity.CENTER_VERTICAL :
-                Gravity.CENTER;
-        tipView.setGravity(gravity);
-        tipView.setOnTouchListener(tipViewTouchListener);
-        tipView.setText(tip.text);
-        int align = tip.align;
-        if(align != Tip.ALIGN_AUTO){
-            int mode = getTipViewMode(align);
-            tipView.setMode(mode);
-        }
-        tipView.setPadding(tip.padding);
-        tipView.setMinWidth(tip.minWidth);
-        tipView.setMaxWidth(tip.maxWidth);
-        tipView.setMinHeight(tip.minHeight);
-        tipView.setPointerPosition(tip.pointerPosition);
-        tipView.setPointerOffset(tip.pointerOffset);
-        tipView.setPointerProtrusion(1);
-        return tipView;
+    public void setExitAnimation(TipAnimation animation){
+        exitAnimation = animation;
     }
 
-    private WindowManager.LayoutParams getTipViewLayoutParams(boolean watchOutsideTouch){
-        int windowType = WindowManager.LayoutParams.TYPE_APPLICATION;
-        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(windowType);
-        lp.width = WindowManager.LayoutParams.WRAP_CONTENT;
-        lp.height = WindowManager.LayoutParams.WRAP_CONTENT;
-        lp.gravity = Gravity.TOP | Gravity.START;
-        lp.format = PixelFormat.TRANSLUCENT;
-        lp.windowAnimations = android.R.style.Animation_Dialog;
-        lp.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+    /**
+     * Returns the animation played when the tips disappear from the screen.
+     * @return the exit animation or null.
+     */
+    public TipAnimation getExitAnimation() {
+        return exitAnimation;
+    }
+
+    /**
+     * Sets the animation of the pointers played when the tips appear
+     * on the screen for the tips that have the pointer animation enabled
+     * (see {@link Tip#setPointerAnimationEnabled(boolean)}). The default
+     * animation is {@link TipAnimations#POINTER_GROW}.
+     * @param animation the pointer animation.
+     */
+    public void setPointerAnimation(@NonNull PointerAnimation animation){
+        checkNonNullParameter(animation, "animation");
+        pointerAnimation = animation;
+    }
+
+    /**
+     * Returns the animation of the pointers.
+     * @return the pointer animation.
+     */
+    public PointerAnimation getPointerAnimation() {
+        return pointerAnimation;
+    }
+
+    /**
+     * Sets the way the tips are rendered. Can be either
+     * {@link #RENDERING_MODE_VIEWS} (the default) or
+     * {@link #RENDERING_MODE_OVERLAY}. The new mode is applied to the
+     * portions of tips shown after this call.
+     * @param mode the rendering mode.
+     */
+    public void setRenderingMode(int mode){
+        if(mode != RENDERING_MODE_VIEWS && mode != RENDERING_MODE_OVERLAY){
+            throw new IllegalArgumentException(
+                    "Unsupported rendering mode: " + mode + ".");
+        }
+        renderingMode = mode;
+    }
+
+    /**
+     * Returns the current rendering mode.
+     * @return rendering mode.
+     */
+    public int getRenderingMode() {
+        return renderingMode;
+    }
+
+    /**
+     * Sets the way the target views are highlighted. Can be one of
+     * {@link #HIGHLIGHTING_MODE_SNAPSHOT} (the default),
+     * {@link #HIGHLIGHTING_MODE_CUTOUT} or {@link #HIGHLIGHTING_MODE_LIVE}.
+     * The new mode is applied to the portions of tips shown after this call.
+     * @param mode the highlighting mode.
+     */
+    public void setHighlightingMode(int mode){
+        if(mode != HIGHLIGHTING_MODE_SNAPSHOT && mode != HIGHLIGHTING_MODE_CUTOUT &&
+                mode != HIGHLIGHTING_MODE_LIVE){
+            throw new IllegalArgumentException(
+                    "Unsupported highlighting mode: " + mode + ".");
+        }
+        highlightingMode = mode;
+    }
+
+    /**
+     * Returns the current highlighting mode.
+     * @return highlighting mode.
+     */
+    public int getHighlightingMode() {
+        return highlightingMode;
+    }
+
+    /**
+     * Sets the maximum number of times per second the highlighting of a
+     * target is redrawn in the {@link #HIGHLIGHTING_MODE_LIVE} mode. A
+     * target is redrawn only if it is invalidated since the previous
+     * redraw, the targets that are invalidated more often are redrawn
+     * at this rate and the redraws in between are skipped. Each redraw
+     * draws the target on the main thread and uploads the bitmap again,
+     * so the cost is bounded by this rate and by the size of the bitmaps
+     * (see {@link #setHighlightingDownsampling(int)}). The default value
+     * is {@value #DEFAULT_LIVE_HIGHLIGHTING_MAX_RATE}.
+     * @param maxRate the maximum number of redraws per second, must be
+     *                positive.
+     */
+    public void setLiveHighlightingMaxRate(int maxRate){
+        if(maxRate < 1){
+            throw new IllegalArgumentException(
+                    "Live highlighting rate must be positive.");
+        }
+        liveHighlightingMaxRate = maxRate;
+        if(liveHighlighter != null){
+            liveHighlighter.setMaxRate(maxRate);
+        }
+    }
+
+    /**
+     * Returns the maximum number of redraws per second of the live
+     * highlighting.
+     * @return maximum redraw rate.
+     * @see #setLiveHighlightingMaxRate(int)
+     */
+    public int getLiveHighlightingMaxRate() {
+        return liveHighlightingMaxRate;
+    }
+
+    /**
+     * Returns the number of times the highlighting of a target is
+     * redrawn in the {@link #HIGHLIGHTING_MODE_LIVE} mode.
+     * @return number of redraws.
+     */
+    public int getLiveHighlightingRefreshCount() {
+        return liveHighlighter != null ? liveHighlighter.getRefreshCount() : 0;
+    }
+
+    /**
+     * Returns the number of times the highlighting of an invalidated
+     * target is not redrawn in the {@link #HIGHLIGHTING_MODE_LIVE} mode
+     * because the maximum rate is reached. A high number relative to
+     * the number of redraws means that the targets animate faster than
+     * their highlighting.
+     * @return number of skipped redraws.
+     * @see #setLiveHighlightingMaxRate(int)
+     */
+    public int getLiveHighlightingSkippedCount() {
+        return liveHighlighter != null ? liveHighlighter.getSkippedCount() : 0;
+    }
+
+    /**
+     * Sets the config of the bitmaps the target views are captured into
+     * for highlighting. Can be either {@code ARGB_8888} (the default) or
+     * {@code RGB_565}. The latter takes half as much memory, but does not
+     * support transparency, so it is suitable only for opaque targets.
+     * @param config the bitmap config.
+     * @see #setHighlightingDownsampling(int)
+     * @see HighlightBitmapPool
+     */
+    public void setHighlightingBitmapConfig(@NonNull Bitmap.Config config){
+        checkNonNullParameter(config, "config");
+        if(config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565){
+            throw new IllegalArgumentException(
+                    "Unsupported bitmap config: " + config + ".");
+        }
+        highlightingBitmapConfig = config;
+    }
+
+    /**
+     * Sets the factor by which the target views are downsampled when they
+     * are captured for highlighting. The captured bitmap is then scaled up
+     * to the size of the target. The default value is {@code 1}, meaning
+     * that the targets are captured in their full resolution.
+     * @param factor the downsampling factor, must be positive.
+     * @see #setHighlightingBitmapConfig(Bitmap.Config)
+     */
+    public void setHighlightingDownsampling(int factor){
+        if(factor < 1){
+            throw new IllegalArgumentException(
+                    "Downsampling factor must be positive.");
+        }
+        highlightingDownsampling = factor;
+    }
+
+    /**
+     * Enables or disables capturing the targets for highlighting by
+     * copying their rendered pixels with the {@link android.view.PixelCopy}.
+     * The copy is made by the render thread, the main thread is not
+     * blocked by drawing the targets, and the content that the views do
+     * not draw themselves is captured too, such as the content of the
+     * {@link android.view.SurfaceView} and {@link TextureView} targets,
+     * maps and video previews. The highlighting of a target appears when
+     * the copy is finished, usually within a frame or two.
+     * <p>
+     * The surface views are copied on API level 24 and higher, the other
+     * targets on API level 26 and higher and only if they are within the
+     * activity window and the tips are shown in separate windows (see
+     * {@link #HOST_MODE_WINDOW}). Otherwise, or if the copy fails, the
+     * targets are drawn on the main thread as usual. This is disabled by
+     * default.
+     * @param enabled true to enable capturing with the PixelCopy, false
+     *                otherwise.
+     */
+    public void setPixelCopyCaptureEnabled(boolean enabled){
+        pixelCopyCaptureEnabled = enabled;
+    }
+
+    /**
+     * Checks whether the targets are captured with the PixelCopy.
+     * @return true if the PixelCopy is used, false otherwise.
+     * @see #setPixelCopyCaptureEnabled(boolean)
+     */
+    public boolean isPixelCopyCaptureEnabled() {
+        return pixelCopyCaptureEnabled;
+    }
+
+    /**
+     * Sets the number of the portions of tips following the shown one
+     * that are prefetched while the main thread is idle. Prefetching a
+     * portion creates and measures it's tip views, finds the targets and
+     * captures the targets for highlighting, so that showing the portion
+     * only attaches the prefetched state. A single portion is prefetched
+     * per idle time. The captured targets are dropped when the layout of
+     * the activity changes and captured again. The default value is
+     * {@value #DEFAULT_PREFETCH_DEPTH}.
+     * @param depth the number of the prefetched portions, {@code 0}
+     *              disables prefetching.
+     */
+    public void setPrefetchDepth(int depth){
+        if(depth < 0){
+            throw new IllegalArgumentException(
+                    "Prefetch depth must not be negative.");
+        }
+        prefetchDepth = depth;
+        if(depth == 0){
+            cancelPrefetch();
+        }
+    }
+
+    /**
+     * Returns the number of the portions of tips following the shown
+     * one that are prefetched while the main thread is idle.
+     * @return the prefetch depth.
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Enables or disables tracking of the targets. When the tracking
+     * is enabled the shown tips follow their target views if they are
+     * moved (for example scrolled, animated or resized), the tips whose
+     * target views leave the visible frame are hidden until the targets
+     * come back. The positions of the targets are checked once per frame
+     * drawn by the activity window and only the tips whose targets are
+     * actually moved are placed again. The tracking is disabled by
+     * default, the tips are placed only once when they are shown.
+     * <p>
+     * Note that the tips whose target is a point are never moved.
+     * @param enabled true to enable the tracking, false otherwise.
+     */
+    public void setTargetTrackingEnabled(boolean enabled){
+        targetTrackingEnabled = enabled;
+        if(!enabled){
+            stopTracking();
+        } else if(isShown()){
+            startTracking();
+        }
+    }
+
+    /**
+     * Checks whether the tracking of the targets is enabled or not.
+     * @return true if the tracking is enabled, false otherwise.
+     * @see #setTargetTrackingEnabled(boolean)
+     */
+    public boolean isTargetTrackingEnabled() {
+        return targetTrackingEnabled;
+    }
+
+    /**
+     * Sets the way the tips are placed around their targets. Can be
+     * either {@link #PLACEMENT_MODE_RULES} (the default) or
+     * {@link #PLACEMENT_MODE_SCORED}. The new mode is applied to the
+     * tips placed after this call.
+     * @param mode the placement mode.
+     */
+    public void setPlacementMode(int mode){
+        if(mode != PLACEMENT_MODE_RULES && mode != PLACEMENT_MODE_SCORED){
+            throw new IllegalArgumentException(
+                    "Unsupported placement mode: " + mode + ".");
+        }
+        placementMode = mode;
+    }
+
+    /**
+     * Returns the current placement mode.
+     * @return placement mode.
+     */
+    public int getPlacementMode() {
+        return placementMode;
+    }
+
+    /**
+     * Enables or disables the collision avoidance of the tips shown
+     * together. When it is enabled the tips of a portion are placed all
+     * at once: each tip with the {@link Tip#ALIGN_AUTO} alignment gets
+     * the alignment with which it overlaps the other tips and the
+     * targets of the portion least, stays within the visible frame and
+     * is close to it's target with the pointer looking straight at it.
+     * The tips with the fixed alignments are placed as they are, but
+     * the other tips avoid them. When it is disabled (by default) each
+     * tip is placed independently of the others.
+     * <p>
+     * Note that the collision avoidance is not applied to the tips
+     * drawn in the overlay (see {@link #RENDERING_MODE_OVERLAY}).
+     * @param enabled true to enable the collision avoidance, false
+     *                otherwise.
+     */
+    public void setCollisionAvoidanceEnabled(boolean enabled){
+        collisionAvoidanceEnabled = enabled;
+    }
+
+    /**
+     * Checks whether the collision avoidance is enabled or not.
+     * @return true if the collision avoidance is enabled, false otherwise.
+     * @see #setCollisionAvoidanceEnabled(boolean)
+     */
+    public boolean isCollisionAvoidanceEnabled() {
+        return collisionAvoidanceEnabled;
+    }
+
+    /**
+     * Removes the currently shown tip views from the screen and shows
+     * the next portion.
+     */
+    private void showNextPortion(){
+        final long startTime = startPhase();
+        markPortionSeen(tips.get(currentIndex));
+        removeTipViews(crossFadeEnabled);
+        showTips(++currentIndex);
+        finishPhase(TipMetrics.PHASE_ADVANCE, startTime);
+    }
+
+    /**
+     * Removes all tip views from the WindowManager or from
+     * the wrapper if there are any. The wrapper itself is kept
+     * so that it can be reused by the next portion, the tip
+     * views in the wrapper are faded out if requested.
+     */
+    private void removeTipViews(boolean fadeOut){
+        stopTracking();
+        stopLiveHighlighting();
+        finishJankMonitoring();
+        if(overlay != null){
+            if(overlayAttached){
+                viewHost.removeView(overlay);
+                overlayAttached = false;
+            }
+            overlay = null;
+            return;
+        }
+        final HighlightingLayout wrapper = this.wrapper;
+        if(wrapper != null){
+            // the views of the previous portion are
+            // removed at once if it is still fading out
+            finishCrossFade();
+        }
+        if(tips.size() > 0) {
+            Tip tip = tips.get(currentIndex);
+            do {
+                TipView tipView = tip.tipView;
+                if(tipView != null){
+                    tip.tipView = null;
+                    if(wrapper == null){
+                        dismissTipView(tipView, viewHost);
+                    } else if(fadeOut){
+                        fadeOutTip(tip, tipView);
+                    } else {
+                        removeHighlightingView(tip);
+                        dismissTipView(tipView, wrapper);
+                    }
+                }
+                tip = tip.sibling;
+            } while (tip != null);
+        }
+    }
+
+    /**
+     * Removes the highlighting view of the given tip from
+     * the wrapper and releases it's highlighting bitmap.
+     */
+    private void removeHighlightingView(Tip tip){
+        View highlightingView = tip.highlightingView;
+        if(highlightingView != null){
+            wrapper.removeView(highlightingView);
+            releaseHighlighting(tip);
+            tip.highlightingView = null;
+        }
+    }
+
+    /**
+     * Detaches the tip view and the highlighting view of the given tip
+     * from the tip, so that they are faded out when the next portion
+     * is shown and removed after that. The views do not respond to the
+     * touches anymore.
+     */
+    private void fadeOutTip(Tip tip, TipView tipView){
+        tipView.setOnTouchListener(null);
+        fadingViews.add(tipView);
+        View highlightingView = tip.highlightingView;
+        if(highlightingView != null){
+            tip.highlightingView = null;
+            highlightingView.setOnClickListener(null);
+            highlightingView.setClickable(false);
+            fadingViews.add(highlightingView);
+            // the drawable of the highlighting view
+            // draws the bitmap until it is removed
+            Bitmap bitmap = tip.highlightingBitmap;
+            if(bitmap != null){
+                tip.highlightingBitmap = null;
+                fadingBitmaps.add(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Removes the wrapper from the window if it is shown.
+     */
+    private void removeWrapper(){
+        if(wrapper != null){
+            finishCrossFade();
+            tipsAnimator.finishExits(wrapper);
+            viewHost.removeView(wrapper);
+            wrapper = null;
+        }
+    }
+
+    /**
+     * Cross-fades the views of the previous portion that are still
+     * in the wrapper with the views of the portion that is shown.
+     * The alpha of all the views is changed by a single animator,
+     * the cutouts of the wrapper follow the alpha of the highlighting
+     * views.
+     */
+    private void startCrossFade(){
+        final List<View> appearingViews = this.appearingViews;
+        appearingViews.clear();
+        final int childCount = wrapper.getChildCount();
+        for(int i = 0; i < childCount; i++){
+            View child = wrapper.getChildAt(i);
+            if(!fadingViews.contains(child)){
+                appearingViews.add(child);
+                child.setAlpha(0F);
+            }
+        }
+        ValueAnimator animator = ValueAnimator.ofFloat(0F, 1F);
+        int duration = context.getResources().getInteger(
+                android.R.integer.config_shortAnimTime);
+        animator.setDuration(duration);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float fraction = animation.getAnimatedFraction();
+                setAlpha(fadingViews, 1F - fraction);
+                setAlpha(AppTips.this.appearingViews, fraction);
+                wrapper.invalidate();
+            }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if(crossFadeAnimator == animation){
+                    crossFadeAnimator = null;
+                    finishCrossFade();
+                }
+            }
+        });
+        crossFadeAnimator = animator;
+        animator.start();
+    }
+
+    private static void setAlpha(List<View> views, float alpha){
+        for(int i = 0, size = views.size(); i < size; i++){
+            views.get(i).setAlpha(alpha);
+        }
+    }
+
+    /**
+     * Removes the faded out views from the wrapper and makes
+     * the appearing views fully opaque.
+     */
+    private void finishCrossFade(){
+        Animator animator = crossFadeAnimator;
+        if(animator != null){
+            crossFadeAnimator = null;
+            animator.cancel();
+        }
+        final List<View> fadingViews = this.fadingViews;
+        for(int i = 0, size = fadingViews.size(); i < size; i++){
+            View view = fadingViews.get(i);
+            view.setAlpha(1F);
+            if(view instanceof TipView){
+                recycleTipView((TipView) view);
+            } else {
+                wrapper.removeView(view);
+                view.setBackground(null);
+            }
+        }
+        fadingViews.clear();
+        final List<Bitmap> fadingBitmaps = this.fadingBitmaps;
+        for(int i = 0, size = fadingBitmaps.size(); i < size; i++){
+            bitmapPool.release(fadingBitmaps.get(i));
+        }
+        fadingBitmaps.clear();
+        setAlpha(appearingViews, 1F);
+        appearingViews.clear();
+    }
+
+    /**
+     * Shows the portion of tips with the given index from
+     * the list.
+     */
+    private void showTips(int index){
+        index = skipPortions(index);
+        currentIndex = index;
+        if(index == tips.size()){
+            removeWrapper();
+            detachHostLayout();
+            releasePreparedState();
+            targetIndex.release();
+            notifyClosed(false);
+            currentIndex = 0;
+            return;
+        }
+        Tip tip = tips.get(index);
+        if(!canReuseWrapper(tip)){
+            removeWrapper();
+        }
+        viewHost = obtainViewHost();
+        if(metricsListener != null){
+            // the calls are counted only when the metrics are collected
+            viewHost = new CountingViewManager(viewHost);
+            showStartTime = System.nanoTime();
+            layoutWaits = 0;
+        }
+        if(jankListener != null){
+            startJankMonitoring(index, tip);
+        }
+        Tip sibling = tip;
+        do {
+            sibling.targetHidden = false;
+            sibling = sibling.sibling;
+        } while (sibling != null);
+        if(renderingMode == RENDERING_MODE_OVERLAY){
+            showInOverlay(tip);
+        } else if(tip.highlightingEnabled){
+            showWrapped(tip);
+        } else {
+            showSeparately(tip);
+        }
+    }
+
+    /**
+     * Returns the index of the first portion of tips starting from the
+     * given one that can be shown, or the number of portions if there is
+     * no such portion. The portions that all have been seen and the ones
+     * with garbage collected targets are skipped.
+     */
+    private int skipPortions(int index){
+        final List<Tip> tips = this.tips;
+        final int size = tips.size();
+        while (index < size && isPortionSkipped(tips.get(index))){
+            index++;
+        }
+        return index;
+    }
+
+    private boolean isPortionSkipped(Tip tip){
+        return (seenTipsStore != null && isPortionSeen(tip)) ||
+                hasCollectedTarget(tip);
+    }
+
+    /**
+     * Checks whether the portion of tips with the given root tip has
+     * a target view that is garbage collected. Such target is gone with
+     * it's hierarchy, so it's portion can not be shown anymore.
+     */
+    private boolean hasCollectedTarget(Tip tip){
+        do {
+            final WeakReference<View> targetViewReference = tip.targetView;
+            if(targetViewReference != null && targetViewReference.get() == null){
+                return true;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        return false;
+    }
+
+    /**
+     * Checks whether all the targets of the portion of tips with the
+     * given root tip are available.
+     */
+    private boolean hasAllTargets(Tip tip){
+        do {
+            if(tip.target == null && findTargetView(tip) == null){
+                return false;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        return true;
+    }
+
+    /**
+     * Skips the shown portion of tips whose target has disappeared
+     * while it was waiting for the layout, the next portion is shown
+     * instead. The skipped portion is not marked as seen.
+     */
+    private void skipUnavailablePortion(){
+        removeTipViews(false);
+        showTips(++currentIndex);
+    }
+
+    private boolean isPortionSeen(Tip tip){
+        final SeenTipsStore store = seenTipsStore;
+        do {
+            if(!store.isSeen(tip.id)){
+                return false;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        return true;
+    }
+
+    /**
+     * Marks the tips of the portion with the given root tip as seen
+     * if there is a store of the seen tips.
+     */
+    private void markPortionSeen(Tip tip){
+        final SeenTipsStore store = seenTipsStore;
+        if(store == null){
+            return;
+        }
+        do {
+            if(tip.id != Tip.NO_ID){
+                store.markSeen(tip.id);
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+    }
+
+    /**
+     * Checks whether the wrapper of the previous portion (if any) can be
+     * used to show the portion of tips with the given root tip, so that
+     * the window of the wrapper is not recreated.
+     */
+    private boolean canReuseWrapper(Tip tip){
+        final HighlightingLayout wrapper = this.wrapper;
+        if(wrapper == null || renderingMode != RENDERING_MODE_VIEWS ||
+                !tip.highlightingEnabled){
+            return false;
+        }
+        final boolean cutouts = highlightingMode == HIGHLIGHTING_MODE_CUTOUT;
+        final boolean windowHosted = hostLayout == null;
+        return wrapper.isCutoutsEnabled() == cutouts &&
+                windowHosted == (hostMode == HOST_MODE_WINDOW);
+    }
+
+    /**
+     * Returns the host for the views of the portion of tips that is being
+     * shown according to the current host mode, the host layout is added
+     * to the decor view of the activity if it is needed.
+     */
+    private ViewManager obtainViewHost(){
+        if(hostMode == HOST_MODE_WINDOW){
+            detachHostLayout();
+            return windowManager;
+        }
+        if(hostLayout == null){
+            ViewGroup decorView = (ViewGroup) getActivityWindow().getDecorView();
+            hostLayout = new TipHostLayout(context);
+            int size = ViewGroup.LayoutParams.MATCH_PARENT;
+            decorView.addView(hostLayout, new FrameLayout.LayoutParams(size, size));
+        }
+        return hostLayout;
+    }
+
+    /**
+     * Removes the host layout from the decor view if it is added.
+     */
+    private void detachHostLayout(){
+        TipHostLayout hostLayout = this.hostLayout;
+        if(hostLayout != null){
+            this.hostLayout = null;
+            ViewParent parent = hostLayout.getParent();
+            if(parent instanceof ViewGroup){
+                ((ViewGroup) parent).removeView(hostLayout);
+            }
+        }
+    }
+
+    /**
+     * The views that clear the cutouts in the scrim must be drawn
+     * into a separate layer if they are not in a separate window,
+     * otherwise the cutouts would clear the activity content too.
+     */
+    private void setUpCutoutLayer(View view){
+        if(hostLayout != null){
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+    }
+
+    /**
+     * Shows the portion of tips (as specified by the given root tip)
+     * within a single overlay view. The overlay is added to the
+     * WindowManager when all the targets are laid out, so that it is
+     * added with the final positions of the bubbles.
+     */
+    private void showInOverlay(Tip tip){
+        final TipsOverlayView overlay = new TipsOverlayView(context, overlayCallback);
+        this.overlay = overlay;
+        overlay.setTips(tip, tip.highlightingEnabled, SCRIM_COLOR);
+        if(tip.highlightingEnabled){
+            setUpCutoutLayer(overlay);
+        }
+        View targetView = findTargetViewNotLaidOut(tip);
+        if(targetView == null){
+            attachOverlay();
+            return;
+        }
+        final View viewToObserve = targetView;
+        final long waitStartTime = startPhase();
+        final ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
+        observer.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                if(observer.isAlive()){
+                    observer.removeOnGlobalLayoutListener(this);
+                } else {
+                    ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
+                    observer.removeOnGlobalLayoutListener(this);
+                }
+                onLayoutWaitFinished(waitStartTime);
+                // the tips might be closed while waiting for the layout
+                if(AppTips.this.overlay != overlay || overlayAttached){
+                    return;
+                }
+                if(hasAllTargets(overlay.getTip(0))){
+                    attachOverlay();
+                } else {
+                    skipUnavailablePortion();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the first target view of the given portion of tips
+     * that is not laid out yet or null if all of them are laid out.
+     */
+    private View findTargetViewNotLaidOut(Tip tip){
+        do {
+            if(tip.target == null){
+                View targetView = getTargetView(tip);
+                if(!ViewCompat.isLaidOut(targetView)){
+                    return targetView;
+                }
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        return null;
+    }
+
+    /**
+     * Places all the bubbles of the overlay and adds it to the
+     * WindowManager. If the highlighting is enabled the overlay
+     * occupies the whole screen, otherwise only the bounds of the
+     * bubbles, so that the touches outside of them reach the activity.
+     */
+    private void attachOverlay(){
+        final TipsOverlayView overlay = this.overlay;
+        final Rect targetRect = this.targetRect;
+        final int count = overlay.getBubbleCount();
+        final long startTime = startPhase();
+        updateVisibleFrame();
+        for(int i = 0; i < count; i++){
+            Tip tip = overlay.getTip(i);
+            View targetView = resolveTargetRect(tip, targetRect);
+            placeBubble(i, tip, targetView != null, targetRect);
+        }
+        finishPhase(TipMetrics.PHASE_PLACEMENT, startTime);
+
+        int windowType = WindowManager.LayoutParams.TYPE_APPLICATION;
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(windowType);
+        lp.gravity = Gravity.TOP | Gravity.START;
+        lp.format = PixelFormat.TRANSLUCENT;
+        lp.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
+        Tip firstTip = overlay.getTip(0);
+        if(firstTip.highlightingEnabled){
+            lp.width = WindowManager.LayoutParams.MATCH_PARENT;
+            lp.height = WindowManager.LayoutParams.MATCH_PARENT;
+            overlay.setOrigin(0, 0);
+        } else {
+            overlay.getBubblesBounds(targetRect);
+            lp.x = targetRect.left; lp.y = targetRect.top;
+            lp.width = targetRect.width();
+            lp.height = targetRect.height();
+            overlay.setOrigin(targetRect.left, targetRect.top);
+        }
+        viewHost.addView(overlay, lp);
+        overlayAttached = true;
+        onPortionPlaced();
+    }
+
+    /**
+     * Places the bubble of the overlay with the given index
+     * according to the given rectangle of it's target.
+     */
+    private void placeBubble(int index, Tip tip, boolean highlightTarget, Rect targetRect){
+        final PlacementInput input = placementInput;
+        input.setTarget(targetRect.left, targetRect.top,
+                targetRect.width(), targetRect.height())
+                .setOffsets(tip.horizontalOffset, tip.verticalOffset)
+                .setAlign(tip.align)
+                .setAutoPointerPositionEnabled(tip.autoPointerPositionEnabled)
+                .setStrategy(placementMode);
+        applyVisibleFrame(input);
+        overlay.placeBubble(index, input, placement);
+        if(highlightTarget){
+            overlay.setBubbleTarget(index, targetRect.left, targetRect.top,
+                    targetRect.right, targetRect.bottom);
+        }
+        tip.placedTargetRect.set(targetRect);
+    }
+
+    private final TipsOverlayView.Callback overlayCallback = new TipsOverlayView.Callback() {
+
+        @Override
+        public void onTipClick(Tip tip) {
+            if(overlay.removeTip(tip)){
+                showNextPortion();
+            }
+        }
+
+        @Override
+        public void onOutsideTouch() {
+            showNextPortion();
+        }
+
+        @Override
+        public boolean onPassTouch(MotionEvent event) {
+            if(hostLayout != null || destroyed){
+                // the touch not taken by the overlay falls
+                // through the host layout to the activity
+                return false;
+            }
+            final View decorView = getActivityWindow().getDecorView();
+            final int[] position = AppTips.this.position;
+            decorView.getLocationOnScreen(position);
+            event.offsetLocation(-position[0], -position[1]);
+            decorView.dispatchTouchEvent(event);
+            event.offsetLocation(position[0], position[1]);
+            return true;
+        }
+    };
+
+    /**
+     * Show the portion of tips (as specified by the given root tip)
+     * by adding tip view to an special wrapper (AbsoluteLayout is
+     * most convenient variant in this case despite this class is
+     * deprecated) and then adding this wrapper ViewGroup to the
+     * WindowManager. This method is used when highlighting is enabled.
+     */
+    private void showWrapped(Tip tip){
+        final Tip firstSibling = tip;
+        final boolean cutouts = highlightingMode == HIGHLIGHTING_MODE_CUTOUT;
+        // the wrapper of the previous portion is reused if it is kept
+        final boolean reused = wrapper != null;
+        if(!reused){
+            wrapper = new HighlightingLayout(context);
+            wrapper.setCutoutsEnabled(cutouts, SCRIM_COLOR);
+            if(cutouts){
+                setUpCutoutLayer(wrapper);
+            }
+            wrapper.setOnTouchListener(wrapperTouchListener);
+        }
+        // add highlighting views to the wrapper first
+        do {
+            if(tip.target != null){
+                tip = tip.sibling;
+                continue;
+            }
+            final View highlightingView = new View(context);
+            tip.highlightingView = highlightingView;
+            highlightingView.setTag(R.id.tag_id_tip, tip);
+            highlightingView.setOnClickListener(highlightingViewClickListener);
+            AbsoluteLayout.LayoutParams lp = getLayoutParamsForWrapper();
+            wrapper.addView(highlightingView, lp);
+            tip = tip.sibling;
+        } while (tip != null);
+        tip = firstSibling;
+        // add tip views to the wrapper
+        do {
+            View tipView = createTipView(tip);
+            AbsoluteLayout.LayoutParams lp = getLayoutParamsForWrapper();
+            wrapper.addView(tipView, lp);
+            tip = tip.sibling;
+        } while (tip != null);
+        // place the tips before the wrapper is added if it is possible
+        final boolean placed = placeTipsInAdvance(firstSibling);
+        // and finally add the wrapper to the WindowManager
+        if(!reused){
+            WindowManager.LayoutParams lp = getWrapperLayoutParams(cutouts);
+            viewHost.addView(wrapper, lp);
+        } else if(!fadingViews.isEmpty()){
+            startCrossFade();
+        }
+        if(placed){
+            onTipsPlaced(firstSibling);
+        } else {
+            adjustPositions();
+        }
+    }
+
+    private AbsoluteLayout.LayoutParams getLayoutParamsForWrapper(){
+        int size = ViewGroup.LayoutParams.WRAP_CONTENT;
+        return new AbsoluteLayout.LayoutParams(size, size, 0, 0);
+    }
+
+    /**
+     * Returns the layout params for the wrapper window. When the
+     * cutouts are enabled the wrapper draws the scrim itself, so it
+     * occupies the whole screen instead of dimming the windows behind.
+     */
+    private WindowManager.LayoutParams getWrapperLayoutParams(boolean cutouts){
+        int windowType = WindowManager.LayoutParams.TYPE_APPLICATION;
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(windowType);
+        lp.gravity = Gravity.TOP | Gravity.START;
+        lp.format = PixelFormat.TRANSLUCENT;
+        lp.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
+        if(cutouts){
+            lp.width = WindowManager.LayoutParams.MATCH_PARENT;
+            lp.height = WindowManager.LayoutParams.MATCH_PARENT;
+        } else {
+            lp.width = WindowManager.LayoutParams.WRAP_CONTENT;
+            lp.height = WindowManager.LayoutParams.WRAP_CONTENT;
+            lp.flags |= WindowManager.LayoutParams.FLAG_DIM_BEHIND;
+            lp.dimAmount = DIM_AMOUNT;
+        }
+        return lp;
+    }
+
+    /**
+     * Shows tips by adding them directly into WindowManager
+     * without wrapping them into additional ViewGroup. This
+     * method is used if highlighting is disabled.
+     */
+    private void showSeparately(Tip tip){
+        final Tip firstSibling = tip;
+        boolean first = true;
+        do {
+            View tipView = createTipView(tip);
+            tipView.setLayoutParams(getTipViewLayoutParams(first));
+            tip = tip.sibling;
+            first = false;
+        } while (tip != null);
+        // place the tips before the windows are added if it is possible
+        final boolean placed = placeTipsInAdvance(firstSibling);
+        tip = firstSibling;
+        do {
+            showConcreteTip(tip);
+            tip = tip.sibling;
+        } while (tip != null);
+        if(placed){
+            onTipsPlaced(firstSibling);
+        } else {
+            adjustPositions();
+        }
+    }
+
+    /**
+     * Shows a tip by adding tip view to the WindowManager.
+     */
+    private void showConcreteTip(Tip tip){
+        View tipView = tip.tipView;
+        viewHost.addView(tipView, tipView.getLayoutParams());
+    }
+
+    /**
+     * Places the given portion of tips before their views are attached
+     * to the window, so that the windows are added at their final
+     * positions within a single layout pass. The tip views are measured
+     * with the same constraints the window would measure them with. This
+     * is possible only if all the targets are laid out, returns false
+     * otherwise, in this case the tips must be placed after the layout.
+     */
+    private boolean placeTipsInAdvance(Tip tip){
+        if(findTargetViewNotLaidOut(tip) != null){
+            return false;
+        }
+        final long startTime = startPhase();
+        updateVisibleFrame();
+        placePortion(tip);
+        finishPhase(TipMetrics.PHASE_PLACEMENT, startTime);
+        return true;
+    }
+
+    /**
+     * Obtains a tip view from the pool and sets it up according
+     * to the given tip options.
+     */
+    private TipView createTipView(Tip tip){
+        TipView tipView = tip.preparedTipView;
+        if(tipView != null){
+            tip.preparedTipView = null;
+        } else {
+            tipView = tipViewPool.acquire((Activity) context);
+            setUpTipView(tipView, tip);
+        }
+        tipView.setTag(R.id.tag_id_tip, tip);
+        tip.tipView = tipView;
+        tipView.setOnTouchListener(tipViewTouchListener);
+        return tipView;
+    }
+
+    /**
+     * Applies the properties of the given tip to the tip view.
+     */
+    private void setUpTipView(TipView tipView, Tip tip){
+        tipView.setColor(tip.color);
+        tipView.setTextAppearance(context, tip.textAppearanceRes);
+        tipView.setTextColor(tip.textColor);
+        tipView.setTextSize(TypedValue.COMPLEX_UNIT_PX, tip.textSize);
+        int gravity = tip.gravity == Tip.GRAVITY_START ?
+                Gravity.START | Gravity.CENTER_VERTICAL :
+                Gravity.CENTER;
+        tipView.setGravity(gravity);
+        // the pooled view might be hidden or faded before
+        tipView.setVisibility(View.VISIBLE);
+        tipView.setAlpha(1F);
+        tipView.setScaleX(1F);
+        tipView.setScaleY(1F);
+        tipView.setTranslationX(0F);
+        tipView.setTranslationY(0F);
+        tipView.setText(tip.text);
+        int align = tip.align;
+        // the pooled views keep the mode of their previous tips, so
+        // the mode is reset even if it will be determined later
+        int mode = align != Tip.ALIGN_AUTO ? getTipViewMode(align) :
+                TipView.MODE_BELOW_TARGET;
+        tipView.setMode(mode);
+        tipView.setPadding(tip.padding);
+        tipView.setMinWidth(tip.minWidth);
+        tipView.setMaxWidth(tip.maxWidth);
+        tipView.setMinHeight(tip.minHeight);
+        tipView.setPointerPosition(tip.pointerPosition);
+        tipView.setPointerOffset(tip.pointerOffset);
+        tipView.setPointerProtrusion(1);
+    }
+
+    private WindowManager.LayoutParams getTipViewLayoutParams(boolean watchOutsideTouch){
+        int windowType = WindowManager.LayoutParams.TYPE_APPLICATION;
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(windowType);
+        lp.width = WindowManager.LayoutParams.WRAP_CONTENT;
+        lp.height = WindowManager.LayoutParams.WRAP_CONTENT;
+        lp.gravity = Gravity.TOP | Gravity.START;
+        lp.format = PixelFormat.TRANSLUCENT;
+        // the animations of the tips replace the window animations
+        if(enterAnimation == null && exitAnimation == null){
+            lp.windowAnimations = android.R.style.Animation_Dialog;
+        }
+        lp.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
                 WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
         if(watchOutsideTouch){
             lp.flags |= WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
         }
-        return lp;
+        return lp;
+    }
+
+    private final View.OnTouchListener tipViewTouchListener = new View.OnTouchListener() {
+
+        private final RectF viewBounds = new RectF();
+        private boolean isPressed = false;
+
+        @Override
+        public boolean onTouch(View view, MotionEvent event) {
+            boolean handled = false;
+            int action = event.getActionMasked();
+            switch (action){
+                case MotionEvent.ACTION_OUTSIDE:
+                    showNextPortion();
+                    handled = true;
+                    break;
+                case MotionEvent.ACTION_DOWN:
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_MOVE:
+                    // the window of the tip view hidden by the
+                    // tracking still receives the touches
+                    if(view.getVisibility() != View.VISIBLE){
+                        isPressed = false;
+                        break;
+                    }
+                    final int left = view.getLeft();
+                    final int top = view.getTop();
+                    final int right = view.getRight();
+                    final int bottom = view.getBottom();
+                    viewBounds.set(left, top, right, bottom);
+                    final float eventX = left + event.getX();
+                    final float eventY = top + event.getY();
+                    if(action == MotionEvent.ACTION_MOVE){
+                        if(isPressed && !viewBounds.contains(eventX, eventY)){
+                            isPressed = false;
+                        }
+                        break;
+                    }
+                    if(viewBounds.contains(eventX, eventY)){
+                        handled = true;
+                        if(action == MotionEvent.ACTION_DOWN){
+                            isPressed = true;
+                        } else if(isPressed) {
+                            isPressed = false;
+                            if(!view.performClick()){
+                                if(removeTipView((TipView) view)){
+                                    showNextPortion();
+                                } else if(wrapper == null){
+                                    updateWatchingOutsideTouchesWindow();
+                                }
+                            }
+                        }
+                    }
+                    break;
+            }
+            return handled;
+        }
+    };
+
+    /**
+     * Removes the specified tip view from the WindowManager
+     * or from the current wrapper ViewGroup. Returns true if
+     * all the tips from the current portion is removed from
+     * the screen and hence the next portion must be shown.
+     */
+    private boolean removeTipView(TipView tipView){
+        Tip tip = (Tip) tipView.getTag(R.id.tag_id_tip);
+        if(seenTipsStore != null && tip.id != Tip.NO_ID){
+            seenTipsStore.markSeen(tip.id);
+        }
+        tip.tipView = null;
+        if(wrapper != null){
+            // the wrapper is removed or reused by the next portion
+            removeHighlightingView(tip);
+            dismissTipView(tipView, wrapper);
+        } else {
+            dismissTipView(tipView, viewHost);
+        }
+        return !isShown();
+    }
+
+    /**
+     * Removes the tip view from the given container (the wrapper or the
+     * host of the windows) and gives it back to the pool. If the exit
+     * animation is set the view is removed when the animation ends, it
+     * does not respond to the touches meanwhile.
+     */
+    private void dismissTipView(TipView tipView, ViewManager container){
+        if(exitAnimation == null){
+            container.removeView(tipView);
+            recycleTipView(tipView);
+            return;
+        }
+        tipsAnimator.cancel(tipView);
+        tipView.setOnTouchListener(null);
+        int duration = context.getResources().getInteger(
+                android.R.integer.config_shortAnimTime);
+        tipsAnimator.animateExit(tipView, exitAnimation, duration, container);
+    }
+
+    private final TipsAnimator.Callback exitCallback = new TipsAnimator.Callback() {
+        @Override
+        public void onExitFinished(TipView view, ViewManager container) {
+            // the window might be removed with the activity meanwhile
+            if(container instanceof ViewGroup || ViewCompat.isAttachedToWindow(view)){
+                container.removeView(view);
+            }
+            recycleTipView(view);
+        }
+    };
+
+    /**
+     * Stops the animations of the removed tip view and gives
+     * it back to the pool.
+     */
+    private void recycleTipView(TipView tipView){
+        tipsAnimator.cancel(tipView);
+        tipViewPool.release((Activity) context, tipView);
+    }
+
+    /**
+     * Finds first currently shown tip view and updates
+     * it's layout params such that the corresponding
+     * window starts to listen for 'outside touches'.
+     * First tip view is a view that was added to the
+     * WindowManager before others.
+     */
+    private void updateWatchingOutsideTouchesWindow(){
+        Tip tip = tips.get(currentIndex);
+        View firstTipView = null;
+        do {
+            View tipView = tip.tipView;
+            if(tipView != null){
+                firstTipView = tipView;
+                break;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        if(firstTipView != null){
+            WindowManager.LayoutParams lp =
+                    (WindowManager.LayoutParams) firstTipView.getLayoutParams();
+            lp.flags |= WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
+            viewHost.updateViewLayout(firstTipView, lp);
+        }
+    }
+
+    private final View.OnTouchListener wrapperTouchListener = new View.OnTouchListener() {
+
+        @SuppressLint("ClickableViewAccessibility")
+        @Override
+        public boolean onTouch(View view, MotionEvent motionEvent) {
+            int action = motionEvent.getActionMasked();
+            if(action == MotionEvent.ACTION_OUTSIDE || action == MotionEvent.ACTION_DOWN){
+                showNextPortion();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final View.OnClickListener highlightingViewClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            Tip tip = (Tip) view.getTag(R.id.tag_id_tip);
+            if(removeTipView(tip.tipView)){
+                showNextPortion();
+            }
+        }
+    };
+
+    private void notifyClosed(boolean cancelled){
+        if(onCloseListener != null){
+            onCloseListener.onClose(cancelled);
+        }
+    }
+
+    /**
+     * Adjusts positions of the tip views and highlighting views
+     * (if they presented) when first layout event occurred.
+     */
+    private void adjustPositions(){
+        Tip tip = tips.get(currentIndex);
+        final View viewToObserve;
+        View firstTargetView = null;
+        View lastTipView = tip.tipView;
+        do {
+            if(tip.target == null){
+                View targetView = getTargetView(tip);
+                if(!ViewCompat.isLaidOut(targetView)){
+                    firstTargetView = targetView;
+                    break;
+                }
+            }
+            lastTipView = tip.tipView;
+            tip = tip.sibling;
+        } while (tip != null);
+
+        viewToObserve = firstTargetView != null ? firstTargetView :
+                wrapper != null ? wrapper : lastTipView;
+
+        final long waitStartTime = startPhase();
+        final ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
+        observer.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                if(observer.isAlive()){
+                    observer.removeOnGlobalLayoutListener(this);
+                } else {
+                    ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
+                    observer.removeOnGlobalLayoutListener(this);
+                }
+                onLayoutWaitFinished(waitStartTime);
+                // the tips might be closed while waiting for the layout
+                if(!isShown()){
+                    return;
+                }
+                Tip tip = tips.get(currentIndex);
+                if(!hasAllTargets(tip)){
+                    skipUnavailablePortion();
+                    return;
+                }
+                final long startTime = startPhase();
+                updateVisibleFrame();
+                placePortion(tip);
+                finishPhase(TipMetrics.PHASE_PLACEMENT, startTime);
+                onTipsPlaced(tip);
+            }
+        });
+    }
+
+    /**
+     * Returns the target view of the given tip, the views
+     * specified by ids are resolved through the target index.
+     * @throws IllegalStateException if the target view is
+     * not available.
+     */
+    private View getTargetView(Tip tip){
+        View targetView = findTargetView(tip);
+        if(targetView == null){
+            if(tip.targetView != null){
+                throw new IllegalStateException(
+                        "Target view is garbage collected.");
+            }
+            throw new IllegalStateException(
+                    "Target view is not found.");
+        }
+        return targetView;
+    }
+
+    /**
+     * Returns the target view of the given tip or null if it is not
+     * available: the view with the id of the target is not within the
+     * hierarchy or the target view is garbage collected. Used by the
+     * paths that run while the tips are shown, where the target may
+     * disappear at any time.
+     */
+    private View findTargetView(Tip tip){
+        final WeakReference<View> targetViewReference = tip.targetView;
+        if(targetViewReference != null){
+            return targetViewReference.get();
+        }
+        View rootView;
+        if(activity != null){
+            rootView = activity.getWindow().getDecorView();
+        } else if(fragment != null){
+            rootView = fragment.getView();
+        } else if(supportFragment != null){
+            rootView = supportFragment.getView();
+        } else {
+            rootView = null;
+        }
+        return rootView != null ? targetIndex.get(rootView, tip.targetId) : null;
+    }
+
+    /**
+     * Places the given portion of tips. If the collision avoidance is
+     * enabled and the portion has several tips, the alignments of the
+     * tips are chosen all together by the solver, otherwise each tip
+     * is placed independently.
+     */
+    private void placePortion(Tip tip){
+        if(!collisionAvoidanceEnabled || tip.sibling == null){
+            do {
+                tip.solvedAlign = Tip.ALIGN_AUTO;
+                placeTip(tip);
+                tip = tip.sibling;
+            } while (tip != null);
+            return;
+        }
+        PortionSolver solver = portionSolver;
+        if(solver == null){
+            solver = portionSolver = new PortionSolver();
+        }
+        final Rect frame = activityVisibleFrame;
+        solver.reset(frame.left, frame.top, frame.right, frame.bottom);
+        final Rect targetRect = this.targetRect;
+        final PlacementInput input = placementInput;
+        for(Tip sibling = tip; sibling != null; sibling = sibling.sibling){
+            final TipView tipView = sibling.tipView;
+            int horizontalWidth = 0, horizontalHeight = 0;
+            if(sibling.align == Tip.ALIGN_AUTO){
+                // the text may be wrapped differently in the horizontal
+                // mode, so the tip view is measured in both modes and the
+                // solver gets the sizes the tip view is then placed with
+                tipView.setMode(TipView.MODE_TO_RIGHT_TARGET);
+                measureTipView(tipView);
+                horizontalWidth = tipView.getMeasuredWidth();
+                horizontalHeight = tipView.getMeasuredHeight();
+                tipView.setMode(TipView.MODE_BELOW_TARGET);
+                measureTipView(tipView);
+            } else if(!ViewCompat.isLaidOut(tipView)){
+                measureTipView(tipView);
+            }
+            resolveTargetRect(sibling, targetRect);
+            input.setTarget(targetRect.left, targetRect.top,
+                    targetRect.width(), targetRect.height())
+                    .setTipSize(tipView.getMeasuredWidth(), tipView.getMeasuredHeight(),
+                            tipView.pointerSize)
+                    .setOffsets(sibling.horizontalOffset, sibling.verticalOffset)
+                    .setAlign(sibling.align)
+                    .setAutoPointerPositionEnabled(sibling.autoPointerPositionEnabled);
+            if(sibling.align == Tip.ALIGN_AUTO){
+                solver.addTip(input, horizontalWidth, horizontalHeight);
+            } else {
+                solver.addTip(input);
+            }
+        }
+        solver.solve();
+        final Placement placement = this.placement;
+        int index = 0;
+        do {
+            solver.getPlacement(index++, placement);
+            tip.solvedAlign = placement.getAlign();
+            placeTip(tip);
+            tip = tip.sibling;
+        } while (tip != null);
+    }
+
+    /**
+     * Computes the position of the tip view (and the highlighting view
+     * if it is presented) and updates their layout params. The tip view
+     * is measured if the alignment changes it's mode, so that the position
+     * is computed with the actual size. Returns the target view or null if
+     * the target of the tip is a point.
+     */
+    private View placeTip(Tip tip){
+        final Rect targetRect = this.targetRect;
+        final View targetView = resolveTargetRect(tip, targetRect);
+        placeTip(tip, targetView != null, targetRect);
+        return targetView;
+    }
+
+    /**
+     * Places the tip according to the given rectangle of it's target,
+     * the highlighting view (if any) is placed only if the target is
+     * a view. The alignment chosen by the solver for the portion (if
+     * any) is kept, so the tip does not jump to another side when it
+     * follows it's target.
+     */
+    private void placeTip(Tip tip, boolean highlightTarget, Rect targetRect){
+        final TipView tipView = tip.tipView;
+        final int targetX = targetRect.left, targetY = targetRect.top;
+        final int targetWidth = targetRect.width(), targetHeight = targetRect.height();
+
+        if(!ViewCompat.isLaidOut(tipView)){
+            measureTipView(tipView);
+        }
+        int align = tip.align;
+        if(align == Tip.ALIGN_AUTO && tip.solvedAlign != Tip.ALIGN_AUTO){
+            align = tip.solvedAlign;
+            int mode = getTipViewMode(align);
+            if(mode != tipView.getMode()){
+                tipView.setMode(mode);
+                measureTipView(tipView);
+            }
+        }
+        final PlacementInput input = placementInput;
+        input.setTarget(targetX, targetY, targetWidth, targetHeight)
+                .setTipSize(tipView.getMeasuredWidth(), tipView.getMeasuredHeight(),
+                        tipView.pointerSize)
+                .setOffsets(tip.horizontalOffset, tip.verticalOffset)
+                .setAutoPointerPositionEnabled(tip.autoPointerPositionEnabled)
+                .setStrategy(placementMode);
+        applyVisibleFrame(input);
+        if(align == Tip.ALIGN_AUTO){
+            align = PlacementEngine.determineAlignment(input);
+            int mode = getTipViewMode(align);
+            if(mode != tipView.getMode()){
+                tipView.setMode(mode);
+                measureTipView(tipView);
+                input.setTipSize(tipView.getMeasuredWidth(),
+                        tipView.getMeasuredHeight(), tipView.pointerSize);
+            }
+        }
+        input.setAlign(align);
+        final Placement placement = this.placement;
+        PlacementEngine.place(input, placement);
+        applyPointerPlacement(tipView, placement);
+        updateTipViewLayoutParams(tipView, placement.getX(), placement.getY());
+
+        View highlightingView = tip.highlightingView;
+        if(highlightTarget && highlightingView != null){
+            AbsoluteLayout.LayoutParams hlp = (AbsoluteLayout.LayoutParams)
+                    highlightingView.getLayoutParams();
+            hlp.x = targetX; hlp.y = targetY;
+            hlp.width = targetWidth;
+            hlp.height = targetHeight;
+            highlightingView.setLayoutParams(hlp);
+        }
+        tip.placedTargetRect.set(targetRect);
+    }
+
+    /**
+     * Measures the tip view the same way the window or the
+     * wrapper measures it for the WRAP_CONTENT size.
+     */
+    private void measureTipView(TipView tipView){
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(
+                metrics.widthPixels, View.MeasureSpec.AT_MOST);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(
+                metrics.heightPixels, View.MeasureSpec.AT_MOST);
+        tipView.measure(widthSpec, heightSpec);
+    }
+
+    /**
+     * Sets up the highlighting and starts the animations of the
+     * given portion of tips that are placed before being attached.
+     */
+    private void onTipsPlaced(Tip tip){
+        do {
+            View targetView = tip.target == null ? getTargetView(tip) : null;
+            onTipPlaced(tip, targetView);
+            tip = tip.sibling;
+        } while (tip != null);
+        onPortionPlaced();
+    }
+
+    /**
+     * Sets up the highlighting and starts the pointer
+     * animation of the placed tip.
+     */
+    private void onTipPlaced(Tip tip, View targetView){
+        View highlightingView = tip.highlightingView;
+        if(targetView != null && highlightingView != null &&
+                highlightingMode != HIGHLIGHTING_MODE_CUTOUT){
+            setupHighlighting(tip, targetView, highlightingView);
+        }
+
+        final TipView tipView = tip.tipView;
+        PointerAnimation pointerAnimation = tip.pointerAnimationEnabled ?
+                this.pointerAnimation : null;
+        int duration = context.getResources().getInteger(
+                android.R.integer.config_shortAnimTime);
+        tipsAnimator.animateEnter(tipView, enterAnimation, duration,
+                pointerAnimation, tipView.getPointerPosition());
+    }
+
+    /**
+     * Writes the rectangle of the target of the given tip in screen
+     * coordinates to the specified rect. Returns the target view or
+     * null if the target of the tip is a point.
+     */
+    private View resolveTargetRect(Tip tip, Rect outRect){
+        final Point target = tip.target;
+        if(target != null){
+            outRect.set(target.x, target.y, target.x, target.y);
+            return null;
+        }
+        final View targetView = getTargetView(tip);
+        getTargetRect(targetView, outRect);
+        return targetView;
+    }
+
+    /**
+     * Writes the rectangle of the given target view in screen
+     * coordinates to the specified rect.
+     */
+    private void getTargetRect(View targetView, Rect outRect){
+        targetView.getLocationOnScreen(position);
+        final int x = position[0], y = position[1];
+        outRect.set(x, y, x + targetView.getWidth(), y + targetView.getHeight());
+    }
+
+    /**
+     * Retrieves the visible display frame of the activity window. The
+     * frame is retrieved once for the whole portion of tips, because
+     * it requires a call to the window manager.
+     */
+    private void updateVisibleFrame(){
+        Window window = getActivityWindow();
+        View decorView = window.getDecorView();
+        decorView.getWindowVisibleDisplayFrame(activityVisibleFrame);
+    }
+
+    /**
+     * Writes the visible display frame of the activity window to the
+     * given placement input. The frame is needed to determine the
+     * alignment when it is {@link Tip#ALIGN_AUTO} and to keep the
+     * tips within the frame in the {@link #PLACEMENT_MODE_SCORED}.
+     */
+    private void applyVisibleFrame(PlacementInput input){
+        final Rect rect = activityVisibleFrame;
+        input.setVisibleFrame(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    private Window getActivityWindow(){
+        final Window window;
+        if(activity != null){
+            window = activity.getWindow();
+        } else {
+            Activity activity;
+            if(fragment != null){
+                activity = fragment.getActivity();
+            } else {
+                activity = supportFragment.getActivity();
+            }
+            window = activity != null ? activity.getWindow() : null;
+        }
+        if(window == null){
+            throw new IllegalStateException(
+                    "Activity is not visual, " +
+                    "could not retrieve window.");
+        }
+        return window;
     }
 
-    private final View.OnTouchListener tipViewTouchListener = new View.OnTouchListener() {
+    private void applyPointerPlacement(TipView tipView, Placement placement){
+        switch (placement.getPointerMode()){
+            case Placement.POINTER_CENTER:
+                tipView.setPointerPosition(0.5F);
+                break;
+            case Placement.POINTER_OFFSET:
+                tipView.setPointerOffset(placement.getPointerOffset());
+                break;
+        }
+    }
 
-        private final RectF viewBounds = new RectF();
-        private boolean isPressed = false;
+    /**
+     * Returns mode for TipView by the specified align of the tip.
+     * This method must be used only if the alignment is determined,
+     * i.e. if the align is not {@link Tip#ALIGN_AUTO}, otherwise
+     * this method throws an exception.
+     */
+    static int getTipViewMode(int align){
+        switch (align){
+            case Tip.ALIGN_CENTER_ABOVE:
+            case Tip.ALIGN_LEFT_ABOVE:
+            case Tip.ALIGN_RIGHT_ABOVE:
+            case Tip.ALIGN_CENTER_INSIDE:
+                return TipView.MODE_ABOVE_TARGET;
+            case Tip.ALIGN_LEFT:
+            case Tip.ALIGN_LEFT_TOP:
+            case Tip.ALIGN_LEFT_BOTTOM:
+                return TipView.MODE_TO_LEFT_TARGET;
+            case Tip.ALIGN_RIGHT:
+            case Tip.ALIGN_RIGHT_TOP:
+            case Tip.ALIGN_RIGHT_BOTTOM:
+                return TipView.MODE_TO_RIGHT_TARGET;
+            case Tip.ALIGN_CENTER_BELOW:
+            case Tip.ALIGN_LEFT_BELOW:
+            case Tip.ALIGN_RIGHT_BELOW:
+                return TipView.MODE_BELOW_TARGET;
+            default:
+                throw new IllegalArgumentException(
+                        "Could not determine " +
+                        "TipView mode for auto align.");
+        }
+    }
 
-        @Override
-        public boolean onTouch(View view, MotionEvent event) {
-            boolean handled = false;
-            int action = event.getActionMasked();
-            switch (action){
-                case MotionEvent.ACTION_OUTSIDE:
-                    showNextPortion();
-                    handled = true;
-                    break;
-                case MotionEvent.ACTION_DOWN:
-                case MotionEvent.ACTION_UP:
-                case MotionEvent.ACTION_MOVE:
-                    final int left = view.getLeft();
-                    final int top = view.getTop();
-                    final int right = view.getRight();
-                    final int bottom = view.getBottom();
-                    viewBounds.set(left, top, right, bottom);
-                    final float eventX = left + event.getX();
-                    final float eventY = top + event.getY();
-                    if(action == MotionEvent.ACTION_MOVE){
-                        if(isPressed && !viewBounds.contains(eventX, eventY)){
-                            isPressed = false;
-                        }
-                        break;
-                    }
-                    if(viewBounds.contains(eventX, eventY)){
-                        handled = true;
-                        if(action == MotionEvent.ACTION_DOWN){
-                            isPressed = true;
-                        } else if(isPressed) {
-                            isPressed = false;
-                            if(!view.performClick()){
-                                if(removeTipView(view)){
-                                    showNextPortion();
-                                } else if(wrapper == null){
-                                    updateWatchingOutsideTouchesWindow();
-                                }
-                            }
-                        }
-                    }
-                    break;
+    private void updateTipViewLayoutParams(View tipView, int x, int y){
+        ViewGroup.LayoutParams lp = tipView.getLayoutParams();
+        if(lp instanceof WindowManager.LayoutParams){
+            WindowManager.LayoutParams wlp = (WindowManager.LayoutParams) lp;
+            wlp.x = x; wlp.y = y;
+            // the window is not added yet if the tip is placed in advance
+            if(tipView.getParent() != null){
+                viewHost.updateViewLayout(tipView, wlp);
             }
-            return handled;
+        } else {
+            AbsoluteLayout.LayoutParams alp = (AbsoluteLayout.LayoutParams) lp;
+            alp.x = x; alp.y = y;
+            tipView.setLayoutParams(alp);
         }
-    };
+    }
 
     /**
-     * Removes the specified tip view from the WindowManager
-     * or from the current wrapper ViewGroup. Returns true if
-     * all the tips from the current portion is removed from
-     * the screen and hence the next portion must be shown.
+     * Captures the target view into a pooled bitmap and sets it as the
+     * background of the highlighting view. The bitmap is given back to
+     * the pool when the highlighting view is removed.
      */
-    private boolean removeTipView(View tipView){
-        Tip tip = (Tip) tipView.getTag(R.id.tag_id_tip);
-        tip.tipView = null;
-        boolean showNextPortion = false;
-        if(wrapper != null){
-            wrapper.removeView(tipView);
-            View highlightingView = tip.highlightingView;
-            if(highlightingView != null){
-                wrapper.removeView(highlightingView);
-                tip.highlightingView = null;
+    private void setupHighlighting(Tip tip, View targetView, View highlightingView){
+        final int width = targetView.getWidth();
+        final int height = targetView.getHeight();
+        if(width == 0 || height == 0){
+            return;
+        }
+        releaseHighlighting(tip);
+        final int factor = highlightingDownsampling;
+        final int bitmapWidth = Math.max(1, width / factor);
+        final int bitmapHeight = Math.max(1, height / factor);
+        Bitmap bitmap = tip.prefetchedBitmap;
+        if(bitmap != null && tip.prefetchedBitmapWidth == bitmapWidth &&
+                tip.prefetchedBitmapHeight == bitmapHeight){
+            // the target is captured while the previous portion was shown
+            tip.prefetchedBitmap = null;
+        } else {
+            releasePrefetchedHighlighting(tip);
+            if(canCopyPixels(targetView)){
+                copyTarget(tip, targetView, highlightingView, bitmapWidth, bitmapHeight);
+                return;
             }
-            int childCount = wrapper.getChildCount();
-            if(childCount == 0){
-                windowManager.removeView(wrapper);
-                wrapper = null;
-                showNextPortion = true;
+            final long startTime = startPhase();
+            bitmap = captureTarget(targetView, bitmapWidth, bitmapHeight);
+            if(jankMonitor != null){
+                jankMonitor.markPhase(JankStats.PHASE_HIGHLIGHTING, tip);
             }
-        } else {
-            windowManager.removeView(tipView);
-            showNextPortion = !isShown();
+            finishPhase(TipMetrics.PHASE_HIGHLIGHTING, startTime);
         }
-        return showNextPortion;
+        installHighlighting(tip, highlightingView, bitmap, bitmapWidth, bitmapHeight);
+    }
+
+    private void installHighlighting(Tip tip, View highlightingView, Bitmap bitmap,
+                                     int bitmapWidth, int bitmapHeight){
+        tip.highlightingBitmap = bitmap;
+        tip.highlightingBitmapWidth = bitmapWidth;
+        tip.highlightingBitmapHeight = bitmapHeight;
+        tip.highlightingInvalidated = false;
+        Drawable background = new HighlightDrawable(bitmap, bitmapWidth, bitmapHeight);
+        highlightingView.setBackground(background);
     }
 
     /**
-     * Finds first currently shown tip view and updates
-     * it's layout params such that the corresponding
-     * window starts to listen for 'outside touches'.
-     * First tip view is a view that was added to the
-     * WindowManager before others.
+     * Checks whether the given target view is captured
+     * with the PixelCopy.
      */
-    private void updateWatchingOutsideTouchesWindow(){
-        Tip tip = tips.get(currentIndex);
-        View firstTipView = null;
-        do {
-            View tipView = tip.tipView;
-            if(tipView != null){
-                firstTipView = tipView;
-                break;
-            }
-            tip = tip.sibling;
-        } while (tip != null);
-        if(firstTipView != null){
-            WindowManager.LayoutParams lp =
-                    (WindowManager.LayoutParams) firstTipView.getLayoutParams();
-            lp.flags |= WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
-            windowManager.updateViewLayout(firstTipView, lp);
+    private boolean canCopyPixels(View targetView){
+        return pixelCopyCaptureEnabled && hostMode == HOST_MODE_WINDOW &&
+                PixelCopyCapturer.canCapture(targetView, getActivityWindow());
+    }
+
+    /**
+     * Starts copying the target of the given tip into a pooled bitmap,
+     * the highlighting is installed when the copy is finished. The target
+     * is drawn as usual if the copy fails. The bitmap is given back to the
+     * pool if the tip is removed or captured again meanwhile.
+     */
+    private void copyTarget(final Tip tip, final View targetView, final View highlightingView,
+                            final int bitmapWidth, final int bitmapHeight){
+        if(pixelCopyCapturer == null){
+            pixelCopyCapturer = new PixelCopyCapturer();
         }
+        // the copy is scaled to the whole bitmap
+        Bitmap bitmap = bitmapPool.acquireExact(bitmapWidth, bitmapHeight,
+                highlightingBitmapConfig);
+        tip.pendingHighlightingBitmap = bitmap;
+        pixelCopyCapturer.capture(targetView, getActivityWindow(), bitmap,
+                new PixelCopyCapturer.Callback() {
+            @Override
+            public void onCaptured(Bitmap bitmap, boolean success) {
+                if(tip.pendingHighlightingBitmap != bitmap ||
+                        tip.highlightingView != highlightingView){
+                    bitmapPool.release(bitmap);
+                    return;
+                }
+                tip.pendingHighlightingBitmap = null;
+                if(!success){
+                    drawTarget(targetView, bitmap, bitmapWidth, bitmapHeight);
+                }
+                installHighlighting(tip, highlightingView, bitmap, bitmapWidth, bitmapHeight);
+            }
+        });
     }
 
-    private final View.OnTouchListener wrapperTouchListener = new View.OnTouchListener() {
+    /**
+     * Draws the target view into a pooled bitmap of the given size. The
+     * content of the texture views is scaled to the whole bitmap, so
+     * their bitmaps are of the exact size, the others may be larger.
+     */
+    private Bitmap captureTarget(View targetView, int bitmapWidth, int bitmapHeight){
+        final HighlightBitmapPool pool = bitmapPool;
+        final Bitmap.Config config = highlightingBitmapConfig;
+        Bitmap bitmap = targetView instanceof TextureView ?
+                pool.acquireExact(bitmapWidth, bitmapHeight, config) :
+                pool.acquire(bitmapWidth, bitmapHeight, config);
+        drawTarget(targetView, bitmap, bitmapWidth, bitmapHeight);
+        return bitmap;
+    }
 
-        @SuppressLint("ClickableViewAccessibility")
-        @Override
-        public boolean onTouch(View view, MotionEvent motionEvent) {
-            int action = motionEvent.getActionMasked();
-            if(action == MotionEvent.ACTION_OUTSIDE || action == MotionEvent.ACTION_DOWN){
-                showNextPortion();
-                return true;
+    /**
+     * Draws the target view into the given bitmap of the given size.
+     * The texture views draw nothing on a software canvas, so their
+     * content is read back from the texture, scaled to the whole bitmap,
+     * which therefore must be exactly of the given size.
+     */
+    private void drawTarget(View targetView, Bitmap bitmap, int bitmapWidth, int bitmapHeight){
+        if(targetView instanceof TextureView){
+            TextureView textureView = (TextureView) targetView;
+            if(textureView.isAvailable() && bitmap.getConfig() == Bitmap.Config.ARGB_8888){
+                bitmap.eraseColor(0);
+                textureView.getBitmap(bitmap);
+                return;
             }
-            return false;
         }
-    };
+        final int factor = highlightingDownsampling;
+        final Canvas canvas = highlightingCanvas;
+        canvas.setBitmap(bitmap);
+        final int saveCount = canvas.save();
+        canvas.clipRect(0, 0, bitmapWidth, bitmapHeight);
+        if(factor != 1){
+            final float scale = 1F / factor;
+            canvas.scale(scale, scale);
+        }
+        targetView.draw(canvas);
+        canvas.restoreToCount(saveCount);
+        canvas.setBitmap(null);
+    }
 
-    private final View.OnClickListener highlightingViewClickListener = new View.OnClickListener() {
+    /**
+     * Gives the bitmap captured for highlighting of the given tip
+     * back to the pool if there is such bitmap.
+     */
+    private void releaseHighlighting(Tip tip){
+        // the pending copy gives it's bitmap back when it is finished
+        tip.pendingHighlightingBitmap = null;
+        Bitmap bitmap = tip.highlightingBitmap;
+        if(bitmap != null){
+            tip.highlightingBitmap = null;
+            View highlightingView = tip.highlightingView;
+            if(highlightingView != null){
+                highlightingView.setBackground(null);
+            }
+            bitmapPool.release(bitmap);
+        }
+    }
+
+    /**
+     * Called when all the tips of the shown portion are placed.
+     */
+    private void onPortionPlaced(){
+        startTracking();
+        startLiveHighlighting();
+        if(metricsListener != null || jankMonitor != null){
+            watchFirstDraw();
+        }
+        schedulePrefetch();
+    }
+
+    /**
+     * Schedules prefetching of the next portions of tips for the
+     * time when the main thread is idle.
+     */
+    private void schedulePrefetch(){
+        if(prefetchDepth > 0 && !prefetchScheduled){
+            prefetchScheduled = true;
+            Looper.myQueue().addIdleHandler(prefetchIdleHandler);
+        }
+    }
+
+    private void cancelPrefetch(){
+        if(prefetchScheduled){
+            prefetchScheduled = false;
+            Looper.myQueue().removeIdleHandler(prefetchIdleHandler);
+        }
+    }
+
+    private final MessageQueue.IdleHandler prefetchIdleHandler = new MessageQueue.IdleHandler() {
         @Override
-        public void onClick(View view) {
-            Tip tip = (Tip) view.getTag(R.id.tag_id_tip);
-            if(removeTipView(tip.tipView)){
-                showNextPortion();
+        public boolean queueIdle() {
+            // a single portion is prefetched per idle time, so
+            // the input coming meanwhile is not delayed for long
+            final boolean more = isShown() && prefetchNextPortion();
+            if(!more){
+                prefetchScheduled = false;
             }
+            return more;
         }
     };
 
-    private void notifyClosed(boolean cancelled){
-        if(onCloseListener != null){
-            onCloseListener.onClose(cancelled);
+    /**
+     * Prefetches the first portion within the prefetch depth that is
+     * not prefetched yet. Returns true if there are more portions to
+     * prefetch.
+     */
+    private boolean prefetchNextPortion(){
+        final List<Tip> tips = this.tips;
+        final int size = tips.size();
+        int remaining = prefetchDepth;
+        for(int i = currentIndex + 1; i < size && remaining > 0; i++){
+            Tip tip = tips.get(i);
+            if(isPortionSkipped(tip)){
+                // the portion is going to be skipped
+                continue;
+            }
+            remaining--;
+            if(!tip.prefetched){
+                prefetchPortion(tip);
+                return remaining > 0 && i < size - 1;
+            }
         }
+        return false;
     }
 
     /**
-     * Adjusts positions of the tip views and highlighting views
-     * (if they presented) when first layout event occurred.
+     * Creates the tip views of the portion with the given root tip
+     * and captures it's targets for highlighting.
      */
-    private void adjustPositions(){
-        Tip tip = tips.get(currentIndex);
-        final View viewToObserve;
-        View firstTargetView = null;
-        View lastTipView = tip.tipView;
+    private void prefetchPortion(Tip root){
+        root.prefetched = true;
+        if(renderingMode != RENDERING_MODE_VIEWS){
+            return;
+        }
+        prepareTipViews(root);
+        final boolean snapshots = root.highlightingEnabled &&
+                highlightingMode != HIGHLIGHTING_MODE_CUTOUT;
+        final int factor = highlightingDownsampling;
+        Tip tip = root;
         do {
-            if(tip.target == null){
-                View targetView = getTargetView(tip);
-                if(!ViewCompat.isLaidOut(targetView)){
-                    firstTargetView = targetView;
-                    break;
-                }
+            // prefetching is best-effort, the target of a later portion
+            // may not exist until the user acts on the shown one, then
+            // it is captured when it's portion is shown
+            View targetView = tip.target == null ? findTargetView(tip) : null;
+            // the pixel copies do not block the main thread,
+            // so there is no point in prefetching them
+            if(snapshots && targetView != null && tip.prefetchedBitmap == null &&
+                    ViewCompat.isLaidOut(targetView) && targetView.getWidth() > 0 &&
+                    targetView.getHeight() > 0 && !canCopyPixels(targetView)){
+                final int bitmapWidth = Math.max(1, targetView.getWidth() / factor);
+                final int bitmapHeight = Math.max(1, targetView.getHeight() / factor);
+                tip.prefetchedBitmap = captureTarget(targetView, bitmapWidth, bitmapHeight);
+                tip.prefetchedBitmapWidth = bitmapWidth;
+                tip.prefetchedBitmapHeight = bitmapHeight;
+                watchPrefetchedLayout();
             }
-            lastTipView = tip.tipView;
             tip = tip.sibling;
         } while (tip != null);
+    }
 
-        viewToObserve = firstTargetView != null ? firstTargetView :
-                wrapper != null ? wrapper : lastTipView;
+    /**
+     * The prefetched captures are valid until the layout of the
+     * activity changes.
+     */
+    private void watchPrefetchedLayout(){
+        if(prefetchLayoutView == null){
+            View decorView = getActivityWindow().getDecorView();
+            decorView.getViewTreeObserver().addOnGlobalLayoutListener(prefetchLayoutListener);
+            prefetchLayoutView = decorView;
+        }
+    }
 
-        final ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
-        observer.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+    private final ViewTreeObserver.OnGlobalLayoutListener prefetchLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            dropPrefetchedHighlighting();
+            if(isShown()){
+                schedulePrefetch();
+            }
+        }
+    };
+
+    /**
+     * Gives the prefetched captures back to the pool, so that
+     * the targets are captured again.
+     */
+    private void dropPrefetchedHighlighting(){
+        View view = prefetchLayoutView;
+        if(view != null){
+            prefetchLayoutView = null;
+            ViewTreeObserver observer = view.getViewTreeObserver();
+            if(observer.isAlive()){
+                observer.removeOnGlobalLayoutListener(prefetchLayoutListener);
+            }
+        }
+        final List<Tip> tips = this.tips;
+        for(int i = 0, size = tips.size(); i < size; i++){
+            Tip tip = tips.get(i);
+            boolean dropped = false;
+            do {
+                dropped |= releasePrefetchedHighlighting(tip);
+                tip = tip.sibling;
+            } while (tip != null);
+            if(dropped){
+                tips.get(i).prefetched = false;
+            }
+        }
+    }
+
+    /**
+     * Gives the prefetched capture of the given tip back to the pool
+     * if there is such capture.
+     */
+    private boolean releasePrefetchedHighlighting(Tip tip){
+        Bitmap bitmap = tip.prefetchedBitmap;
+        if(bitmap != null){
+            tip.prefetchedBitmap = null;
+            bitmapPool.release(bitmap);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports the show phase when the placed portion of tips is
+     * going to be drawn for the first time, the attach phase of
+     * the jank monitor ends at that moment too.
+     */
+    private void watchFirstDraw(){
+        final View view;
+        if(overlay != null){
+            view = overlay;
+        } else if(wrapper != null){
+            view = wrapper;
+        } else {
+            view = tips.get(currentIndex).tipView;
+        }
+        if(view == null){
+            return;
+        }
+        final int portionIndex = currentIndex;
+        final long startTime = showStartTime;
+        final ViewManager viewHost = this.viewHost;
+        final int layoutWaits = this.layoutWaits;
+        final ViewTreeObserver observer = view.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void onGlobalLayout() {
+            public boolean onPreDraw() {
                 if(observer.isAlive()){
-                    observer.removeOnGlobalLayoutListener(this);
+                    observer.removeOnPreDrawListener(this);
                 } else {
-                    ViewTreeObserver observer = viewToObserve.getViewTreeObserver();
-                    observer.removeOnGlobalLayoutListener(this);
+                    view.getViewTreeObserver().removeOnPreDrawListener(this);
                 }
-                Tip tip = tips.get(currentIndex);
-                do {
-                    adjustPositions(tip);
-                    tip = tip.sibling;
-                } while (tip != null);
+                JankMonitor monitor = jankMonitor;
+                if(monitor != null){
+                    monitor.onPortionDrawn();
+                }
+                MetricsListener listener = metricsListener;
+                if(listener != null){
+                    listener.onPhaseFinished(TipMetrics.PHASE_SHOW,
+                            System.nanoTime() - startTime);
+                    int calls = viewHost instanceof CountingViewManager ?
+                            ((CountingViewManager) viewHost).getCallCount() : 0;
+                    listener.onPortionShown(portionIndex, layoutWaits, calls);
+                }
+                return true;
             }
         });
     }
 
-    private View getTargetView(Tip tip){
-        if(tip.targetViewCache != null){
-            return tip.targetViewCache;
-        } else {
-            View targetView = findTargetViewForTip(tip);
-            tip.targetViewCache = targetView;
-            return targetView;
+    /**
+     * Returns the start time of a phase or 0 if the
+     * metrics are not collected.
+     */
+    private long startPhase(){
+        return metricsListener != null ? System.nanoTime() : 0;
+    }
+
+    private void finishPhase(int phase, long startTime){
+        final MetricsListener listener = metricsListener;
+        if(listener != null && startTime != 0){
+            listener.onPhaseFinished(phase, System.nanoTime() - startTime);
         }
     }
 
-    private View findTargetViewForTip(Tip tip){
-        View targetView = tip.targetView;
-        if(targetView != null){
-            return targetView;
+    /**
+     * Starts monitoring the frames of the portion of tips that is being
+     * shown. The frame metrics of the activity window are used only if
+     * the tips are drawn by that window.
+     */
+    private void startJankMonitoring(int portionIndex, Tip rootTip){
+        if(jankMonitor == null){
+            float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+            jankMonitor = new JankMonitor(getActivityWindow(), tipsAnimator, refreshRate);
         }
-        int targetId = tip.targetId;
-        if(activity != null){
-            targetView = activity.findViewById(targetId);
-        } else {
-            View rootView;
-            if(fragment != null){
-                rootView = fragment.getView();
-            } else {
-                rootView = supportFragment.getView();
-            }
-            if(rootView != null){
-                targetView = rootView.findViewById(targetId);
-            }
+        jankMonitor.start(portionIndex, rootTip, hostLayout != null);
+    }
+
+    /**
+     * Stops monitoring the frames of the removed portion of tips
+     * and reports the counted frames.
+     */
+    private void finishJankMonitoring(){
+        if(jankMonitor == null){
+            return;
         }
-        if(targetView == null){
-            throw new IllegalStateException(
-                    "Target view is not found.");
+        JankStats stats = jankMonitor.stop();
+        JankListener listener = jankListener;
+        if(stats != null && listener != null){
+            listener.onPortionFinished(stats);
         }
-        return targetView;
     }
 
-    private void adjustPositions(Tip tip){
-        final TipView tipView = tip.tipView;
-        final Point target = tip.target;
-        final View targetView;
-        final int targetX, targetY;
-        final int targetWidth, targetHeight;
+    private void onLayoutWaitFinished(long waitStartTime){
+        if(metricsListener != null && waitStartTime != 0){
+            layoutWaits++;
+            finishPhase(TipMetrics.PHASE_LAYOUT_WAIT, waitStartTime);
+        }
+    }
 
-        if(target != null){
-            targetView = null;
-            targetX = target.x; targetY = target.y;
-            targetWidth = 0; targetHeight = 0;
-        } else {
-            targetView = getTargetView(tip);
-            targetView.getLocationOnScreen(position);
-            targetX = position[0]; targetY = position[1];
-            targetWidth = targetView.getWidth();
-            targetHeight = targetView.getHeight();
+    /**
+     * Starts redrawing the highlighting of the shown tips whenever their
+     * targets invalidate if the live highlighting mode is set. The targets
+     * are checked before each frame drawn by the activity window, since
+     * they are drawn only within it's frames.
+     */
+    private void startLiveHighlighting(){
+        if(highlightingMode != HIGHLIGHTING_MODE_LIVE || tips.size() == 0){
+            return;
         }
+        final Tip rootTip = tips.get(currentIndex);
+        if(!rootTip.highlightingEnabled || rootTip.highlightingView == null){
+            return;
+        }
+        if(liveHighlighter == null){
+            liveHighlighter = new LiveHighlighter(liveHighlighterCallback,
+                    liveHighlightingMaxRate);
+        }
+        liveHighlighter.start(getActivityWindow().getDecorView(), rootTip);
+    }
 
-        int align = tip.align;
-        if(align == Tip.ALIGN_AUTO){
-            align = determineTipAlignment(targetX, targetY,
-                    targetWidth, targetHeight, tip);
-            int mode = getTipViewMode(align);
-            tipView.setMode(mode);
+    private void stopLiveHighlighting(){
+        if(liveHighlighter != null){
+            liveHighlighter.stop();
         }
-        if(tip.autoPointerPositionEnabled){
-            updatePointerPositionForTipView(targetWidth, targetHeight, align, tipView);
+    }
+
+    private final LiveHighlighter.Callback liveHighlighterCallback =
+            new LiveHighlighter.Callback() {
+        @Override
+        public View getTargetView(Tip tip) {
+            // the target may be removed or collected while it's tip is
+            // shown, the tracking hides the tip then
+            return tip.target == null ? findTargetView(tip) : null;
         }
-        getTipViewPosition(targetX, targetY, targetWidth, targetHeight, tip, align);
-        final int x = position[0], y = position[1];
-        updateTipViewLayoutParams(tipView, x, y);
 
-        View highlightingView = tip.highlightingView;
-        if(targetView != null && highlightingView != null){
-            AbsoluteLayout.LayoutParams hlp = (AbsoluteLayout.LayoutParams)
-                    highlightingView.getLayoutParams();
-            hlp.x = targetX; hlp.y = targetY;
-            hlp.width = targetWidth;
-            hlp.height = targetHeight;
-            highlightingView.setLayoutParams(hlp);
-            setupHighlighting(targetView, highlightingView);
+        @Override
+        public void refreshHighlighting(Tip tip, View targetView) {
+            refreshLiveHighlighting(tip, targetView);
         }
+    };
 
-        if(tip.pointerAnimationEnabled){
-            animateTipViewPointer(tipView);
+    /**
+     * Draws the invalidated target of the given tip again into the bitmap
+     * it is already captured into. The target is captured into a new
+     * bitmap if it's size is changed.
+     */
+    private void refreshLiveHighlighting(Tip tip, View targetView){
+        final View highlightingView = tip.highlightingView;
+        final Bitmap bitmap = tip.highlightingBitmap;
+        // the content of the surface views is not drawn on a canvas,
+        // the copy they are captured with is kept
+        if(highlightingView == null || bitmap == null ||
+                targetView instanceof SurfaceView){
+            return;
+        }
+        final int factor = highlightingDownsampling;
+        final int bitmapWidth = Math.max(1, targetView.getWidth() / factor);
+        final int bitmapHeight = Math.max(1, targetView.getHeight() / factor);
+        if(bitmapWidth != tip.highlightingBitmapWidth ||
+                bitmapHeight != tip.highlightingBitmapHeight){
+            setupHighlighting(tip, targetView, highlightingView);
+            return;
+        }
+        bitmap.eraseColor(0);
+        drawTarget(targetView, bitmap, bitmapWidth, bitmapHeight);
+        highlightingView.invalidate();
+        if(jankMonitor != null){
+            jankMonitor.markPhase(JankStats.PHASE_HIGHLIGHTING, tip);
         }
     }
 
     /**
-     * Determines the most appropriate alignment for the given tip by the
-     * specified target position and size. This method is used when the
-     * initial alignment (set by the user) has value {@link Tip#ALIGN_AUTO}.
+     * Starts tracking the targets of the shown tips if the tracking
+     * is enabled. The targets are checked before each frame drawn
+     * by the activity window, since they can not move otherwise.
      */
-    private int determineTipAlignment(int targetX, int targetY, int targetWidth,
-                                      int targetHeight, Tip tip){
-        Window window = getActivityWindow();
-        View decorView = window.getDecorView();
-        decorView.getWindowVisibleDisplayFrame(activityVisibleFrame);
-        final Rect rect = activityVisibleFrame;
-        final int availableWidth = rect.width();
-        final int availableHeight = rect.height();
-        targetY -= rect.top;
-
-        final int offsetX = tip.horizontalOffset;
-        final int offsetY = tip.verticalOffset;
-
-        final int availableAbove = targetY - offsetY;
-        final int availableBelow = availableHeight - (targetY + targetHeight + offsetY);
-        final int availableToRight = availableWidth - (targetX + targetWidth + offsetX);
-        final int availableToLeft = targetX - offsetX;
-
-        final View tipView = tip.tipView;
-        final int tipHeight = tipView.getHeight();
-        final int tipWidth = tipView.getWidth();
-
-        final boolean canAlignAbove = availableAbove >= tipHeight;
-        final boolean canAlignBelow = availableBelow >= tipHeight;
-        final boolean canAlignToRight = availableToRight >= tipWidth;
-        final boolean canAlignToLeft = availableToLeft >= tipWidth;
-
-        final boolean canAlignVertically = canAlignAbove || canAlignBelow;
-        final boolean canAlignHorizontally = canAlignToRight || canAlignToLeft;
-
-        if(!(canAlignVertically || canAlignHorizontally)){
-            return Tip.ALIGN_CENTER_INSIDE;
+    private void startTracking(){
+        if(!targetTrackingEnabled || trackingView != null){
+            return;
         }
+        View decorView = getActivityWindow().getDecorView();
+        ViewTreeObserver observer = decorView.getViewTreeObserver();
+        observer.addOnPreDrawListener(trackingListener);
+        observer.addOnGlobalLayoutListener(trackingLayoutListener);
+        trackingView = decorView;
+        visibleFrameDirty = true;
+    }
 
-        if(canAlignVertically){
-            final boolean canCenterHorizontally;
-            if(tipWidth <= targetWidth){
-                canCenterHorizontally = true;
-            } else {
-                int delta = (tipWidth - targetWidth) / 2;
-                int left = targetX - delta;
-                int right = targetX + targetWidth + delta;
-                boolean fitToLeft = left >= 0;
-                boolean fitToRight = right <= rect.right;
-                canCenterHorizontally = fitToLeft && fitToRight;
-            }
-
-            if(canCenterHorizontally){
-                boolean above = availableAbove >= availableBelow;
-                return above ? Tip.ALIGN_CENTER_ABOVE : Tip.ALIGN_CENTER_BELOW;
+    private void stopTracking(){
+        View view = trackingView;
+        if(view != null){
+            trackingView = null;
+            ViewTreeObserver observer = view.getViewTreeObserver();
+            if(observer.isAlive()){
+                observer.removeOnPreDrawListener(trackingListener);
+                observer.removeOnGlobalLayoutListener(trackingLayoutListener);
             }
         }
+    }
 
-        if(canAlignHorizontally){
-            final boolean canCenterVertically;
-            if(tipHeight <= targetHeight){
-                canCenterVertically = true;
-            } else {
-                int delta = (tipHeight - targetHeight) / 2;
-                int top = targetY - delta;
-                int bottom = targetY + targetHeight + delta;
-                boolean fitAbove = top >= 0;
-                boolean fitBelow = bottom <= rect.bottom;
-                canCenterVertically = fitAbove && fitBelow;
-            }
-
-            if(canCenterVertically){
-                boolean toRight = availableToRight >= availableToLeft;
-                return toRight ? Tip.ALIGN_RIGHT : Tip.ALIGN_LEFT;
+    private final ViewTreeObserver.OnPreDrawListener trackingListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if(trackingView != null){
+                trackTargets();
             }
+            return true;
         }
+    };
 
-        if(canAlignVertically){
-            boolean above = availableAbove >= availableBelow;
-            boolean toLeft = availableToLeft <= availableToRight;
-            return above ? toLeft ? Tip.ALIGN_LEFT_ABOVE :
-                    Tip.ALIGN_RIGHT_ABOVE : toLeft ?
-                    Tip.ALIGN_LEFT_BELOW : Tip.ALIGN_RIGHT_BELOW;
-        } else {
-            boolean toRight = availableToRight >= availableToLeft;
-            boolean top = availableAbove <= availableBelow;
-            return toRight ? top ? Tip.ALIGN_RIGHT_TOP :
-                    Tip.ALIGN_RIGHT_BOTTOM : top ?
-                    Tip.ALIGN_LEFT_TOP : Tip.ALIGN_LEFT_BOTTOM;
+    private final ViewTreeObserver.OnGlobalLayoutListener trackingLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            // the visible frame can change only along with the layout
+            visibleFrameDirty = true;
         }
-    }
+    };
 
-    private Window getActivityWindow(){
-        final Window window;
-        if(activity != null){
-            window = activity.getWindow();
-        } else {
-            Activity activity;
-            if(fragment != null){
-                activity = fragment.getActivity();
-            } else {
-                activity = supportFragment.getActivity();
+    /**
+     * Checks the positions of the targets of the shown tips and places
+     * again only the tips whose targets are moved. The window updates
+     * are made within this single pass, so each window is updated at
+     * most once per frame.
+     */
+    private void trackTargets(){
+        if(visibleFrameDirty){
+            visibleFrameDirty = false;
+            updateVisibleFrame();
+        }
+        if(overlay != null){
+            if(overlayAttached){
+                trackOverlayTargets();
             }
-            window = activity != null ? activity.getWindow() : null;
+            return;
         }
-        if(window == null){
-            throw new IllegalStateException(
-                    "Activity is not visual, " +
-                    "could not retrieve window.");
+        if(tips.size() == 0){
+            return;
         }
-        return window;
-    }
-
-    private void updatePointerPositionForTipView(int targetWidth, int targetHeight,
-                                                 int align, TipView tipView){
-        final int tipWidth = tipView.getWidth();
-        final int tipHeight = tipView.getHeight();
-
-        switch (align) {
-            case Tip.ALIGN_CENTER_ABOVE:
-            case Tip.ALIGN_CENTER_BELOW:
-            case Tip.ALIGN_RIGHT:
-            case Tip.ALIGN_LEFT:
-            case Tip.ALIGN_CENTER_INSIDE:
-                tipView.setPointerPosition(0.5F);
-                break;
-            case Tip.ALIGN_RIGHT_ABOVE:
-            case Tip.ALIGN_LEFT_ABOVE:
-            case Tip.ALIGN_RIGHT_BELOW:
-            case Tip.ALIGN_LEFT_BELOW:
-                if(tipWidth <= targetWidth){
-                    tipView.setPointerPosition(0.5F);
-                } else {
-                    int offset = (tipWidth - targetWidth) / 2;
-                    if(align == Tip.ALIGN_LEFT_ABOVE || align == Tip.ALIGN_LEFT_BELOW){
-                        offset *= -1;
-                    }
-                    tipView.setPointerOffset(offset);
+        final Rect targetRect = this.targetRect;
+        Tip tip = tips.get(currentIndex);
+        do {
+            final TipView tipView = tip.tipView;
+            if(tipView != null && tip.target == null){
+                boolean hidden = !resolveVisibleTargetRect(tip, targetRect);
+                if(hidden != tip.targetHidden){
+                    tip.targetHidden = hidden;
+                    setTipHidden(tip, hidden);
                 }
-                break;
-            default:
-                if(tipHeight <= targetHeight){
-                    tipView.setPointerPosition(0.5F);
-                } else {
-                    int offset = (tipHeight - targetHeight) / 2;
-                    if(align == Tip.ALIGN_RIGHT_TOP || align == Tip.ALIGN_LEFT_TOP){
-                        offset *= -1;
-                    }
-                    tipView.setPointerOffset(offset);
+                if(!hidden && !targetRect.equals(tip.placedTargetRect)){
+                    tipsAnimator.finish(tipView);
+                    placeTip(tip, true, targetRect);
                 }
-                break;
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+    }
+
+    private void trackOverlayTargets(){
+        final TipsOverlayView overlay = this.overlay;
+        final Rect targetRect = this.targetRect;
+        final int count = overlay.getBubbleCount();
+        boolean moved = false;
+        for(int i = 0; i < count; i++){
+            Tip tip = overlay.getTip(i);
+            if(tip.target != null){
+                continue;
+            }
+            boolean hidden = !resolveVisibleTargetRect(tip, targetRect);
+            if(hidden != tip.targetHidden){
+                tip.targetHidden = hidden;
+                overlay.setBubbleHidden(i, hidden);
+            }
+            if(!hidden && !targetRect.equals(tip.placedTargetRect)){
+                placeBubble(i, tip, true, targetRect);
+                moved = true;
+            }
+        }
+        // the overlay that occupies only the bounds of the bubbles
+        // must be moved and resized to fit them again
+        if(moved && !overlay.getTip(0).highlightingEnabled){
+            WindowManager.LayoutParams lp =
+                    (WindowManager.LayoutParams) overlay.getLayoutParams();
+            overlay.getBubblesBounds(targetRect);
+            lp.x = targetRect.left; lp.y = targetRect.top;
+            lp.width = targetRect.width();
+            lp.height = targetRect.height();
+            overlay.setOrigin(targetRect.left, targetRect.top);
+            viewHost.updateViewLayout(overlay, lp);
         }
     }
 
     /**
-     * Returns mode for TipView by the specified align of the tip.
-     * This method must be used only if the alignment is determined,
-     * i.e. if the align is not {@link Tip#ALIGN_AUTO}, otherwise
-     * this method throws an exception.
+     * Writes the rectangle of the target view of the given tip in screen
+     * coordinates to the specified rect and checks whether the target is
+     * visible. The target that is removed from the hierarchy (or garbage
+     * collected) is not visible, so it's tip is hidden like the tip of
+     * a target that is scrolled away, and it is shown again if the
+     * target is added back.
      */
-    private int getTipViewMode(int align){
-        switch (align){
-            case Tip.ALIGN_CENTER_ABOVE:
-            case Tip.ALIGN_LEFT_ABOVE:
-            case Tip.ALIGN_RIGHT_ABOVE:
-            case Tip.ALIGN_CENTER_INSIDE:
-                return TipView.MODE_ABOVE_TARGET;
-            case Tip.ALIGN_LEFT:
-            case Tip.ALIGN_LEFT_TOP:
-            case Tip.ALIGN_LEFT_BOTTOM:
-                return TipView.MODE_TO_LEFT_TARGET;
-            case Tip.ALIGN_RIGHT:
-            case Tip.ALIGN_RIGHT_TOP:
-            case Tip.ALIGN_RIGHT_BOTTOM:
-                return TipView.MODE_TO_RIGHT_TARGET;
-            case Tip.ALIGN_CENTER_BELOW:
-            case Tip.ALIGN_LEFT_BELOW:
-            case Tip.ALIGN_RIGHT_BELOW:
-                return TipView.MODE_BELOW_TARGET;
-            default:
-                throw new IllegalArgumentException(
-                        "Could not determine " +
-                        "TipView mode for auto align.");
+    private boolean resolveVisibleTargetRect(Tip tip, Rect outRect){
+        final View targetView = findTargetView(tip);
+        if(targetView == null){
+            return false;
         }
+        getTargetRect(targetView, outRect);
+        return isTargetVisible(targetView, outRect);
     }
 
     /**
-     * Calculates the absolute position for the given tip and
-     * alignment according to the absolute position and size of
-     * the target. This method must be called only if the tip
-     * view is laid out and alignment is determined.
+     * Checks whether the target view with the given rectangle in
+     * screen coordinates is visible to the user, i.e. it is shown,
+     * it is not clipped entirely by it's parents and it is within
+     * the visible frame of the activity window.
      */
-    private void getTipViewPosition(int targetX, int targetY, int targetWidth,
-                                    int targetHeight, Tip tip, int align){
-        final TipView tipView = tip.tipView;
-        final int tipHeight = tipView.getHeight();
-        final int tipWidth = tipView.getWidth();
-        final int offsetX = tip.horizontalOffset;
-        final int offsetY = tip.verticalOffset;
-        int delta;
-        final int x, y;
-        switch (align){
-            case Tip.ALIGN_LEFT_BELOW:
-                x = targetX + offsetX;
-                y = targetY + targetHeight + offsetY;
-                break;
-            case Tip.ALIGN_RIGHT_BELOW:
-                delta = targetWidth - tipWidth;
-                x = targetX + delta + offsetX;
-                y = targetY + targetHeight + offsetY;
-                break;
-            case Tip.ALIGN_CENTER_BELOW:
-                delta = (targetWidth - tipWidth) / 2;
-                x = targetX + delta + offsetX;
-                y = targetY + targetHeight + offsetY;
-                break;
-            case Tip.ALIGN_LEFT_ABOVE:
-                x = targetX + offsetX;
-                y = targetY - tipHeight - offsetY;
-                break;
-            case Tip.ALIGN_RIGHT_ABOVE:
-                delta = targetWidth - tipWidth;
-                x = targetX + delta + offsetX;
-                y = targetY - tipHeight - offsetY;
-                break;
-            case Tip.ALIGN_CENTER_ABOVE:
-                delta = (targetWidth - tipWidth) / 2;
-                x = targetX + delta + offsetX;
-                y = targetY - tipHeight - offsetY;
-                break;
-            case Tip.ALIGN_LEFT:
-                x = targetX - tipWidth - offsetX;
-                delta = (targetHeight - tipHeight) / 2;
-                y = targetY + delta + offsetY;
-                break;
-            case Tip.ALIGN_LEFT_TOP:
-                x = targetX - tipWidth - offsetX;
-                y = targetY + offsetY;
-                break;
-            case Tip.ALIGN_LEFT_BOTTOM:
-                x = targetX - tipWidth - offsetX;
-                delta = targetHeight - tipHeight;
-                y = targetY + delta - offsetY;
-                break;
-            case Tip.ALIGN_RIGHT:
-                x = targetX + targetWidth + offsetX;
-                delta = (targetHeight - tipHeight) / 2;
-                y = targetY + delta + offsetY;
-                break;
-            case Tip.ALIGN_RIGHT_TOP:
-                x = targetX + targetWidth + offsetX;
-                y = targetY + offsetY;
-                break;
-            case Tip.ALIGN_RIGHT_BOTTOM:
-                x = targetX + targetWidth + offsetX;
-                delta = targetHeight - tipHeight;
-                y = targetY + delta - offsetY;
-                break;
-            case Tip.ALIGN_CENTER_INSIDE:
-                delta = (targetWidth - tipWidth) / 2;
-                x = targetX + delta + offsetX;
-                int tipBodyHeight = tipHeight - tipView.pointerSize;
-                delta = (targetHeight - tipBodyHeight) / 2;
-                y = targetY + delta + offsetY;
-                break;
-            default:
-                x = 0; y = 0;
-                break;
-        }
-        position[0] = x; position[1] = y;
+    private boolean isTargetVisible(View targetView, Rect targetRect){
+        return targetView.isShown() &&
+                targetView.getGlobalVisibleRect(visibleTargetRect) &&
+                Rect.intersects(activityVisibleFrame, targetRect);
     }
 
-    private void updateTipViewLayoutParams(View tipView, int x, int y){
-        ViewGroup.LayoutParams lp = tipView.getLayoutParams();
-        if(lp instanceof WindowManager.LayoutParams){
-            WindowManager.LayoutParams wlp = (WindowManager.LayoutParams) lp;
-            wlp.x = x; wlp.y = y;
-            windowManager.updateViewLayout(tipView, wlp);
-        } else {
-            AbsoluteLayout.LayoutParams alp = (AbsoluteLayout.LayoutParams) lp;
-            alp.x = x; alp.y = y;
-            tipView.setLayoutParams(alp);
+    private void setTipHidden(Tip tip, boolean hidden){
+        final int visibility = hidden ? View.INVISIBLE : View.VISIBLE;
+        tip.tipView.setVisibility(visibility);
+        View highlightingView = tip.highlightingView;
+        if(highlightingView != null){
+            highlightingView.setVisibility(visibility);
         }
-    }
-
-    private void setupHighlighting(View targetView, View highlightingView){
-        final int width = targetView.getWidth();
-        final int height = targetView.getHeight();
-        Bitmap.Config config = Bitmap.Config.ARGB_8888;
-        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
-        Canvas canvas = new Canvas(bitmap);
-        targetView.draw(canvas);
-        Resources resources = context.getResources();
-        Drawable background = new BitmapDrawable(resources, bitmap);
-        highlightingView.setBackground(background);
-    }
-
-    private void animateTipViewPointer(TipView tipView){
-        final float initialPosition = 0.5F;
-        final float finalPosition = tipView.getPointerPosition();
-        if(initialPosition != finalPosition){
-            Animator animator = ObjectAnimator.ofFloat(
-                    tipView, "pointerPosition",
-                    initialPosition, finalPosition);
-            animator.start();
+        if(wrapper != null){
+            // the cutouts are drawn for the visible highlighting views only
+            wrapper.invalidate();
         }
-
-        Animator animator = ObjectAnimator.ofFloat(
-                tipView, "pointerProtrusion", 0F, 1F);
-        animator.start();
     }
 
     /**
@@ -1171,4 +3286,58 @@ public final class AppTips {
          */
         void onClose(boolean cancelled);
     }
+
+    /**
+     * Interface definition for the callback to be invoked with the
+     * timings of the phases of showing, advancing and closing the tips.
+     * @see TipMetrics
+     */
+    public interface MetricsListener {
+
+        /**
+         * Called when a phase is finished.
+         * @param phase one of the {@code TipMetrics.PHASE_*} constants.
+         * @param durationNanos the duration of the phase in nanoseconds.
+         */
+        void onPhaseFinished(int phase, long durationNanos);
+
+        /**
+         * Called when a portion of tips is going to be drawn for the
+         * first time.
+         * @param portionIndex the index of the portion.
+         * @param layoutWaits the number of the layout waits made to
+         *                    show the portion.
+         * @param viewManagerCalls the number of the calls to the
+         *                         WindowManager (or to the host layout)
+         *                         made to show the portion.
+         */
+        void onPortionShown(int portionIndex, int layoutWaits, int viewManagerCalls);
+    }
+
+    /**
+     * Interface definition for the callback to be invoked with the
+     * janky frames counted while a portion of tips was shown.
+     * @see JankStats
+     */
+    public interface JankListener {
+
+        /**
+         * Called when a portion of tips is removed.
+         * @param stats the frames counted while the portion was shown.
+         */
+        void onPortionFinished(JankStats stats);
+    }
+
+    /**
+     * Interface definition for the callback to be invoked when the
+     * tips are prepared by the {@link #prepare(OnPreparedListener)}
+     * method.
+     */
+    public interface OnPreparedListener {
+
+        /**
+         * Called on the main thread when the tips are prepared.
+         */
+        void onPrepared();
+    }
 }
@@ -0,0 +1,34 @@
+package com.imogene.apptips;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The single low priority thread shared by all the background work
+ * of the library. The tasks are run one by one in the order they are
+ * submitted, so the tasks that write the same file do not need any
+ * additional ordering.
+ */
+final class BackgroundExecutor {
+
+    private static final String THREAD_NAME = "AppTips";
+
+    private static Executor executor;
+
+    private BackgroundExecutor(){}
+
+    static synchronized Executor get(){
+        if(executor == null){
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
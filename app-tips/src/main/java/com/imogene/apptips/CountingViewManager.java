@@ -0,0 +1,42 @@
+package com.imogene.apptips;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewManager;
+
+/**
+ * Counts the calls made to the wrapped view manager. It is used
+ * only when the metrics are collected, so that the calls are not
+ * counted at all otherwise.
+ */
+final class CountingViewManager implements ViewManager {
+
+    private final ViewManager viewManager;
+    private int callCount;
+
+    CountingViewManager(ViewManager viewManager){
+        this.viewManager = viewManager;
+    }
+
+    int getCallCount() {
+        return callCount;
+    }
+
+    @Override
+    public void addView(View view, ViewGroup.LayoutParams params) {
+        callCount++;
+        viewManager.addView(view, params);
+    }
+
+    @Override
+    public void updateViewLayout(View view, ViewGroup.LayoutParams params) {
+        callCount++;
+        viewManager.updateViewLayout(view, params);
+    }
+
+    @Override
+    public void removeView(View view) {
+        callCount++;
+        viewManager.removeView(view);
+    }
+}
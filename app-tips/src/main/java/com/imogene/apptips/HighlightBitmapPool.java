@@ -0,0 +1,210 @@
+package com.imogene.apptips;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The pool of bitmaps that are used to highlight the target views of
+ * the tips. The pool is shared by all {@link AppTips} objects, so the
+ * bitmaps captured for one portion of tips are reused for the next
+ * portions and for the tips of other screens.
+ * <p>
+ * The bitmaps are grouped into buckets by their size rounded up to
+ * {@value #BUCKET_STEP} pixels and by their config, so that the targets
+ * of slightly different sizes share the same bitmaps. The total size of
+ * the pooled bitmaps is limited by the budget set with the
+ * {@link #setMaxSize(long)} method. When the budget is exceeded the
+ * least recently used bitmaps are recycled.
+ * <p>
+ * All methods of this class are thread safe.
+ */
+public final class HighlightBitmapPool {
+
+    private static final int BUCKET_STEP = 32;
+    private static final int DEFAULT_MAX_SIZE_FRACTION = 16;
+
+    private static HighlightBitmapPool instance;
+
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> buckets =
+            new LinkedHashMap<>(8, 0.75F, true);
+
+    private long maxSize;
+    private long size;
+    private int hitCount;
+    private int missCount;
+
+    private HighlightBitmapPool(){
+        maxSize = Runtime.getRuntime().maxMemory() / DEFAULT_MAX_SIZE_FRACTION;
+    }
+
+    /**
+     * Returns the pool shared by all {@link AppTips} objects.
+     * @return the shared pool.
+     */
+    public static synchronized HighlightBitmapPool getInstance(){
+        if(instance == null){
+            instance = new HighlightBitmapPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum total size in bytes of the bitmaps kept in this
+     * pool. The default value is 1/16 of the maximum heap size. If the
+     * pool contains more bitmaps than allowed by the new budget the least
+     * recently used of them are recycled immediately.
+     * @param maxSize maximum size of the pool in bytes, {@code 0} disables
+     *                pooling.
+     */
+    public synchronized void setMaxSize(long maxSize){
+        if(maxSize < 0){
+            throw new IllegalArgumentException(
+                    "Max size must not be negative.");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the bitmaps kept in
+     * this pool.
+     * @return maximum size of the pool.
+     */
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the current total size in bytes of the bitmaps kept in
+     * this pool.
+     * @return current size of the pool.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of times a pooled bitmap was reused.
+     * @return number of hits.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of times a new bitmap had to be created.
+     * @return number of misses.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Recycles all the bitmaps kept in this pool.
+     */
+    public synchronized void clear(){
+        trimToSize(0);
+    }
+
+    /**
+     * Returns a cleared bitmap of the given config whose size is not
+     * less than the requested one. The returned bitmap must be given
+     * back with the {@link #release(Bitmap)} method when it is not
+     * needed anymore.
+     */
+    synchronized Bitmap acquire(int width, int height, Bitmap.Config config){
+        final int bucketWidth = roundUp(width);
+        final int bucketHeight = roundUp(height);
+        final long key = getKey(bucketWidth, bucketHeight, config);
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        Bitmap bitmap = bucket != null ? bucket.pollLast() : null;
+        if(bitmap != null){
+            if(bucket.isEmpty()){
+                buckets.remove(key);
+            }
+            size -= bitmap.getByteCount();
+            hitCount++;
+            bitmap.eraseColor(0);
+            return bitmap;
+        }
+        missCount++;
+        return Bitmap.createBitmap(bucketWidth, bucketHeight, config);
+    }
+
+    /**
+     * Returns a cleared bitmap of the given config and exactly of the
+     * given size, for the captures that scale the content to the whole
+     * bitmap. Such bitmaps are kept in their own buckets when they are
+     * released, so they are reused only for the targets of the same size.
+     */
+    synchronized Bitmap acquireExact(int width, int height, Bitmap.Config config){
+        final long key = getKey(width, height, config);
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        Bitmap bitmap = bucket != null ? bucket.pollLast() : null;
+        if(bitmap != null){
+            if(bucket.isEmpty()){
+                buckets.remove(key);
+            }
+            size -= bitmap.getByteCount();
+            hitCount++;
+            bitmap.eraseColor(0);
+            return bitmap;
+        }
+        missCount++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Gives the bitmap back to this pool. The bitmap must not be used
+     * by the caller after this call.
+     */
+    synchronized void release(Bitmap bitmap){
+        if(bitmap.isRecycled()){
+            return;
+        }
+        final int byteCount = bitmap.getByteCount();
+        if(byteCount > maxSize){
+            bitmap.recycle();
+            return;
+        }
+        final long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if(bucket == null){
+            bucket = new ArrayDeque<>(2);
+            buckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        size += byteCount;
+        trimToSize(maxSize);
+    }
+
+    private void trimToSize(long maxSize){
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator =
+                buckets.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()){
+            ArrayDeque<Bitmap> bucket = iterator.next().getValue();
+            while (size > maxSize && !bucket.isEmpty()){
+                Bitmap bitmap = bucket.pollFirst();
+                size -= bitmap.getByteCount();
+                bitmap.recycle();
+            }
+            if(bucket.isEmpty()){
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int roundUp(int dimension){
+        final int buckets = (Math.max(dimension, 1) + BUCKET_STEP - 1) / BUCKET_STEP;
+        return buckets * BUCKET_STEP;
+    }
+
+    private static long getKey(int width, int height, Bitmap.Config config){
+        final long ordinal = config != null ? config.ordinal() + 1 : 0;
+        return (ordinal << 48) | ((long) width << 24) | height;
+    }
+}
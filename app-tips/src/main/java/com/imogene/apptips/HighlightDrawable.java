@@ -0,0 +1,55 @@
+package com.imogene.apptips;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws the captured snapshot of a target view. The snapshot occupies
+ * only the top left part of the pooled bitmap and may be downsampled,
+ * so only that part is drawn and it is scaled to the bounds.
+ */
+final class HighlightDrawable extends Drawable {
+
+    private final Bitmap bitmap;
+    private final Rect source;
+    private final Paint paint;
+
+    HighlightDrawable(Bitmap bitmap, int width, int height){
+        this.bitmap = bitmap;
+        source = new Rect(0, 0, width, height);
+        paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if(!bitmap.isRecycled()){
+            canvas.drawBitmap(bitmap, source, getBounds(), paint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,69 @@
+package com.imogene.apptips;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.view.View;
+import android.widget.AbsoluteLayout;
+
+/**
+ * The wrapper of the tip views and highlighting views. When the cutouts
+ * are enabled the wrapper draws the scrim itself and clears the areas
+ * occupied by the highlighting views, so that the live target views of
+ * the activity window are visible through them. The cutouts follow
+ * the alpha of the highlighting views, so they fade along with them.
+ */
+@SuppressWarnings("deprecation")
+final class HighlightingLayout extends AbsoluteLayout {
+
+    private final Paint cutoutPaint;
+    private boolean cutoutsEnabled;
+    private int scrimColor;
+
+    HighlightingLayout(Context context) {
+        super(context);
+        cutoutPaint = new Paint();
+        // unlike CLEAR this mode respects the alpha of the paint
+        cutoutPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+    }
+
+    void setCutoutsEnabled(boolean cutoutsEnabled, int scrimColor){
+        this.cutoutsEnabled = cutoutsEnabled;
+        this.scrimColor = scrimColor;
+        setWillNotDraw(!cutoutsEnabled);
+        invalidate();
+    }
+
+    boolean isCutoutsEnabled() {
+        return cutoutsEnabled;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if(cutoutsEnabled){
+            // the cutouts follow the highlighting views, so the scrim
+            // must be redrawn whenever the children are moved
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if(cutoutsEnabled){
+            canvas.drawColor(scrimColor);
+            final int childCount = getChildCount();
+            for(int i = 0; i < childCount; i++){
+                View child = getChildAt(i);
+                // all the children except tip views are highlighting views
+                if(!(child instanceof TipView) && child.getVisibility() == VISIBLE){
+                    cutoutPaint.setAlpha((int) (child.getAlpha() * 0xFF));
+                    canvas.drawRect(child.getLeft(), child.getTop(),
+                            child.getRight(), child.getBottom(), cutoutPaint);
+                }
+            }
+        }
+    }
+}
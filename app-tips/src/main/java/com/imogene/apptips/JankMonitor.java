@@ -0,0 +1,193 @@
+package com.imogene.apptips;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the janky frames while a portion of tips is shown. The frames
+ * are timed by the frame metrics of the activity window if they are
+ * available (API level 24) and the tips are drawn by that window, the
+ * intervals between the frames of the main thread are used otherwise,
+ * since the windows of the tips are drawn on the same thread.
+ * <p>
+ * The phases and the tips that are active are collected between the
+ * frames, a janky frame is attributed to all of them.
+ */
+final class JankMonitor implements Choreographer.FrameCallback {
+
+    private static final long NANOS_PER_SECOND = 1000000000;
+
+    /**
+     * An interval between the frames is janky if at least one
+     * frame is skipped, some tolerance is left for the vsync jitter.
+     */
+    private static final float JANKY_INTERVAL = 1.5F;
+
+    private final Window window;
+    private final TipsAnimator tipsAnimator;
+    private final Choreographer choreographer;
+    private final long frameIntervalNanos;
+
+    private JankStats stats;
+    private Tip rootTip;
+    private boolean attaching;
+    private long lastFrameTime;
+    private Object frameMetricsListener;
+
+    private int phases;
+    private final List<Tip> activeTips = new ArrayList<>();
+    private final List<TipView> animatedViews = new ArrayList<>();
+
+    JankMonitor(Window window, TipsAnimator tipsAnimator, float refreshRate){
+        this.window = window;
+        this.tipsAnimator = tipsAnimator;
+        choreographer = Choreographer.getInstance();
+        if(refreshRate <= 0){
+            refreshRate = 60;
+        }
+        frameIntervalNanos = (long) (NANOS_PER_SECOND / refreshRate);
+    }
+
+    /**
+     * Starts counting the frames of the portion of tips with the given
+     * root tip. The frame metrics are used only if requested and
+     * available.
+     */
+    void start(int portionIndex, Tip rootTip, boolean useFrameMetrics){
+        stop();
+        useFrameMetrics &= Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        stats = new JankStats(portionIndex, useFrameMetrics);
+        this.rootTip = rootTip;
+        attaching = true;
+        lastFrameTime = 0;
+        resetActive();
+        if(useFrameMetrics){
+            frameMetricsListener = addFrameMetricsListener();
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    /**
+     * Called when the portion of tips is drawn for the first time.
+     */
+    void onPortionDrawn(){
+        attaching = false;
+    }
+
+    /**
+     * Marks the given phase as active until the next frame.
+     */
+    void markPhase(int phase, Tip tip){
+        phases |= 1 << phase;
+        if(tip != null && !activeTips.contains(tip)){
+            activeTips.add(tip);
+        }
+    }
+
+    /**
+     * Stops counting the frames and returns the collected stats or
+     * null if the monitor is not started.
+     */
+    JankStats stop(){
+        final JankStats stats = this.stats;
+        if(stats == null){
+            return null;
+        }
+        this.stats = null;
+        rootTip = null;
+        choreographer.removeFrameCallback(this);
+        if(frameMetricsListener != null){
+            removeFrameMetricsListener(frameMetricsListener);
+            frameMetricsListener = null;
+        }
+        resetActive();
+        return stats;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(stats == null){
+            return;
+        }
+        if(frameMetricsListener == null && lastFrameTime != 0){
+            final long interval = frameTimeNanos - lastFrameTime;
+            onFrame(interval, interval > frameIntervalNanos * JANKY_INTERVAL);
+        }
+        lastFrameTime = frameTimeNanos;
+        // the animations are going to be applied in this frame
+        final List<TipView> animatedViews = this.animatedViews;
+        tipsAnimator.collectAnimatedViews(animatedViews);
+        for(int i = 0, size = animatedViews.size(); i < size; i++){
+            Tip tip = (Tip) animatedViews.get(i).getTag(R.id.tag_id_tip);
+            markPhase(JankStats.PHASE_ANIMATION, tip);
+        }
+        animatedViews.clear();
+        choreographer.postFrameCallback(this);
+    }
+
+    private void onFrame(long durationNanos, boolean janky){
+        final JankStats stats = this.stats;
+        stats.addFrame(durationNanos);
+        if(janky){
+            stats.addJankyFrame(phases);
+            final List<Tip> activeTips = this.activeTips;
+            for(int i = 0, size = activeTips.size(); i < size; i++){
+                stats.addJankyFrame(activeTips.get(i));
+            }
+        }
+        resetActive();
+    }
+
+    /**
+     * Clears the phases and the tips collected since the last frame,
+     * while the portion is being attached all its tips are active.
+     */
+    private void resetActive(){
+        phases = 0;
+        activeTips.clear();
+        if(attaching && rootTip != null){
+            phases = 1 << JankStats.PHASE_ATTACH;
+            Tip tip = rootTip;
+            do {
+                activeTips.add(tip);
+                tip = tip.sibling;
+            } while (tip != null);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private Object addFrameMetricsListener(){
+        Window.OnFrameMetricsAvailableListener listener =
+                new Window.OnFrameMetricsAvailableListener() {
+            @Override
+            public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                                                int dropCountSinceLastInvocation) {
+                if(stats == null || frameMetricsListener != this ||
+                        frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) != 0){
+                    return;
+                }
+                final long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+                onFrame(duration, duration > frameIntervalNanos);
+            }
+        };
+        // the listener is called on the main thread, so the
+        // collected phases are not accessed concurrently
+        window.addOnFrameMetricsAvailableListener(listener,
+                new Handler(Looper.getMainLooper()));
+        return listener;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void removeFrameMetricsListener(Object listener){
+        window.removeOnFrameMetricsAvailableListener(
+                (Window.OnFrameMetricsAvailableListener) listener);
+    }
+}
@@ -0,0 +1,168 @@
+package com.imogene.apptips;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The frames counted while a portion of tips was shown and the janky
+ * ones among them, attributed to the phases of showing the tips and
+ * to the tips that were active during the janky frames.
+ * <p>
+ * A janky frame is counted in every phase that was active during
+ * the frame, so the counts of the phases might add up to more than
+ * the total number of the janky frames. The frames during which no
+ * phase was active are counted in {@link #PHASE_OTHER}.
+ * @see AppTips#setJankListener(AppTips.JankListener)
+ */
+public final class JankStats {
+
+    /**
+     * Phase. From the start of showing a portion of tips to the first
+     * frame of the tips drawn at their positions.
+     */
+    public static final int PHASE_ATTACH = 0;
+
+    /**
+     * Phase. Capturing a target view into a bitmap for highlighting.
+     */
+    public static final int PHASE_HIGHLIGHTING = 1;
+
+    /**
+     * Phase. Playing the enter, exit or pointer animations of the tips.
+     */
+    public static final int PHASE_ANIMATION = 2;
+
+    /**
+     * Phase. None of the other phases.
+     */
+    public static final int PHASE_OTHER = 3;
+
+    static final int PHASE_COUNT = 4;
+
+    private static final String[] PHASE_NAMES = {
+            "attach", "highlighting", "animation", "other"
+    };
+
+    private final int portionIndex;
+    private final boolean frameMetrics;
+    private int frameCount;
+    private int jankyFrameCount;
+    private long maxFrameDuration;
+    private final int[] phaseJankyFrameCounts = new int[PHASE_COUNT];
+    private final Map<Tip, Integer> tipJankyFrameCounts = new HashMap<>();
+
+    JankStats(int portionIndex, boolean frameMetrics){
+        this.portionIndex = portionIndex;
+        this.frameMetrics = frameMetrics;
+    }
+
+    void addFrame(long durationNanos){
+        frameCount++;
+        if(durationNanos > maxFrameDuration){
+            maxFrameDuration = durationNanos;
+        }
+    }
+
+    void addJankyFrame(int phases){
+        jankyFrameCount++;
+        if(phases == 0){
+            phaseJankyFrameCounts[PHASE_OTHER]++;
+            return;
+        }
+        for(int i = 0; i < PHASE_COUNT; i++){
+            if((phases & (1 << i)) != 0){
+                phaseJankyFrameCounts[i]++;
+            }
+        }
+    }
+
+    void addJankyFrame(Tip tip){
+        Integer count = tipJankyFrameCounts.get(tip);
+        tipJankyFrameCounts.put(tip, count != null ? count + 1 : 1);
+    }
+
+    /**
+     * Returns the index of the portion of tips.
+     * @return index of the portion.
+     */
+    public int getPortionIndex() {
+        return portionIndex;
+    }
+
+    /**
+     * Checks whether the frames were timed by the frame metrics of the
+     * activity window (available since API level 24 when the tips are
+     * hosted in the decor view, see {@link AppTips#HOST_MODE_DECOR_VIEW})
+     * or by the intervals between the frames of the main thread otherwise.
+     * @return true if the frame metrics were used, false otherwise.
+     */
+    public boolean isFrameMetricsUsed() {
+        return frameMetrics;
+    }
+
+    /**
+     * Returns the number of the frames counted while the portion of
+     * tips was shown.
+     * @return number of frames.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the number of the janky frames.
+     * @return number of janky frames.
+     */
+    public int getJankyFrameCount() {
+        return jankyFrameCount;
+    }
+
+    /**
+     * Returns the number of the janky frames during which the given
+     * phase was active.
+     * @param phase one of the {@code PHASE_*} constants.
+     * @return number of janky frames.
+     */
+    public int getJankyFrameCount(int phase){
+        if(phase < 0 || phase >= PHASE_COUNT){
+            throw new IllegalArgumentException(
+                    "Unsupported phase: " + phase + ".");
+        }
+        return phaseJankyFrameCounts[phase];
+    }
+
+    /**
+     * Returns the number of the janky frames during which the given
+     * tip was attached, highlighted or animated.
+     * @param tip the tip of the portion.
+     * @return number of janky frames.
+     */
+    public int getJankyFrameCount(Tip tip){
+        Integer count = tipJankyFrameCounts.get(tip);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Returns the longest frame duration (or the longest interval
+     * between the frames if the frame metrics were not used).
+     * @return duration in nanoseconds or {@code 0} if there are
+     * no frames.
+     */
+    public long getMaxFrameDurationNanos() {
+        return maxFrameDuration;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("portion=").append(portionIndex)
+                .append(", frames=").append(frameCount)
+                .append(", janky=").append(jankyFrameCount);
+        for(int i = 0; i < PHASE_COUNT; i++){
+            builder.append(", ").append(PHASE_NAMES[i]).append('=')
+                    .append(phaseJankyFrameCounts[i]);
+        }
+        builder.append(", max=").append(maxFrameDuration / 1000).append("us");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.imogene.apptips;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. The values are
+ * counted in logarithmic buckets, each power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so the percentiles are
+ * reported with the relative error of at most 12.5%. Recording a
+ * value is a couple of atomic increments, the values can be recorded
+ * and read from any thread.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given value.
+     * @param valueNanos the latency in nanoseconds, the negative
+     *                   values are recorded as {@code 0}.
+     */
+    public void record(long valueNanos){
+        if(valueNanos < 0){
+            valueNanos = 0;
+        }
+        counts.incrementAndGet(getBucketIndex(valueNanos));
+        count.incrementAndGet();
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (valueNanos > currentMax && !max.compareAndSet(currentMax, valueNanos));
+    }
+
+    /**
+     * Returns the number of the recorded values.
+     * @return number of values.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the maximum recorded value.
+     * @return maximum value in nanoseconds or {@code 0} if there
+     * are no values.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given percentage of the
+     * recorded values falls. The returned value is the upper bound
+     * of the bucket of the percentile, but it never exceeds the
+     * maximum recorded value.
+     * @param percentile the percentile from {@code 0} to {@code 100}.
+     * @return the percentile value in nanoseconds or {@code 0} if
+     * there are no values.
+     */
+    public long getPercentile(double percentile){
+        if(percentile < 0 || percentile > 100){
+            throw new IllegalArgumentException(
+                    "Percentile must be in range [0, 100].");
+        }
+        final long total = count.get();
+        if(total == 0){
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        final AtomicLongArray counts = this.counts;
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+        // the values recorded concurrently are not counted yet
+        return max.get();
+    }
+
+    /**
+     * Clears the recorded values. The values recorded concurrently
+     * with this call might be partially kept.
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    private static int getBucketIndex(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        // the position of the highest bit and the following bits
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketUpperBound(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        final long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() +
+                ", p50=" + toMicros(getPercentile(50)) + "us" +
+                ", p95=" + toMicros(getPercentile(95)) + "us" +
+                ", p99=" + toMicros(getPercentile(99)) + "us" +
+                ", max=" + toMicros(getMax()) + "us";
+    }
+
+    private static long toMicros(long nanos){
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,196 @@
+package com.imogene.apptips;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Keeps the highlighting of the shown tips in sync with their animating
+ * targets. Before each frame drawn by the activity window the targets are
+ * checked to be invalidated since the previous frame, only those targets
+ * are drawn again into the bitmaps they are already captured into, so the
+ * targets that do not change cost nothing.
+ * <p>
+ * The refreshes are limited to the given maximum rate, the invalidated
+ * targets are refreshed together at most once per interval, no matter
+ * how many frames the activity draws. The refreshes that would exceed
+ * the rate are skipped and counted, the last skipped one is made when
+ * the interval ends, so the highlighting never stays behind the final
+ * state of a target.
+ * <p>
+ * The invalidated targets are known only since Lollipop, on the older
+ * versions all the targets are refreshed at the maximum rate while the
+ * activity draws frames.
+ */
+final class LiveHighlighter implements ViewTreeObserver.OnPreDrawListener, Runnable {
+
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    private final Callback callback;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private long refreshInterval;
+    private View observedView;
+    private Tip rootTip;
+    private long lastRefreshTime;
+    private boolean refreshScheduled;
+
+    private int refreshCount;
+    private int skippedCount;
+
+    LiveHighlighter(Callback callback, int maxRate){
+        this.callback = callback;
+        setMaxRate(maxRate);
+    }
+
+    /**
+     * Sets the maximum number of refreshes per second.
+     */
+    void setMaxRate(int maxRate){
+        refreshInterval = MILLIS_PER_SECOND / maxRate;
+    }
+
+    /**
+     * Starts refreshing the highlighting of the portion of tips with the
+     * given root tip. The targets are checked before each frame drawn by
+     * the window of the given decor view.
+     */
+    void start(View decorView, Tip rootTip){
+        stop();
+        this.rootTip = rootTip;
+        observedView = decorView;
+        decorView.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    /**
+     * Stops refreshing, the refresh that is scheduled is dropped.
+     */
+    void stop(){
+        final View view = observedView;
+        if(view == null){
+            return;
+        }
+        observedView = null;
+        rootTip = null;
+        ViewTreeObserver observer = view.getViewTreeObserver();
+        if(observer.isAlive()){
+            observer.removeOnPreDrawListener(this);
+        }
+        if(refreshScheduled){
+            refreshScheduled = false;
+            handler.removeCallbacks(this);
+        }
+    }
+
+    int getRefreshCount() {
+        return refreshCount;
+    }
+
+    int getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if(rootTip == null){
+            return true;
+        }
+        final long now = SystemClock.uptimeMillis();
+        final boolean due = now - lastRefreshTime >= refreshInterval;
+        boolean refreshed = false;
+        boolean skipped = false;
+        Tip tip = rootTip;
+        do {
+            if(tip.highlightingBitmap != null){
+                final View targetView = callback.getTargetView(tip);
+                if(targetView != null && isInvalidated(targetView)){
+                    tip.highlightingInvalidated = true;
+                }
+                if(tip.highlightingInvalidated){
+                    if(due){
+                        tip.highlightingInvalidated = false;
+                        if(targetView != null){
+                            callback.refreshHighlighting(tip, targetView);
+                            refreshCount++;
+                            refreshed = true;
+                        }
+                    } else {
+                        skippedCount++;
+                        skipped = true;
+                    }
+                }
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        if(refreshed){
+            lastRefreshTime = now;
+        }
+        if(skipped && !refreshScheduled){
+            refreshScheduled = true;
+            handler.postAtTime(this, lastRefreshTime + refreshInterval);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given target view is invalidated since it was
+     * drawn last time. Before Lollipop it can not be checked, so the
+     * target is always taken as invalidated.
+     */
+    private static boolean isInvalidated(View view){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
+            return view.isDirty();
+        }
+        return true;
+    }
+
+    /**
+     * Makes the refresh that was skipped, the targets may have
+     * stopped animating, so no more frames would make it.
+     */
+    @Override
+    public void run() {
+        refreshScheduled = false;
+        if(rootTip == null){
+            return;
+        }
+        boolean refreshed = false;
+        Tip tip = rootTip;
+        do {
+            if(tip.highlightingInvalidated && tip.highlightingBitmap != null){
+                tip.highlightingInvalidated = false;
+                final View targetView = callback.getTargetView(tip);
+                if(targetView != null){
+                    callback.refreshHighlighting(tip, targetView);
+                    refreshCount++;
+                    refreshed = true;
+                }
+            }
+            tip = tip.sibling;
+        } while (tip != null);
+        if(refreshed){
+            lastRefreshTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Provides the targets and draws them.
+     */
+    interface Callback {
+
+        /**
+         * Returns the target view of the given tip or null
+         * if it is not available.
+         */
+        View getTargetView(Tip tip);
+
+        /**
+         * Draws the given target view of the given tip
+         * into it's highlighting bitmap.
+         */
+        void refreshHighlighting(Tip tip, View targetView);
+    }
+}
@@ -0,0 +1,125 @@
+package com.imogene.apptips;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.view.PixelCopy;
+import android.view.SurfaceView;
+import android.view.View;
+import android.view.Window;
+
+/**
+ * Captures the targets for the highlighting by copying the pixels
+ * that are already rendered instead of drawing the target views on a
+ * software canvas. The copy is done by the render thread and does not
+ * block the main thread, so complex targets are captured for free, and
+ * it captures the content that is not drawn by the views themselves,
+ * such as the content of the surface views, texture views, maps and
+ * video previews.
+ * <p>
+ * The surface views are copied from their own surfaces (API level 24),
+ * the other views are copied from the region of the window (API level
+ * 26). The copies finish on a shared handler thread, the results are
+ * delivered on the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.N)
+final class PixelCopyCapturer {
+
+    private static final String THREAD_NAME = "AppTips-PixelCopy";
+
+    private static Handler copyHandler;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int[] location = new int[2];
+    private final Rect sourceRect = new Rect();
+
+    /**
+     * Checks whether the given target view of the given window can
+     * be captured on the current API level.
+     */
+    static boolean canCapture(View targetView, Window window){
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.N){
+            return false;
+        }
+        if(targetView instanceof SurfaceView){
+            return true;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+                targetView.getRootView() == window.getDecorView();
+    }
+
+    private static synchronized Handler getCopyHandler(){
+        if(copyHandler == null){
+            HandlerThread thread = new HandlerThread(THREAD_NAME);
+            thread.start();
+            copyHandler = new Handler(thread.getLooper());
+        }
+        return copyHandler;
+    }
+
+    /**
+     * Starts copying the given target view into the given bitmap, the
+     * content is scaled to the size of the bitmap. The callback is
+     * always called on the main thread, even if the copy fails at once.
+     * The bitmap must not be used until the callback is called.
+     */
+    void capture(View targetView, Window window, final Bitmap bitmap,
+                 final Callback callback){
+        PixelCopy.OnPixelCopyFinishedListener listener =
+                new PixelCopy.OnPixelCopyFinishedListener() {
+            @Override
+            public void onPixelCopyFinished(final int result) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCaptured(bitmap, result == PixelCopy.SUCCESS);
+                    }
+                });
+            }
+        };
+        try {
+            if(targetView instanceof SurfaceView){
+                PixelCopy.request((SurfaceView) targetView, bitmap,
+                        listener, getCopyHandler());
+            } else {
+                requestWindowCopy(targetView, window, bitmap, listener);
+            }
+        } catch (IllegalArgumentException e) {
+            // the window or the surface is not ready yet
+            listener.onPixelCopyFinished(PixelCopy.ERROR_SOURCE_INVALID);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void requestWindowCopy(View targetView, Window window, Bitmap bitmap,
+                                   PixelCopy.OnPixelCopyFinishedListener listener){
+        targetView.getLocationInWindow(location);
+        final View decorView = window.getDecorView();
+        final Rect rect = sourceRect;
+        rect.set(location[0], location[1], location[0] + targetView.getWidth(),
+                location[1] + targetView.getHeight());
+        if(rect.left < 0 || rect.top < 0 || rect.right > decorView.getWidth() ||
+                rect.bottom > decorView.getHeight()){
+            // the visible part would be stretched to the whole bitmap
+            throw new IllegalArgumentException(
+                    "Target view is not entirely within the window.");
+        }
+        PixelCopy.request(window, rect, bitmap, listener, getCopyHandler());
+    }
+
+    /**
+     * Receives the results of the copies.
+     */
+    interface Callback {
+
+        /**
+         * Called on the main thread when the copy into the given
+         * bitmap is finished either successfully or not.
+         */
+        void onCaptured(Bitmap bitmap, boolean success);
+    }
+}
@@ -0,0 +1,30 @@
+package com.imogene.apptips;
+
+/**
+ * The animation of the pointer of a tip that is played when the tip
+ * appears on the screen. The state of the pointer is computed for
+ * the given fraction of the animation, the pointer itself is updated
+ * by the tips.
+ * @see AppTips#setPointerAnimation(PointerAnimation)
+ * @see TipAnimations#POINTER_GROW
+ */
+public interface PointerAnimation {
+
+    /**
+     * Returns the visible part of the pointer at the given fraction.
+     * @param fraction the interpolated fraction of the animation.
+     * @return the visible part of the pointer size, from {@code 0}
+     * to {@code 1}.
+     */
+    float getProtrusion(float fraction);
+
+    /**
+     * Returns the position of the pointer at the given fraction.
+     * @param fraction the interpolated fraction of the animation.
+     * @param finalPosition the position of the pointer when the
+     *                      animation ends.
+     * @return the position of the pointer as a fraction of the
+     * appropriate side of the tip.
+     */
+    float getPosition(float fraction, float finalPosition);
+}
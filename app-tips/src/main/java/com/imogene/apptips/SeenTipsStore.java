@@ -0,0 +1,411 @@
+package com.imogene.apptips;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * Remembers the tips that have been seen by the user across the
+ * launches of the app. The tips are identified by their stable ids,
+ * see {@link Tip#setId(int)}. If an {@link AppTips} object has a store
+ * (see {@link AppTips#setSeenTipsStore(SeenTipsStore)}) it skips the
+ * portions of tips that all have been seen without creating any views.
+ * <p>
+ * The ids are kept in memory in a bitset, so checking a tip is
+ * constant time once the store is loaded. The ids are limited by
+ * {@link Tip#MAX_ID}, so the bitset takes at most 8 KB. The store is
+ * loaded lazily by the first check or in advance in background by the
+ * {@link #preload()} method. The changes are appended to a binary log file in background,
+ * a change is a single record, so the file is not rewritten for each
+ * seen tip. The log is compacted (rewritten with the seen ids only)
+ * when it contains much more records than the seen ids. A failed write
+ * is retried with growing delays by compacting the log.
+ * <p>
+ * All methods of this class are thread safe.
+ */
+public final class SeenTipsStore {
+
+    private static final String TAG = "SeenTipsStore";
+    private static final String DEFAULT_FILE_NAME = "app_tips_seen.log";
+
+    /** The header of the log file, it is "ATSL" in ASCII. */
+    private static final int MAGIC = 0x4154534C;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_SIZE = 4;
+
+    /** The log is never compacted while it is smaller than that. */
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    /** The delays between the retries of a failed write, in milliseconds. */
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    private static SeenTipsStore instance;
+
+    private final Context context;
+    private File file;
+
+    private final BitSet seenIds = new BitSet();
+    private boolean loaded;
+    private int recordCount;
+    private boolean compactionRequested;
+
+    private int[] pendingRecords = new int[8];
+    private int pendingCount;
+    private boolean writeScheduled;
+
+    private Handler retryHandler;
+    private long retryDelay = MIN_RETRY_DELAY;
+    private boolean retryScheduled;
+
+    /**
+     * Creates new store kept in the given file. Only one store must be
+     * created for a file.
+     * @param file the file of the store, it is created if it does not
+     *             exist.
+     */
+    public SeenTipsStore(@NonNull File file){
+        if(file == null){
+            throw new IllegalArgumentException(
+                    "The file parameter must not be null.");
+        }
+        this.context = null;
+        this.file = file;
+    }
+
+    private SeenTipsStore(Context context){
+        this.context = context;
+    }
+
+    /**
+     * Returns the default store of the app, it is kept in the files
+     * directory of the app.
+     * @param context any context of the app.
+     * @return the default store.
+     */
+    public static synchronized SeenTipsStore getInstance(@NonNull Context context){
+        if(context == null){
+            throw new IllegalArgumentException(
+                    "The context parameter must not be null.");
+        }
+        if(instance == null){
+            instance = new SeenTipsStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the store in background if it is not loaded yet, so that
+     * the first check of a tip does not read the file on the calling
+     * thread.
+     */
+    public void preload(){
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SeenTipsStore.this){
+                    ensureLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether the tip with the given id has been seen.
+     * @param id the id of the tip.
+     * @return {@code true} if the tip has been seen, {@code false}
+     * otherwise or if the id is {@link Tip#NO_ID}.
+     */
+    public synchronized boolean isSeen(int id){
+        if(id < 0 || id > Tip.MAX_ID){
+            return false;
+        }
+        ensureLoaded();
+        return seenIds.get(id);
+    }
+
+    /**
+     * Marks the tip with the given id as seen. The change is written
+     * to the file in background.
+     * @param id the id of the tip from {@code 0} to {@link Tip#MAX_ID}.
+     */
+    public synchronized void markSeen(int id){
+        checkId(id);
+        ensureLoaded();
+        if(!seenIds.get(id)){
+            seenIds.set(id);
+            appendRecord(id);
+        }
+    }
+
+    /**
+     * Marks the tip with the given id as not seen, so that it is
+     * shown again. The change is written to the file in background.
+     * @param id the id of the tip from {@code 0} to {@link Tip#MAX_ID}.
+     */
+    public synchronized void clear(int id){
+        checkId(id);
+        ensureLoaded();
+        if(seenIds.get(id)){
+            seenIds.clear(id);
+            // the cleared ids are stored as their complements
+            appendRecord(~id);
+        }
+    }
+
+    /**
+     * Marks all the tips as not seen. The file is rewritten in
+     * background.
+     */
+    public synchronized void clearAll(){
+        ensureLoaded();
+        seenIds.clear();
+        pendingCount = 0;
+        compactionRequested = true;
+        scheduleWrite();
+    }
+
+    private static void checkId(int id){
+        if(id < 0){
+            throw new IllegalArgumentException(
+                    "Tip id must not be negative.");
+        }
+        if(id > Tip.MAX_ID){
+            throw new IllegalArgumentException(
+                    "Tip id must not be greater than " + Tip.MAX_ID + ".");
+        }
+    }
+
+    private synchronized File getFile(){
+        if(file == null){
+            file = new File(context.getFilesDir(), DEFAULT_FILE_NAME);
+        }
+        return file;
+    }
+
+    /**
+     * Reads the log if it is not read yet. A damaged log is read up
+     * to the damaged record and rewritten by the next write.
+     */
+    private void ensureLoaded(){
+        if(loaded){
+            return;
+        }
+        loaded = true;
+        final File file = getFile();
+        if(!file.exists()){
+            return;
+        }
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            FileChannel channel = stream.getChannel();
+            final long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+            buffer.flip();
+            if(buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC){
+                readRecords(buffer);
+            } else {
+                compactionRequested = true;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the seen tips.", e);
+            compactionRequested = true;
+        } finally {
+            closeQuietly(stream);
+        }
+        if(compactionRequested){
+            scheduleWrite();
+        }
+    }
+
+    private void readRecords(ByteBuffer buffer){
+        final BitSet seenIds = this.seenIds;
+        while (buffer.remaining() >= RECORD_SIZE){
+            int record = buffer.getInt();
+            final int id = record >= 0 ? record : ~record;
+            if(id > Tip.MAX_ID){
+                // written before the ids were limited, it is
+                // dropped instead of growing the bitset
+                compactionRequested = true;
+            } else if(record >= 0){
+                seenIds.set(id);
+            } else {
+                seenIds.clear(id);
+            }
+            recordCount++;
+        }
+        if(buffer.hasRemaining()){
+            // the last record is partially written, the next
+            // records would not be aligned if appended
+            compactionRequested = true;
+        }
+    }
+
+    private void appendRecord(int record){
+        if(pendingCount == pendingRecords.length){
+            int[] records = new int[pendingCount * 2];
+            System.arraycopy(pendingRecords, 0, records, 0, pendingCount);
+            pendingRecords = records;
+        }
+        pendingRecords[pendingCount++] = record;
+        scheduleWrite();
+    }
+
+    private void scheduleWrite(){
+        if(!writeScheduled){
+            writeScheduled = true;
+            BackgroundExecutor.get().execute(writeTask);
+        }
+    }
+
+    /**
+     * Writes the pending records on the background thread. The records
+     * are taken under the lock, the file is written without it, so the
+     * checks are not blocked by the writes. The writes are serialized by
+     * the single background thread.
+     */
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            final int[] records;
+            final int count;
+            final BitSet snapshot;
+            synchronized (SeenTipsStore.this){
+                writeScheduled = false;
+                count = pendingCount;
+                final int total = recordCount + count;
+                if(compactionRequested || (total > MIN_COMPACTION_RECORDS &&
+                        total > 2 * seenIds.cardinality())){
+                    compactionRequested = false;
+                    snapshot = (BitSet) seenIds.clone();
+                    records = null;
+                    recordCount = snapshot.cardinality();
+                } else {
+                    snapshot = null;
+                    records = new int[count];
+                    System.arraycopy(pendingRecords, 0, records, 0, count);
+                    recordCount = total;
+                }
+                pendingCount = 0;
+            }
+            try {
+                if(snapshot != null){
+                    compact(snapshot);
+                } else if(count > 0){
+                    append(records, count);
+                }
+                synchronized (SeenTipsStore.this){
+                    retryDelay = MIN_RETRY_DELAY;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write the seen tips.", e);
+                synchronized (SeenTipsStore.this){
+                    // the file is in unknown state and the taken records
+                    // are lost, the compaction writes all the seen ids
+                    compactionRequested = true;
+                    scheduleRetry();
+                }
+            }
+        }
+    };
+
+    /**
+     * Schedules the write after a delay that is doubled by each
+     * failure, so a full disk is not written in a loop.
+     */
+    private void scheduleRetry(){
+        if(retryScheduled){
+            return;
+        }
+        retryScheduled = true;
+        if(retryHandler == null){
+            retryHandler = new Handler(Looper.getMainLooper());
+        }
+        retryHandler.postDelayed(retryTask, retryDelay);
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+    }
+
+    private final Runnable retryTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SeenTipsStore.this){
+                retryScheduled = false;
+                scheduleWrite();
+            }
+        }
+    };
+
+    private void append(int[] records, int count) throws IOException {
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(getFile(), true);
+            FileChannel channel = stream.getChannel();
+            final boolean empty = channel.size() == 0;
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    (empty ? HEADER_SIZE : 0) + count * RECORD_SIZE);
+            if(empty){
+                buffer.putInt(MAGIC);
+            }
+            for(int i = 0; i < count; i++){
+                buffer.putInt(records[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Writes the seen ids into a temporary file that replaces the
+     * log, so the log is never left partially rewritten.
+     */
+    private void compact(BitSet seenIds) throws IOException {
+        final File file = getFile();
+        final File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tempFile);
+            FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    HEADER_SIZE + seenIds.cardinality() * RECORD_SIZE);
+            buffer.putInt(MAGIC);
+            for(int id = seenIds.nextSetBit(0); id >= 0; id = seenIds.nextSetBit(id + 1)){
+                buffer.putInt(id);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            stream.getFD().sync();
+        } finally {
+            closeQuietly(stream);
+        }
+        if(!tempFile.renameTo(file)){
+            throw new IOException("Failed to rename " + tempFile + " to " + file + ".");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable){
+        if(closeable != null){
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
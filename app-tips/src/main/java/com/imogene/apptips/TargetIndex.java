@@ -0,0 +1,171 @@
+package com.imogene.apptips;
+
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the target views of the tips by their ids. The ids of all
+ * the tips of the tour are registered in advance, so all of them are
+ * resolved within a single traversal of the view hierarchy instead of
+ * a separate {@code findViewById} call (each one is a full traversal)
+ * for each tip.
+ * <p>
+ * The resolved views are kept until the hierarchy is laid out again,
+ * which happens after any view is added or removed. Then each resolved
+ * view is checked to still have it's id and to be within the root, the
+ * views that are not are resolved again by the next traversal. The
+ * hierarchy changes are observed through the {@link ViewTreeObserver}
+ * of the root, so the hierarchy change listeners of the app's view
+ * groups are not replaced.
+ * <p>
+ * The ids that are not found by a traversal are not looked up again
+ * until the hierarchy is laid out or another id is registered, so the
+ * lookups of the targets that are removed cost nothing.
+ */
+final class TargetIndex implements ViewTreeObserver.OnGlobalLayoutListener {
+
+    private final SparseBooleanArray ids = new SparseBooleanArray();
+    private final SparseArray<View> views = new SparseArray<>();
+    private final List<View> stack = new ArrayList<>();
+
+    private View root;
+    private ViewTreeObserver observer;
+    private boolean dirty;
+    private boolean exhausted;
+
+    /**
+     * Registers the id of a target view, so that it is resolved along
+     * with the other ids. {@link View#NO_ID} is ignored.
+     */
+    void addId(int id){
+        if(id != View.NO_ID && !ids.get(id)){
+            ids.put(id, true);
+            exhausted = false;
+        }
+    }
+
+    /**
+     * Returns the view with the given id within the given root or
+     * null if there is no such view. If the view is not resolved yet
+     * all the registered ids that are not resolved are resolved by a
+     * single traversal of the hierarchy.
+     */
+    View get(View root, int id){
+        if(root != this.root){
+            release();
+            this.root = root;
+            observer = root.getViewTreeObserver();
+            observer.addOnGlobalLayoutListener(this);
+        } else if(dirty){
+            validate();
+        }
+        View view = views.get(id);
+        if(view == null){
+            addId(id);
+            resolve();
+            view = views.get(id);
+        }
+        return view;
+    }
+
+    /**
+     * Drops the resolved views and stops observing the hierarchy. The
+     * registered ids are kept, the views are resolved again by the next
+     * lookup.
+     */
+    void release(){
+        final View root = this.root;
+        if(root == null){
+            return;
+        }
+        ViewTreeObserver observer = this.observer;
+        if(!observer.isAlive()){
+            observer = root.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        this.observer = null;
+        this.root = null;
+        views.clear();
+        dirty = false;
+        exhausted = false;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        dirty = true;
+    }
+
+    /**
+     * Removes the views that are detached from the root or whose ids
+     * are changed since they were resolved.
+     */
+    private void validate(){
+        dirty = false;
+        exhausted = false;
+        final SparseArray<View> views = this.views;
+        for(int i = views.size() - 1; i >= 0; i--){
+            View view = views.valueAt(i);
+            if(view.getId() != views.keyAt(i) || !isWithinRoot(view)){
+                views.removeAt(i);
+            }
+        }
+    }
+
+    private boolean isWithinRoot(View view){
+        final View root = this.root;
+        if(view == root){
+            return true;
+        }
+        ViewParent parent = view.getParent();
+        while (parent instanceof View){
+            if(parent == root){
+                return true;
+            }
+            parent = parent.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Traverses the hierarchy depth-first in the same order as the
+     * {@code findViewById} does, so the first view with an id wins.
+     * The traversal stops as soon as all the ids are resolved. The
+     * tips themselves are not traversed.
+     */
+    private void resolve(){
+        final SparseBooleanArray ids = this.ids;
+        final SparseArray<View> views = this.views;
+        int missing = ids.size() - views.size();
+        if(missing <= 0 || exhausted){
+            return;
+        }
+        final List<View> stack = this.stack;
+        stack.add(root);
+        while (!stack.isEmpty()){
+            final View view = stack.remove(stack.size() - 1);
+            final int id = view.getId();
+            if(id != View.NO_ID && ids.get(id) && views.get(id) == null){
+                views.put(id, view);
+                if(--missing == 0){
+                    break;
+                }
+            }
+            if(view instanceof ViewGroup && !(view instanceof TipHostLayout)){
+                final ViewGroup group = (ViewGroup) view;
+                for(int i = group.getChildCount() - 1; i >= 0; i--){
+                    stack.add(group.getChildAt(i));
+                }
+            }
+        }
+        stack.clear();
+        // the rest of the ids are not within the hierarchy
+        exhausted = missing > 0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.imogene.apptips;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.DisplayMetrics;
+
+/**
+ * Lays out the texts of the tips in advance on a background thread.
+ * The built layouts are thrown away, the measured words are kept only
+ * in the text layout cache of the platform that is shared by all the
+ * threads. The cache is keyed by the paint, so the paint is set up from
+ * the same text appearance attributes the tip view applies: the text
+ * size, the typeface family and style, the letter spacing and the font
+ * feature settings. The font resources are not loaded, the texts that
+ * use them are laid out with the default family and are not warmed.
+ */
+final class TextLayoutWarmer {
+
+    // sorted by the attribute ids, as required by obtainStyledAttributes
+    private static final int[] TEXT_APPEARANCE_ATTRS = {
+            android.R.attr.typeface,
+            android.R.attr.textStyle,
+            android.R.attr.fontFamily,
+            android.R.attr.letterSpacing,
+            android.R.attr.fontFeatureSettings
+    };
+    private static final int INDEX_TYPEFACE = 0;
+    private static final int INDEX_TEXT_STYLE = 1;
+    private static final int INDEX_FONT_FAMILY = 2;
+    private static final int INDEX_LETTER_SPACING = 3;
+    private static final int INDEX_FONT_FEATURE_SETTINGS = 4;
+
+    // the values of the android:typeface attribute
+    private static final int TYPEFACE_SANS = 1;
+    private static final int TYPEFACE_SERIF = 2;
+    private static final int TYPEFACE_MONOSPACE = 3;
+
+    private final Context context;
+    private final TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    TextLayoutWarmer(Context context){
+        this.context = context;
+    }
+
+    /**
+     * Lays out the text of the given tip the same way as it
+     * is laid out by the tip view.
+     */
+    void warmUp(Tip tip){
+        final CharSequence text = tip.text;
+        if(text == null || text.length() == 0){
+            return;
+        }
+        final TextPaint paint = this.paint;
+        setUpPaint(paint, tip.textAppearanceRes);
+        paint.setTextSize(tip.textSize);
+        int width = tip.maxWidth;
+        if(width <= 0){
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            width = metrics.widthPixels;
+        }
+        width = Math.max(1, width - 2 * tip.padding);
+        new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1F, 0F, true);
+    }
+
+    /**
+     * Resets the paint and applies the given text appearance
+     * to it like the text view does.
+     */
+    private void setUpPaint(TextPaint paint, int textAppearanceRes){
+        int typefaceIndex = 0;
+        int style = Typeface.NORMAL;
+        String familyName = null;
+        float letterSpacing = 0F;
+        String fontFeatureSettings = null;
+        if(textAppearanceRes != 0){
+            Resources.Theme theme = context.getTheme();
+            TypedArray array = theme.obtainStyledAttributes(textAppearanceRes,
+                    TEXT_APPEARANCE_ATTRS);
+            try {
+                typefaceIndex = array.getInt(INDEX_TYPEFACE, 0);
+                style = array.getInt(INDEX_TEXT_STYLE, Typeface.NORMAL);
+                familyName = array.getString(INDEX_FONT_FAMILY);
+                letterSpacing = array.getFloat(INDEX_LETTER_SPACING, 0F);
+                fontFeatureSettings = array.getString(INDEX_FONT_FEATURE_SETTINGS);
+            } finally {
+                array.recycle();
+            }
+        }
+        setTypeface(paint, getTypeface(familyName, typefaceIndex, style), style);
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
+            paint.setLetterSpacing(letterSpacing);
+            paint.setFontFeatureSettings(fontFeatureSettings);
+        }
+    }
+
+    private static Typeface getTypeface(String familyName, int typefaceIndex, int style){
+        if(familyName != null){
+            Typeface typeface = Typeface.create(familyName, style);
+            if(typeface != null){
+                return typeface;
+            }
+        }
+        switch (typefaceIndex){
+            case TYPEFACE_SANS:
+                return Typeface.SANS_SERIF;
+            case TYPEFACE_SERIF:
+                return Typeface.SERIF;
+            case TYPEFACE_MONOSPACE:
+                return Typeface.MONOSPACE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Sets the typeface with the given style, the style that is not
+     * supported by the typeface is faked the same way as by the text view.
+     */
+    private static void setTypeface(TextPaint paint, Typeface typeface, int style){
+        if(style > 0){
+            typeface = typeface == null ? Typeface.defaultFromStyle(style) :
+                    Typeface.create(typeface, style);
+            paint.setTypeface(typeface);
+            final int typefaceStyle = typeface != null ? typeface.getStyle() : 0;
+            final int need = style & ~typefaceStyle;
+            paint.setFakeBoldText((need & Typeface.BOLD) != 0);
+            paint.setTextSkewX((need & Typeface.ITALIC) != 0 ? -0.25F : 0F);
+        } else {
+            paint.setFakeBoldText(false);
+            paint.setTextSkewX(0F);
+            paint.setTypeface(typeface);
+        }
+    }
+}
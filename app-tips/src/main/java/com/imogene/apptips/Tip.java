@@ -1,15 +1,15 @@
 package com.imogene.apptips;
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.graphics.Color;
+import android.graphics.Bitmap;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.support.annotation.IdRes;
 import android.support.annotation.StyleRes;
-import android.util.DisplayMetrics;
 import android.view.View;
 
+import java.lang.ref.WeakReference;
+
 /**
  * The object of this class holds all necessary information
  * about appearance and behavior of an tip. You create a tip
@@ -120,10 +120,24 @@ public final class Tip {
      */
     public static final int ALIGN_AUTO = 14;
 
-    private static final int DEFAULT_TEXT_SIZE_SP = 14;
+    /**
+     * Tip id. Indicates that the tip has no id, such tip is never
+     * considered as seen by the {@link SeenTipsStore}.
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * The maximum id of a tip. The ids are kept in a bitset by the
+     * {@link SeenTipsStore}, so they must be small dense numbers, such
+     * as the indices of the tips within the app, not resource ids or
+     * hashes.
+     */
+    public static final int MAX_ID = 0xFFFF;
 
     final int targetId;
-    final View targetView;
+    // the target view is not retained by the tip, so the tours
+    // that outlive their screen do not leak the view hierarchy
+    final WeakReference<View> targetView;
     final Point target;
     final CharSequence text;
 
@@ -144,11 +158,24 @@ public final class Tip {
     int verticalOffset;
     int horizontalOffset;
     boolean highlightingEnabled;
+    int id = NO_ID;
 
     Tip sibling;
     TipView tipView;
+    TipView preparedTipView;
+    boolean prefetched;
+    Bitmap prefetchedBitmap;
+    int prefetchedBitmapWidth;
+    int prefetchedBitmapHeight;
     View highlightingView;
-    View targetViewCache;
+    Bitmap highlightingBitmap;
+    int highlightingBitmapWidth;
+    int highlightingBitmapHeight;
+    boolean highlightingInvalidated;
+    Bitmap pendingHighlightingBitmap;
+    final Rect placedTargetRect = new Rect();
+    int solvedAlign = ALIGN_AUTO;
+    boolean targetHidden;
 
     Tip(Context context, @IdRes int targetId, CharSequence text){
         this.targetId = targetId;
@@ -160,7 +187,7 @@ public final class Tip {
 
     Tip(Context context, View targetView, CharSequence text){
         this.targetId = View.NO_ID;
-        this.targetView = targetView;
+        this.targetView = new WeakReference<>(targetView);
         this.target = null;
         this.text = text;
         initializeDefaults(context);
@@ -175,37 +202,20 @@ public final class Tip {
     }
 
     private void initializeDefaults(Context context){
-        // get the default values that appears in the style
-        TypedArray array = context.obtainStyledAttributes(
-                null, R.styleable.Tip, R.attr.tipStyle, R.style.TipStyle);
-        try {
-            color = array.getColor(R.styleable.Tip_tipColor, 0);
-            textAppearanceRes = array.getResourceId(R.styleable.Tip_tipTextAppearance, 0);
-
-            // get the default text color and size from the text appearance resource
-            // in order to have the actual value to return from the appropriate getters
-            final int[] attrs = new int[]{android.R.attr.textColor, android.R.attr.textSize};
-            TypedArray taArray = context.obtainStyledAttributes(textAppearanceRes, attrs);
-            try {
-                textColor = taArray.getColor(0, Color.WHITE);
-                Resources resources = context.getResources();
-                DisplayMetrics metrics = resources.getDisplayMetrics();
-                int defaultSize = metrics.densityDpi * DEFAULT_TEXT_SIZE_SP / 160;
-                textSize = taArray.getDimensionPixelSize(1, defaultSize);
-            } finally {
-                taArray.recycle();
-            }
-
-            gravity = array.getInteger(R.styleable.Tip_tipGravity, 0);
-            padding = array.getDimensionPixelSize(R.styleable.Tip_tipPadding, 0);
-            minHeight = array.getDimensionPixelSize(R.styleable.Tip_tipMinHeight, 0);
-            minWidth = array.getDimensionPixelSize(R.styleable.Tip_tipMinWidth, 0);
-            maxWidth = array.getDimensionPixelSize(R.styleable.Tip_tipMaxWidth, 0);
-            pointerAnimationEnabled = array.getBoolean(R.styleable.Tip_tipAnimatePointer, true);
-            highlightingEnabled = array.getBoolean(R.styleable.Tip_tipHighlighting, true);
-        } finally {
-            array.recycle();
-        }
+        // get the default values that appears in the style,
+        // the style is resolved once per theme and cached
+        TipStyle style = TipStyle.obtain(context);
+        color = style.color;
+        textAppearanceRes = style.textAppearanceRes;
+        textColor = style.textColor;
+        textSize = style.textSize;
+        gravity = style.gravity;
+        padding = style.padding;
+        minHeight = style.minHeight;
+        minWidth = style.minWidth;
+        maxWidth = style.maxWidth;
+        pointerAnimationEnabled = style.pointerAnimationEnabled;
+        highlightingEnabled = style.highlightingEnabled;
 
         // set the rest defaults
         align = ALIGN_AUTO;
@@ -548,4 +558,32 @@ public final class Tip {
     public boolean isHighlightingEnabled() {
         return highlightingEnabled;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the stable id of this tip. The id is used to remember that
+     * the tip has been seen by the user, see {@link SeenTipsStore}, so
+     * it must not change between the launches of the app. The ids are
+     * kept in a bitset, so they are limited by {@link #MAX_ID}.
+     * @param id the id of the tip from {@code 0} to {@link #MAX_ID} or
+     *           {@link #NO_ID}.
+     */
+    public void setId(int id){
+        if(id < NO_ID){
+            throw new IllegalArgumentException(
+                    "Tip id must not be negative.");
+        }
+        if(id > MAX_ID){
+            throw new IllegalArgumentException(
+                    "Tip id must not be greater than " + MAX_ID + ".");
+        }
+        this.id = id;
+    }
+
+    /**
+     * Returns the stable id of this tip.
+     * @return the id of the tip or {@link #NO_ID} if it is not set.
+     */
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,30 @@
+package com.imogene.apptips;
+
+import android.view.View;
+
+/**
+ * The animation of a tip view when it appears on the screen or
+ * disappears from it. The animations of all the tips are driven by
+ * a single frame callback, so an implementation must only apply the
+ * state of the animation at the given fraction to the view and must
+ * not start any animators itself.
+ * <p>
+ * The same animation can be used both to show and to hide the tips,
+ * the fraction goes from {@code 0} to {@code 1} when the tip appears
+ * and from {@code 1} to {@code 0} when it disappears.
+ * @see AppTips#setEnterAnimation(TipAnimation)
+ * @see AppTips#setExitAnimation(TipAnimation)
+ * @see TipAnimations
+ */
+public interface TipAnimation {
+
+    /**
+     * Applies the state of the animation at the given fraction to the
+     * tip view. The fraction is already interpolated.
+     * @param view the tip view.
+     * @param fraction the visible fraction of the tip, {@code 0} means
+     *                 that the tip is hidden, {@code 1} means that
+     *                 the tip is fully shown.
+     */
+    void apply(View view, float fraction);
+}
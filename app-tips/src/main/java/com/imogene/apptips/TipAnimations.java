@@ -0,0 +1,54 @@
+package com.imogene.apptips;
+
+import android.view.View;
+
+/**
+ * The predefined tip and pointer animations.
+ */
+public final class TipAnimations {
+
+    private static final float POP_MIN_SCALE = 0.8F;
+
+    /**
+     * Changes the alpha of the tip.
+     */
+    public static final TipAnimation FADE = new TipAnimation() {
+        @Override
+        public void apply(View view, float fraction) {
+            view.setAlpha(fraction);
+        }
+    };
+
+    /**
+     * Changes the alpha of the tip and scales it from the
+     * center.
+     */
+    public static final TipAnimation POP = new TipAnimation() {
+        @Override
+        public void apply(View view, float fraction) {
+            final float scale = POP_MIN_SCALE + (1F - POP_MIN_SCALE) * fraction;
+            view.setAlpha(fraction);
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+        }
+    };
+
+    /**
+     * Grows the pointer from the base and moves it from the center
+     * of the side to it's final position. This is the default pointer
+     * animation.
+     */
+    public static final PointerAnimation POINTER_GROW = new PointerAnimation() {
+        @Override
+        public float getProtrusion(float fraction) {
+            return fraction;
+        }
+
+        @Override
+        public float getPosition(float fraction, float finalPosition) {
+            return 0.5F + (finalPosition - 0.5F) * fraction;
+        }
+    };
+
+    private TipAnimations(){}
+}
@@ -0,0 +1,196 @@
+package com.imogene.apptips;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+
+/**
+ * Hosts the tip views (or the wrapper, or the overlay) right inside the
+ * decor view of the activity instead of separate windows. The children
+ * are added with the same {@code WindowManager.LayoutParams} that are
+ * used for the windows and this layout interprets them the way the
+ * WindowManager does, so the views can be moved between the hosts
+ * without any changes. Adding, updating and removing the children are
+ * in-process view operations unlike the WindowManager calls.
+ * <p>
+ * The following window params are respected: the position in screen
+ * coordinates, the size, {@code FLAG_DIM_BEHIND} with the dim amount
+ * and {@code FLAG_WATCH_OUTSIDE_TOUCH}. The touches that do not hit any
+ * child are not consumed and reach the activity, just as the touches
+ * outside of the not focusable windows do. So do the touches that the
+ * hit child does not take, like the touches of the overlay between
+ * it's bubbles.
+ */
+final class TipHostLayout extends ViewGroup {
+
+    private final int[] location = new int[2];
+    // the children notified of an outside touch, reused by the touches
+    private View[] outsideTouchChildren = new View[4];
+    private int originX;
+    private int originY;
+
+    TipHostLayout(Context context) {
+        super(context);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(LayoutParams p) {
+        return p instanceof WindowManager.LayoutParams;
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(LayoutParams p) {
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
+        lp.width = p.width;
+        lp.height = p.height;
+        return lp;
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
+        lp.width = WindowManager.LayoutParams.WRAP_CONTENT;
+        lp.height = WindowManager.LayoutParams.WRAP_CONTENT;
+        return lp;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int height = MeasureSpec.getSize(heightMeasureSpec);
+        setMeasuredDimension(width, height);
+        // this layout is at the origin of the decor view, so it's
+        // location is known before it is laid out
+        getLocationOnScreen(location);
+        originX = location[0];
+        originY = location[1];
+        final int childCount = getChildCount();
+        for(int i = 0; i < childCount; i++){
+            View child = getChildAt(i);
+            if(child.getVisibility() == GONE){
+                continue;
+            }
+            WindowManager.LayoutParams lp =
+                    (WindowManager.LayoutParams) child.getLayoutParams();
+            // the windows that match the parent occupy the whole
+            // screen, including the part not covered by this layout
+            int childWidthSpec = getChildMeasureSpec(lp.width, originX + width);
+            int childHeightSpec = getChildMeasureSpec(lp.height, originY + height);
+            child.measure(childWidthSpec, childHeightSpec);
+        }
+    }
+
+    private static int getChildMeasureSpec(int size, int available){
+        switch (size){
+            case WindowManager.LayoutParams.MATCH_PARENT:
+                return MeasureSpec.makeMeasureSpec(available, MeasureSpec.EXACTLY);
+            case WindowManager.LayoutParams.WRAP_CONTENT:
+                return MeasureSpec.makeMeasureSpec(available, MeasureSpec.AT_MOST);
+            default:
+                return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        // the positions of the children are in screen coordinates
+        final int childCount = getChildCount();
+        for(int i = 0; i < childCount; i++){
+            View child = getChildAt(i);
+            if(child.getVisibility() == GONE){
+                continue;
+            }
+            WindowManager.LayoutParams lp =
+                    (WindowManager.LayoutParams) child.getLayoutParams();
+            final int left = lp.x - originX;
+            final int top = lp.y - originY;
+            child.layout(left, top, left + child.getMeasuredWidth(),
+                    top + child.getMeasuredHeight());
+        }
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        WindowManager.LayoutParams lp =
+                (WindowManager.LayoutParams) child.getLayoutParams();
+        if((lp.flags & WindowManager.LayoutParams.FLAG_DIM_BEHIND) != 0 &&
+                child.getVisibility() == VISIBLE){
+            canvas.drawColor((int) (lp.dimAmount * 0xFF) << 24);
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if(event.getActionMasked() == MotionEvent.ACTION_DOWN){
+            View touchedChild = findChildUnder(event.getX(), event.getY());
+            dispatchOutsideTouch(event, touchedChild);
+            // the touched child might be removed by the outside touch
+            if(touchedChild == null || touchedChild.getParent() != this){
+                // let the touch reach the activity
+                return false;
+            }
+            // the touch that is not taken reaches the activity
+            return super.dispatchTouchEvent(event);
+        }
+        super.dispatchTouchEvent(event);
+        // the touch within a window is consumed by it
+        return true;
+    }
+
+    private View findChildUnder(float x, float y){
+        for(int i = getChildCount() - 1; i >= 0; i--){
+            View child = getChildAt(i);
+            if(child.getVisibility() == VISIBLE &&
+                    x >= child.getLeft() && x < child.getRight() &&
+                    y >= child.getTop() && y < child.getBottom()){
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Notifies the children that watch the outside touches and
+     * are not touched with the {@code ACTION_OUTSIDE} event.
+     */
+    private void dispatchOutsideTouch(MotionEvent event, View touchedChild){
+        final int childCount = getChildCount();
+        if(childCount == 0){
+            return;
+        }
+        // the children might be removed as a result of the outside touch
+        View[] children = outsideTouchChildren;
+        if(children.length < childCount){
+            children = new View[Math.max(childCount, children.length * 2)];
+            outsideTouchChildren = children;
+        }
+        for(int i = 0; i < childCount; i++){
+            children[i] = getChildAt(i);
+        }
+        MotionEvent outsideEvent = null;
+        for(int i = 0; i < childCount; i++){
+            final View child = children[i];
+            children[i] = null;
+            if(child == touchedChild || child.getParent() != this){
+                continue;
+            }
+            WindowManager.LayoutParams lp =
+                    (WindowManager.LayoutParams) child.getLayoutParams();
+            if((lp.flags & WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH) != 0){
+                if(outsideEvent == null){
+                    outsideEvent = MotionEvent.obtain(event);
+                    outsideEvent.setAction(MotionEvent.ACTION_OUTSIDE);
+                    outsideEvent.setLocation(0, 0);
+                }
+                child.dispatchTouchEvent(outsideEvent);
+            }
+        }
+        if(outsideEvent != null){
+            outsideEvent.recycle();
+        }
+    }
+}
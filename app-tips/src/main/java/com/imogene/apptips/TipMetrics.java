@@ -0,0 +1,154 @@
+package com.imogene.apptips;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the timings reported by {@link AppTips} into a latency
+ * histogram per phase. An object of this class can be shared by
+ * several {@code AppTips} objects and read from any thread, so it
+ * can be kept for the whole process and dumped or pulled when needed.
+ * <p>
+ * Example:
+ * <pre><code>
+ * TipMetrics metrics = new TipMetrics();
+ * appTips.setMetricsListener(metrics);
+ * ...
+ * Log.d(TAG, metrics.toString());
+ * </code></pre>
+ */
+public final class TipMetrics implements AppTips.MetricsListener {
+
+    /**
+     * Phase. From the start of showing a portion of tips to the first
+     * frame of the tips drawn at their positions.
+     */
+    public static final int PHASE_SHOW = 0;
+
+    /**
+     * Phase. Waiting for the layout of the targets that are not laid
+     * out when a portion of tips is shown.
+     */
+    public static final int PHASE_LAYOUT_WAIT = 1;
+
+    /**
+     * Phase. Placing all the tips of a portion.
+     */
+    public static final int PHASE_PLACEMENT = 2;
+
+    /**
+     * Phase. Capturing a target view into a bitmap for highlighting.
+     */
+    public static final int PHASE_HIGHLIGHTING = 3;
+
+    /**
+     * Phase. Removing a portion of tips and showing the next one, not
+     * including the time until the next portion is drawn.
+     */
+    public static final int PHASE_ADVANCE = 4;
+
+    /**
+     * Phase. Closing the tips.
+     */
+    public static final int PHASE_CLOSE = 5;
+
+    /**
+     * Phase. The main thread part of preparing the tips in advance
+     * (see {@link AppTips#prepare(AppTips.OnPreparedListener)}), creating
+     * and measuring the tip views of the portion that is going to be
+     * shown. The {@link #PHASE_SHOW} of the prepared portions can be
+     * compared to the one of the portions that are not prepared.
+     */
+    public static final int PHASE_PREPARE = 6;
+
+    private static final String[] PHASE_NAMES = {
+            "show", "layout wait", "placement", "highlighting", "advance", "close", "prepare"
+    };
+
+    private final LatencyHistogram[] histograms;
+    private final AtomicLong portionCount = new AtomicLong();
+    private final AtomicLong layoutWaitCount = new AtomicLong();
+    private final AtomicLong viewManagerCallCount = new AtomicLong();
+
+    public TipMetrics(){
+        histograms = new LatencyHistogram[PHASE_NAMES.length];
+        for(int i = 0; i < histograms.length; i++){
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onPhaseFinished(int phase, long durationNanos) {
+        getHistogram(phase).record(durationNanos);
+    }
+
+    @Override
+    public void onPortionShown(int portionIndex, int layoutWaits, int viewManagerCalls) {
+        portionCount.incrementAndGet();
+        layoutWaitCount.addAndGet(layoutWaits);
+        viewManagerCallCount.addAndGet(viewManagerCalls);
+    }
+
+    /**
+     * Returns the histogram of the durations of the given phase.
+     * @param phase one of the {@code PHASE_*} constants.
+     * @return the histogram of the phase.
+     */
+    public LatencyHistogram getHistogram(int phase){
+        if(phase < 0 || phase >= histograms.length){
+            throw new IllegalArgumentException(
+                    "Unsupported phase: " + phase + ".");
+        }
+        return histograms[phase];
+    }
+
+    /**
+     * Returns the number of the shown portions of tips.
+     * @return number of portions.
+     */
+    public long getPortionCount() {
+        return portionCount.get();
+    }
+
+    /**
+     * Returns the total number of the layout waits made to show
+     * the portions of tips.
+     * @return number of layout waits.
+     */
+    public long getLayoutWaitCount() {
+        return layoutWaitCount.get();
+    }
+
+    /**
+     * Returns the total number of the calls to the WindowManager (or
+     * to the host layout, see {@link AppTips#HOST_MODE_DECOR_VIEW})
+     * made to show the portions of tips.
+     * @return number of calls.
+     */
+    public long getViewManagerCallCount() {
+        return viewManagerCallCount.get();
+    }
+
+    /**
+     * Clears all the collected metrics.
+     */
+    public void reset(){
+        for(LatencyHistogram histogram : histograms){
+            histogram.reset();
+        }
+        portionCount.set(0);
+        layoutWaitCount.set(0);
+        viewManagerCallCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("portions=").append(getPortionCount())
+                .append(", layout waits=").append(getLayoutWaitCount())
+                .append(", view manager calls=").append(getViewManagerCallCount());
+        for(int i = 0; i < histograms.length; i++){
+            builder.append('\n').append(PHASE_NAMES[i]).append(": ").append(histograms[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.imogene.apptips;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable snapshot of the default tip properties resolved from the
+ * {@code tipStyle} of a theme. The snapshots are cached per theme and
+ * style, so the styled attributes are resolved once no matter how many
+ * tips are created.
+ * <p>
+ * Note that the changes made to a theme after the style is resolved
+ * for it (for example with {@code Theme.applyStyle}) are not reflected
+ * by the cached snapshot.
+ */
+final class TipStyle {
+
+    private static final int DEFAULT_TEXT_SIZE_SP = 14;
+
+    private static final Map<Resources.Theme, SparseArray<TipStyle>> cache =
+            new WeakHashMap<>();
+
+    final int color;
+    final int textAppearanceRes;
+    final int textColor;
+    final int textSize;
+    final int gravity;
+    final int padding;
+    final int minHeight;
+    final int minWidth;
+    final int maxWidth;
+    final boolean pointerAnimationEnabled;
+    final boolean highlightingEnabled;
+
+    private TipStyle(Context context){
+        // get the default values that appears in the style
+        Resources.Theme theme = context.getTheme();
+        TypedArray array = theme.obtainStyledAttributes(null,
+                R.styleable.Tip, R.attr.tipStyle, R.style.TipStyle);
+        try {
+            color = array.getColor(R.styleable.Tip_tipColor, 0);
+            textAppearanceRes = array.getResourceId(R.styleable.Tip_tipTextAppearance, 0);
+
+            // get the default text color and size from the text appearance resource
+            // in order to have the actual value to return from the appropriate getters
+            final int[] attrs = new int[]{android.R.attr.textColor, android.R.attr.textSize};
+            TypedArray taArray = theme.obtainStyledAttributes(textAppearanceRes, attrs);
+            try {
+                textColor = taArray.getColor(0, Color.WHITE);
+                Resources resources = context.getResources();
+                DisplayMetrics metrics = resources.getDisplayMetrics();
+                int defaultSize = metrics.densityDpi * DEFAULT_TEXT_SIZE_SP / 160;
+                textSize = taArray.getDimensionPixelSize(1, defaultSize);
+            } finally {
+                taArray.recycle();
+            }
+
+            gravity = array.getInteger(R.styleable.Tip_tipGravity, 0);
+            padding = array.getDimensionPixelSize(R.styleable.Tip_tipPadding, 0);
+            minHeight = array.getDimensionPixelSize(R.styleable.Tip_tipMinHeight, 0);
+            minWidth = array.getDimensionPixelSize(R.styleable.Tip_tipMinWidth, 0);
+            maxWidth = array.getDimensionPixelSize(R.styleable.Tip_tipMaxWidth, 0);
+            pointerAnimationEnabled = array.getBoolean(R.styleable.Tip_tipAnimatePointer, true);
+            highlightingEnabled = array.getBoolean(R.styleable.Tip_tipHighlighting, true);
+        } finally {
+            array.recycle();
+        }
+    }
+
+    /**
+     * Returns the style snapshot for the theme of the given context,
+     * resolving it if it is not cached yet. This method is thread safe.
+     */
+    static TipStyle obtain(Context context){
+        Resources.Theme theme = context.getTheme();
+        // the tipStyle attribute of the theme (if set) is the
+        // only thing that can vary for the same theme
+        TypedValue value = new TypedValue();
+        final int styleRes;
+        if(theme.resolveAttribute(R.attr.tipStyle, value, true) && value.resourceId != 0){
+            styleRes = value.resourceId;
+        } else {
+            styleRes = R.style.TipStyle;
+        }
+        synchronized (cache){
+            SparseArray<TipStyle> styles = cache.get(theme);
+            TipStyle style = styles != null ? styles.get(styleRes) : null;
+            if(style != null){
+                return style;
+            }
+        }
+        // resolve outside of the lock, the same style
+        // might be resolved twice, but it is harmless
+        TipStyle style = new TipStyle(context);
+        synchronized (cache){
+            SparseArray<TipStyle> styles = cache.get(theme);
+            if(styles == null){
+                styles = new SparseArray<>(1);
+                cache.put(theme, styles);
+            }
+            styles.put(styleRes, style);
+        }
+        return style;
+    }
+}
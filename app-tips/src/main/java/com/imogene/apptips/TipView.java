@@ -5,21 +5,20 @@ import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PointF;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.RoundRectShape;
-import android.graphics.drawable.shapes.Shape;
+import android.graphics.RectF;
 import android.support.v7.widget.AppCompatTextView;
 
+import com.imogene.apptips.placement.PointerGeometry;
+
 /**
  * Created by Admin on 25.04.2016.
  */
 class TipView extends AppCompatTextView {
 
-    static final int MODE_BELOW_TARGET = 0;
-    static final int MODE_ABOVE_TARGET = 1;
-    static final int MODE_TO_LEFT_TARGET = 2;
-    static final int MODE_TO_RIGHT_TARGET = 3;
+    static final int MODE_BELOW_TARGET = PointerGeometry.MODE_BELOW_TARGET;
+    static final int MODE_ABOVE_TARGET = PointerGeometry.MODE_ABOVE_TARGET;
+    static final int MODE_TO_LEFT_TARGET = PointerGeometry.MODE_TO_LEFT_TARGET;
+    static final int MODE_TO_RIGHT_TARGET = PointerGeometry.MODE_TO_RIGHT_TARGET;
 
     private static final float MIN_POINTER_POSITION = 0.1F;
     private static final float MAX_POINTER_POSITION = 0.9F;
@@ -36,12 +35,16 @@ class TipView extends AppCompatTextView {
     private float pointerProtrusion = 1F;
 
     private final Paint paint;
-    private final Path path;
-    private final ShapeDrawable drawable;
+    private final float cornerRadius;
+
+    // the outline of the body and the pointer drawn at once, it is
+    // rebuilt only when the size, the mode or the pointer are changed
+    private final Path outline;
+    private final RectF bodyRect;
+    private boolean outlineDirty = true;
 
-    private final PointF A;
-    private final PointF B;
-    private final PointF C;
+    // apex, first and second base vertices of the pointer as x, y pairs
+    private final float[] points;
 
     TipView(Context context) {
         super(context);
@@ -52,24 +55,15 @@ class TipView extends AppCompatTextView {
         paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setStyle(Paint.Style.FILL);
 
-        path = new Path();
-        path.setFillType(Path.FillType.EVEN_ODD);
-        A = new PointF();
-        B = new PointF();
-        C = new PointF();
-
-        float radius = resources.getDimensionPixelSize(R.dimen.tip_view_corner_radius);
-        float[] radii = new float[]{
-                radius, radius, radius, radius,
-                radius, radius, radius, radius
-        };
-        Shape shape = new RoundRectShape(radii, null, null);
-        drawable = new ShapeDrawable(shape);
+        outline = new Path();
+        bodyRect = new RectF();
+        points = new float[PointerGeometry.POINTS_SIZE];
+
+        cornerRadius = resources.getDimensionPixelSize(R.dimen.tip_view_corner_radius);
     }
 
     void setColor(int color) {
         paint.setColor(color);
-        drawable.getPaint().setColor(color);
         invalidate();
     }
 
@@ -86,22 +80,26 @@ class TipView extends AppCompatTextView {
 
             int width = getMeasuredWidth();
             int height = getMeasuredHeight();
-            updateShapeBounds(width, height);
+            updateBodyRect(width, height);
             updatePointerPathPoints(width, height);
+            outlineDirty = true;
+            invalidate();
         }
     }
 
+    int getMode() {
+        return mode;
+    }
+
     void setPointerPosition(float position){
         pointerPosition = clampPointerPosition(position);
         pointerOffset = 0;
-        updatePointerPathPoints();
-        invalidate();
+        updatePointer();
     }
 
     void setPointerOffset(int offset){
         pointerOffset = offset;
-        updatePointerPathPoints();
-        invalidate();
+        updatePointer();
     }
 
     private float clampPointerPosition(float position){
@@ -112,63 +110,51 @@ class TipView extends AppCompatTextView {
         return Math.max(min, Math.min(max, value));
     }
 
-    private void updatePointerPathPoints(){
-        int width = getWidth();
-        int height = getHeight();
-        updatePointerPathPoints(width, height);
+    /**
+     * Recomputes the pointer after it's parameters are changed and
+     * invalidates only the area that the old and the new pointer
+     * occupy, since the rest of the view remains the same.
+     */
+    private void updatePointer(){
+        final float[] points = this.points;
+        float left = min(points[0], points[2], points[4]);
+        float top = min(points[1], points[3], points[5]);
+        float right = max(points[0], points[2], points[4]);
+        float bottom = max(points[1], points[3], points[5]);
+        updatePointerPathPoints(getWidth(), getHeight());
+        left = Math.min(left, min(points[0], points[2], points[4]));
+        top = Math.min(top, min(points[1], points[3], points[5]));
+        right = Math.max(right, max(points[0], points[2], points[4]));
+        bottom = Math.max(bottom, max(points[1], points[3], points[5]));
+        outlineDirty = true;
+        // one more pixel around for the anti-aliased edges
+        invalidate((int) left - 1, (int) top - 1,
+                (int) Math.ceil(right) + 1, (int) Math.ceil(bottom) + 1);
     }
 
-    private void updatePointerPathPoints(int viewWidth, int viewHeight){
-        final float dynamicSize = pointerSize * pointerProtrusion;
-        final float protrusion = pointerSize - dynamicSize;
-        final float wh, hh, bh;
-
-        if(pointerOffset != 0){
-            wh = viewWidth / 2 + pointerOffset;
-            hh = viewHeight / 2 + pointerOffset;
-        } else {
-            wh = viewWidth * pointerPosition;
-            hh = viewHeight * pointerPosition;
-        }
-        bh = dynamicSize / (float) Math.sqrt(3);
+    private static float min(float a, float b, float c){
+        return Math.min(a, Math.min(b, c));
+    }
 
-        final float bx = wh - bh;
-        final float cx = wh + bh;
-        final float by = hh - bh;
-        final float cy = hh + bh;
+    private static float max(float a, float b, float c){
+        return Math.max(a, Math.max(b, c));
+    }
 
-        switch (mode){
-            case MODE_BELOW_TARGET:
-                A.set(wh, protrusion);
-                B.set(bx, pointerSize);
-                C.set(cx, pointerSize);
-                break;
-            case MODE_ABOVE_TARGET:
-                A.set(wh, viewHeight - protrusion);
-                B.set(bx, viewHeight - pointerSize);
-                C.set(cx, viewHeight - pointerSize);
-                break;
-            case MODE_TO_LEFT_TARGET:
-                A.set(viewWidth - protrusion, hh);
-                B.set(viewWidth - pointerSize, by);
-                C.set(viewWidth - pointerSize, cy);
-                break;
-            case MODE_TO_RIGHT_TARGET:
-                A.set(protrusion, hh);
-                B.set(pointerSize, by);
-                C.set(pointerSize, cy);
-                break;
-        }
+    private void updatePointerPathPoints(int viewWidth, int viewHeight){
+        PointerGeometry.computePoints(mode, viewWidth, viewHeight, pointerSize,
+                pointerPosition, pointerOffset, pointerProtrusion, points);
     }
 
     float getPointerPosition(){
         if(pointerOffset != 0){
             final float position;
+            // the measured size is used because the pointer position
+            // might be requested before the view is laid out
             if(isVerticalMode()){
-                final float width = getWidth();
+                final float width = getMeasuredWidth();
                 position = (width / 2 + pointerOffset) / width;
             } else {
-                final float height = getHeight();
+                final float height = getMeasuredHeight();
                 position = (height / 2 + pointerOffset) / height;
             }
             return clampPointerPosition(position);
@@ -178,8 +164,18 @@ class TipView extends AppCompatTextView {
 
     void setPointerProtrusion(float protrusion){
         pointerProtrusion = protrusion;
-        updatePointerPathPoints();
-        invalidate();
+        updatePointer();
+    }
+
+    /**
+     * Sets the position and the protrusion of the pointer at once,
+     * so that the pointer is updated once per animation frame.
+     */
+    void setPointerState(float position, float protrusion){
+        pointerPosition = clampPointerPosition(position);
+        pointerOffset = 0;
+        pointerProtrusion = protrusion;
+        updatePointer();
     }
 
     private boolean isVerticalMode(){
@@ -248,10 +244,11 @@ class TipView extends AppCompatTextView {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         updatePointerPathPoints(w, h);
-        updateShapeBounds(w, h);
+        updateBodyRect(w, h);
+        outlineDirty = true;
     }
 
-    private void updateShapeBounds(int viewWidth, int viewHeight){
+    private void updateBodyRect(int viewWidth, int viewHeight){
         final int left, top, right, bottom;
         switch (mode){
             case MODE_BELOW_TARGET:
@@ -271,7 +268,7 @@ class TipView extends AppCompatTextView {
                 right = viewWidth; bottom = viewHeight;
                 break;
         }
-        drawable.setBounds(left, top, right, bottom);
+        bodyRect.set(left, top, right, bottom);
     }
 
     @Override
@@ -292,13 +289,24 @@ class TipView extends AppCompatTextView {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        path.rewind();
-        path.moveTo(B.x, B.y);
-        path.lineTo(A.x, A.y);
-        path.lineTo(C.x, C.y);
-        path.close();
-        canvas.drawPath(path, paint);
-        drawable.draw(canvas);
+        if(outlineDirty){
+            outlineDirty = false;
+            rebuildOutline();
+        }
+        canvas.drawPath(outline, paint);
         super.onDraw(canvas);
     }
+
+    private void rebuildOutline(){
+        final Path outline = this.outline;
+        final float[] points = this.points;
+        outline.rewind();
+        outline.addRoundRect(bodyRect, cornerRadius, cornerRadius, Path.Direction.CW);
+        // the pointer lies outside of the body, so the
+        // contours do not overlap and the fill is a union
+        outline.moveTo(points[2], points[3]);
+        outline.lineTo(points[0], points[1]);
+        outline.lineTo(points[4], points[5]);
+        outline.close();
+    }
 }
\ No newline at end of file
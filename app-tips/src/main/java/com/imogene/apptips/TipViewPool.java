@@ -0,0 +1,173 @@
+package com.imogene.apptips;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pool of tip views that are reused across the portions of tips
+ * and across the {@link AppTips} objects of the same activity. The
+ * tip views are themed by the activity they are created for, so the
+ * pooled views are kept per activity and are dropped when the activity
+ * is destroyed.
+ * <p>
+ * The methods of this class must be called on the main thread.
+ */
+public final class TipViewPool {
+
+    private static final int DEFAULT_MAX_SIZE = 16;
+
+    private static TipViewPool instance;
+
+    private final Map<Activity, ArrayDeque<TipView>> pools = new HashMap<>();
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int hitCount;
+    private int missCount;
+    private boolean callbacksRegistered;
+
+    private TipViewPool(){}
+
+    /**
+     * Returns the pool shared by all {@link AppTips} objects.
+     * @return the shared pool.
+     */
+    public static TipViewPool getInstance(){
+        if(instance == null){
+            instance = new TipViewPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of the tip views kept in this pool for
+     * a single activity. The default value is {@value #DEFAULT_MAX_SIZE}.
+     * @param maxSize maximum number of the pooled tip views per activity,
+     *                {@code 0} disables pooling.
+     */
+    public void setMaxSize(int maxSize){
+        if(maxSize < 0){
+            throw new IllegalArgumentException(
+                    "Max size must not be negative.");
+        }
+        this.maxSize = maxSize;
+        for(ArrayDeque<TipView> pool : pools.values()){
+            while (pool.size() > maxSize){
+                pool.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of the tip views kept in this pool for
+     * a single activity.
+     * @return maximum size of the pool.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of times a pooled tip view was reused.
+     * @return number of hits.
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of times a new tip view had to be created.
+     * @return number of misses.
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Drops all the pooled tip views.
+     */
+    public void clear(){
+        pools.clear();
+    }
+
+    /**
+     * Returns a pooled tip view for the given activity or creates
+     * a new one. The returned view must be reset by the caller.
+     */
+    TipView acquire(Activity activity){
+        ArrayDeque<TipView> pool = pools.get(activity);
+        TipView tipView = pool != null ? pool.pollLast() : null;
+        if(tipView != null){
+            hitCount++;
+            return tipView;
+        }
+        missCount++;
+        return new TipView(activity);
+    }
+
+    /**
+     * Gives the tip view that is removed from the screen back to this
+     * pool. The view must not be used by the caller after this call.
+     */
+    void release(Activity activity, TipView tipView){
+        ViewParent parent = tipView.getParent();
+        if(parent instanceof ViewGroup){
+            ((ViewGroup) parent).removeView(tipView);
+        }
+        tipView.setTag(R.id.tag_id_tip, null);
+        tipView.setOnTouchListener(null);
+        if(maxSize == 0 || activity.isFinishing()){
+            return;
+        }
+        ArrayDeque<TipView> pool = pools.get(activity);
+        if(pool == null){
+            registerCallbacks(activity);
+            pool = new ArrayDeque<>();
+            pools.put(activity, pool);
+        }
+        if(pool.size() < maxSize){
+            pool.addLast(tipView);
+        }
+    }
+
+    private void registerCallbacks(Activity activity){
+        if(!callbacksRegistered){
+            Application application = activity.getApplication();
+            application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+            callbacksRegistered = true;
+        }
+    }
+
+    private final Application.ActivityLifecycleCallbacks lifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // the pooled views reference the activity
+            pools.remove(activity);
+        }
+    };
+}
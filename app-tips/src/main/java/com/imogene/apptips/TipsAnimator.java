@@ -0,0 +1,290 @@
+package com.imogene.apptips;
+
+import android.animation.TimeInterpolator;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewManager;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives the enter, exit and pointer animations of all the tip views
+ * from a single frame callback, so the number of the animated tips
+ * does not multiply the number of the animators ticking on the main
+ * thread. The animations are applied directly, without reflection.
+ * <p>
+ * The tip views whose content does not change during the animation
+ * (i.e. the pointer is not animated) are drawn into hardware layers
+ * for the duration of the animation, so that changing their alpha or
+ * scale does not require to redraw them.
+ */
+final class TipsAnimator implements Choreographer.FrameCallback {
+
+    static final long POINTER_ANIMATION_DURATION = 300;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final Callback callback;
+    private final Choreographer choreographer;
+    private final TimeInterpolator enterInterpolator = new DecelerateInterpolator();
+    private final TimeInterpolator exitInterpolator = new AccelerateInterpolator();
+    private final TimeInterpolator pointerInterpolator = new AccelerateDecelerateInterpolator();
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Entry> finishedEntries = new ArrayList<>();
+    private boolean scheduled;
+
+    TipsAnimator(Callback callback){
+        this.callback = callback;
+        choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Starts the animations of the tip view that appears on the screen.
+     * Either of the animations might be null, in this case it is not
+     * played. The initial state is applied at once.
+     */
+    void animateEnter(TipView view, TipAnimation animation, long duration,
+                      PointerAnimation pointerAnimation, float finalPointerPosition){
+        if(animation == null && pointerAnimation == null){
+            return;
+        }
+        Entry entry = new Entry(view);
+        entry.animation = animation;
+        entry.duration = duration;
+        entry.pointerAnimation = pointerAnimation;
+        entry.finalPointerPosition = finalPointerPosition;
+        // the content of the view changes with the pointer
+        start(entry, pointerAnimation == null);
+    }
+
+    /**
+     * Starts the exit animation of the tip view, the view is removed
+     * from the given container when the animation ends.
+     */
+    void animateExit(TipView view, TipAnimation animation, long duration,
+                     ViewManager container){
+        Entry entry = new Entry(view);
+        entry.animation = animation;
+        entry.duration = duration;
+        entry.exit = true;
+        entry.container = container;
+        start(entry, true);
+    }
+
+    private void start(Entry entry, boolean layer){
+        final View view = entry.view;
+        if(layer && view.getLayerType() == View.LAYER_TYPE_NONE){
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            entry.layer = true;
+        }
+        entries.add(entry);
+        applyFraction(entry, 0F);
+        if(!scheduled){
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Ends the animations of the given view at once, the final state
+     * of the animations is applied.
+     */
+    void finish(TipView view){
+        final List<Entry> entries = this.entries;
+        final List<Entry> finishedEntries = new ArrayList<>();
+        for(int i = entries.size() - 1; i >= 0; i--){
+            Entry entry = entries.get(i);
+            if(entry.view == view){
+                entries.remove(i);
+                applyFraction(entry, 1F);
+                finishedEntries.add(entry);
+            }
+        }
+        onEntriesFinished(finishedEntries);
+    }
+
+    /**
+     * Ends the exit animations of the views that are removed from the
+     * given container at once.
+     */
+    void finishExits(ViewManager container){
+        final List<Entry> entries = this.entries;
+        final List<Entry> finishedEntries = new ArrayList<>();
+        for(int i = entries.size() - 1; i >= 0; i--){
+            Entry entry = entries.get(i);
+            if(entry.exit && entry.container == container){
+                entries.remove(i);
+                finishedEntries.add(entry);
+            }
+        }
+        onEntriesFinished(finishedEntries);
+    }
+
+    /**
+     * Ends all the animations at once, the final state of the
+     * animations is applied and the views whose exit animations
+     * are finished this way are removed from their containers.
+     */
+    void finishAll(){
+        final List<Entry> finishedEntries = new ArrayList<>(entries);
+        entries.clear();
+        for(int i = 0, size = finishedEntries.size(); i < size; i++){
+            applyFraction(finishedEntries.get(i), 1F);
+        }
+        if(scheduled){
+            scheduled = false;
+            choreographer.removeFrameCallback(this);
+        }
+        onEntriesFinished(finishedEntries);
+    }
+
+    /**
+     * Drops the animations of the given view without applying them.
+     */
+    void cancel(TipView view){
+        final List<Entry> entries = this.entries;
+        for(int i = entries.size() - 1; i >= 0; i--){
+            Entry entry = entries.get(i);
+            if(entry.view == view){
+                entries.remove(i);
+                restoreLayer(entry);
+            }
+        }
+    }
+
+    /**
+     * Adds the views that are being animated to the given list.
+     */
+    void collectAnimatedViews(List<TipView> views){
+        final List<Entry> entries = this.entries;
+        for(int i = 0, size = entries.size(); i < size; i++){
+            views.add(entries.get(i).view);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        final List<Entry> entries = this.entries;
+        final List<Entry> finishedEntries = this.finishedEntries;
+        for(int i = entries.size() - 1; i >= 0; i--){
+            Entry entry = entries.get(i);
+            if(entry.startTime < 0){
+                // the animation starts with the first frame
+                entry.startTime = frameTimeNanos;
+            }
+            final long playTime = (frameTimeNanos - entry.startTime) / NANOS_PER_MILLI;
+            final float fraction = Math.min(1F, (float) playTime / entry.getTotalDuration());
+            apply(entry, playTime);
+            if(fraction >= 1F){
+                entries.remove(i);
+                finishedEntries.add(entry);
+            }
+        }
+        onEntriesFinished(finishedEntries);
+        finishedEntries.clear();
+        if(!entries.isEmpty() && !scheduled){
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Applies the state of the animations of the entry at the given
+     * play time in milliseconds.
+     */
+    private void apply(Entry entry, long playTime){
+        final TipAnimation animation = entry.animation;
+        if(animation != null){
+            float fraction = entry.duration > 0 ?
+                    Math.min(1F, (float) playTime / entry.duration) : 1F;
+            if(entry.exit){
+                fraction = 1F - exitInterpolator.getInterpolation(fraction);
+            } else {
+                fraction = enterInterpolator.getInterpolation(fraction);
+            }
+            animation.apply(entry.view, fraction);
+        }
+        final PointerAnimation pointerAnimation = entry.pointerAnimation;
+        if(pointerAnimation != null){
+            float fraction = Math.min(1F, (float) playTime / POINTER_ANIMATION_DURATION);
+            fraction = pointerInterpolator.getInterpolation(fraction);
+            entry.view.setPointerState(
+                    pointerAnimation.getPosition(fraction, entry.finalPointerPosition),
+                    pointerAnimation.getProtrusion(fraction));
+        }
+    }
+
+    private void applyFraction(Entry entry, float fraction){
+        apply(entry, (long) (fraction * entry.getTotalDuration()));
+    }
+
+    /**
+     * The callback might change the entries, so it is called
+     * after the entries are iterated.
+     */
+    private void onEntriesFinished(List<Entry> finishedEntries){
+        for(int i = 0, size = finishedEntries.size(); i < size; i++){
+            onEntryFinished(finishedEntries.get(i));
+        }
+    }
+
+    private void onEntryFinished(Entry entry){
+        restoreLayer(entry);
+        if(entry.exit){
+            callback.onExitFinished(entry.view, entry.container);
+        }
+    }
+
+    private void restoreLayer(Entry entry){
+        if(entry.layer){
+            entry.layer = false;
+            entry.view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    /**
+     * The animations of a single tip view.
+     */
+    private static final class Entry {
+
+        final TipView view;
+        TipAnimation animation;
+        long duration;
+        PointerAnimation pointerAnimation;
+        float finalPointerPosition;
+        boolean exit;
+        ViewManager container;
+        boolean layer;
+        long startTime = -1;
+
+        Entry(TipView view){
+            this.view = view;
+        }
+
+        long getTotalDuration(){
+            long duration = animation != null ? this.duration : 0;
+            if(pointerAnimation != null){
+                duration = Math.max(duration, POINTER_ANIMATION_DURATION);
+            }
+            return Math.max(duration, 1);
+        }
+    }
+
+    /**
+     * Receives the views whose exit animations are finished.
+     */
+    interface Callback {
+
+        /**
+         * Called when the exit animation of the tip view is finished,
+         * the view must be removed from the given container.
+         */
+        void onExitFinished(TipView view, ViewManager container);
+    }
+}
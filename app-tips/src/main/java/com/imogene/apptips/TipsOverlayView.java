@@ -0,0 +1,471 @@
+package com.imogene.apptips;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.imogene.apptips.placement.Placement;
+import com.imogene.apptips.placement.PlacementEngine;
+import com.imogene.apptips.placement.PlacementInput;
+import com.imogene.apptips.placement.PointerGeometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out, draws and handles touches of all the tips of a portion
+ * within a single view. The bubbles are not views, so showing any
+ * number of tips costs one window, one layout pass and one draw.
+ * <p>
+ * The positions of the bubbles are in screen coordinates, the
+ * {@link #setOrigin(int, int)} method tells the view where it is
+ * located on the screen.
+ */
+final class TipsOverlayView extends View {
+
+    private static final float MIN_POINTER_POSITION = 0.1F;
+    private static final float MAX_POINTER_POSITION = 0.9F;
+
+    private final Callback callback;
+    private final int pointerSize;
+    private final float cornerRadius;
+    private final int maxTextWidth;
+
+    private final Paint bubblePaint;
+    private final Paint cutoutPaint;
+    private final RectF bodyRect = new RectF();
+    private final List<Bubble> bubbles = new ArrayList<>();
+
+    private boolean highlighting;
+    private int scrimColor;
+    private int originX;
+    private int originY;
+    private Bubble pressedBubble;
+    private boolean passingTouch;
+
+    TipsOverlayView(Context context, Callback callback) {
+        super(context);
+        this.callback = callback;
+        Resources resources = getResources();
+        pointerSize = resources.getDimensionPixelSize(R.dimen.tip_view_pointer_size);
+        cornerRadius = resources.getDimensionPixelSize(R.dimen.tip_view_corner_radius);
+        maxTextWidth = resources.getDisplayMetrics().widthPixels;
+
+        bubblePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bubblePaint.setStyle(Paint.Style.FILL);
+
+        cutoutPaint = new Paint();
+        cutoutPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    /**
+     * Sets the portion of tips (as specified by the given root tip)
+     * to show and measures the text of every tip.
+     */
+    void setTips(Tip tip, boolean highlighting, int scrimColor){
+        this.highlighting = highlighting;
+        this.scrimColor = scrimColor;
+        bubbles.clear();
+        pressedBubble = null;
+        do {
+            Bubble bubble = new Bubble(tip);
+            measureBubble(bubble);
+            bubbles.add(bubble);
+            tip = tip.sibling;
+        } while (tip != null);
+        invalidate();
+    }
+
+    private void measureBubble(Bubble bubble){
+        final Tip tip = bubble.tip;
+        final int padding = tip.padding;
+        final TextPaint paint = bubble.textPaint;
+        paint.setColor(tip.textColor);
+        paint.setTextSize(tip.textSize);
+
+        final int maxWidth = tip.maxWidth > 0 ? tip.maxWidth : maxTextWidth;
+        final CharSequence text = tip.text != null ? tip.text : "";
+        final float desiredWidth = Layout.getDesiredWidth(text, paint);
+        int bodyWidth = (int) Math.ceil(desiredWidth) + padding * 2;
+        bodyWidth = Math.min(Math.max(bodyWidth, tip.minWidth), maxWidth);
+        final int textWidth = Math.max(0, bodyWidth - padding * 2);
+
+        final Layout.Alignment alignment = tip.gravity == Tip.GRAVITY_START ?
+                Layout.Alignment.ALIGN_NORMAL : Layout.Alignment.ALIGN_CENTER;
+        bubble.layout = new StaticLayout(text, paint, textWidth,
+                alignment, 1F, 0F, true);
+        bubble.bodyWidth = bodyWidth;
+        bubble.bodyHeight = Math.max(bubble.layout.getHeight() + padding * 2, tip.minHeight);
+    }
+
+    int getBubbleCount(){
+        return bubbles.size();
+    }
+
+    Tip getTip(int index){
+        return bubbles.get(index).tip;
+    }
+
+    /**
+     * Places the bubble with the given index. The input must contain
+     * the geometry of the target, the offsets and the alignment of the
+     * tip, the size of the tip is set by this method.
+     */
+    void placeBubble(int index, PlacementInput input, Placement placement){
+        final Bubble bubble = bubbles.get(index);
+        final Tip tip = bubble.tip;
+        int align = tip.align;
+        if(align == Tip.ALIGN_AUTO){
+            // the alignment is determined by the size of the bubble
+            // with the pointer below the target, as for the tip views
+            setBubbleMode(bubble, TipView.MODE_BELOW_TARGET);
+            input.setTipSize(bubble.width, bubble.height, pointerSize);
+            align = PlacementEngine.determineAlignment(input);
+            input.setAlign(align);
+        }
+        setBubbleMode(bubble, AppTips.getTipViewMode(align));
+        input.setTipSize(bubble.width, bubble.height, pointerSize);
+        PlacementEngine.place(input, placement);
+
+        bubble.x = placement.getX();
+        bubble.y = placement.getY();
+        switch (placement.getPointerMode()){
+            case Placement.POINTER_CENTER:
+                bubble.pointerPosition = 0.5F;
+                bubble.pointerOffset = 0;
+                break;
+            case Placement.POINTER_OFFSET:
+                bubble.pointerOffset = placement.getPointerOffset();
+                break;
+            default:
+                bubble.pointerPosition = clampPointerPosition(tip.pointerPosition);
+                bubble.pointerOffset = tip.pointerOffset;
+                break;
+        }
+        updateBubblePath(bubble);
+        invalidate();
+    }
+
+    /**
+     * Sets the rectangle of the target of the bubble with the given
+     * index in screen coordinates. The target is cut out from the
+     * scrim if the highlighting is enabled.
+     */
+    void setBubbleTarget(int index, int left, int top, int right, int bottom){
+        bubbles.get(index).target.set(left, top, right, bottom);
+        invalidate();
+    }
+
+    /**
+     * Hides or shows the bubble with the given index, the hidden
+     * bubble is neither drawn nor touchable, it's target is not
+     * cut out from the scrim.
+     */
+    void setBubbleHidden(int index, boolean hidden){
+        Bubble bubble = bubbles.get(index);
+        if(bubble.hidden != hidden){
+            bubble.hidden = hidden;
+            if(bubble == pressedBubble){
+                pressedBubble = null;
+            }
+            invalidate();
+        }
+    }
+
+    private void setBubbleMode(Bubble bubble, int mode){
+        bubble.mode = mode;
+        final boolean vertical = mode == TipView.MODE_BELOW_TARGET ||
+                mode == TipView.MODE_ABOVE_TARGET;
+        bubble.width = bubble.bodyWidth + (vertical ? 0 : pointerSize);
+        bubble.height = bubble.bodyHeight + (vertical ? pointerSize : 0);
+    }
+
+    private static float clampPointerPosition(float position){
+        return Math.max(MIN_POINTER_POSITION, Math.min(MAX_POINTER_POSITION, position));
+    }
+
+    /**
+     * Rebuilds the outline of the bubble (the round rect and the
+     * pointer) in the coordinates of the bubble itself.
+     */
+    private void updateBubblePath(Bubble bubble){
+        final int width = bubble.width;
+        final int height = bubble.height;
+        final RectF rect = bodyRect;
+        switch (bubble.mode){
+            case TipView.MODE_BELOW_TARGET:
+                rect.set(0, pointerSize, width, height);
+                break;
+            case TipView.MODE_ABOVE_TARGET:
+                rect.set(0, 0, width, height - pointerSize);
+                break;
+            case TipView.MODE_TO_LEFT_TARGET:
+                rect.set(0, 0, width - pointerSize, height);
+                break;
+            default:
+                rect.set(pointerSize, 0, width, height);
+                break;
+        }
+        bubble.textLeft = rect.left + bubble.tip.padding;
+        final float freeHeight = rect.height() - bubble.layout.getHeight();
+        bubble.textTop = rect.top + Math.max(bubble.tip.padding, freeHeight / 2);
+
+        final float[] points = bubble.points;
+        PointerGeometry.computePoints(bubble.mode, width, height, pointerSize,
+                bubble.pointerPosition, bubble.pointerOffset, 1F, points);
+        final Path path = bubble.path;
+        path.rewind();
+        path.addRoundRect(rect, cornerRadius, cornerRadius, Path.Direction.CW);
+        path.moveTo(points[2], points[3]);
+        path.lineTo(points[0], points[1]);
+        path.lineTo(points[4], points[5]);
+        path.close();
+    }
+
+    /**
+     * Sets the position of this view on the screen.
+     */
+    void setOrigin(int x, int y){
+        originX = x;
+        originY = y;
+        invalidate();
+    }
+
+    /**
+     * Computes the union of the bounds of all the bubbles in screen
+     * coordinates.
+     */
+    void getBubblesBounds(Rect outRect){
+        outRect.setEmpty();
+        for(int i = 0, size = bubbles.size(); i < size; i++){
+            Bubble bubble = bubbles.get(i);
+            outRect.union(bubble.x, bubble.y,
+                    bubble.x + bubble.width, bubble.y + bubble.height);
+        }
+    }
+
+    /**
+     * Removes the bubble of the given tip. Returns true if there are
+     * no bubbles left and hence the next portion must be shown.
+     */
+    boolean removeTip(Tip tip){
+        boolean empty = true;
+        for(int i = 0, size = bubbles.size(); i < size; i++){
+            Bubble bubble = bubbles.get(i);
+            if(bubble.tip == tip){
+                bubble.removed = true;
+            } else if(!bubble.removed){
+                empty = false;
+            }
+        }
+        invalidate();
+        return empty;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final List<Bubble> bubbles = this.bubbles;
+        final int size = bubbles.size();
+        final int saveCount = canvas.save();
+        canvas.translate(-originX, -originY);
+        if(highlighting){
+            canvas.drawColor(scrimColor);
+            for(int i = 0; i < size; i++){
+                Bubble bubble = bubbles.get(i);
+                if(isBubbleShown(bubble) && !bubble.target.isEmpty()){
+                    canvas.drawRect(bubble.target, cutoutPaint);
+                }
+            }
+        }
+        for(int i = 0; i < size; i++){
+            Bubble bubble = bubbles.get(i);
+            if(!isBubbleShown(bubble)){
+                continue;
+            }
+            canvas.save();
+            canvas.translate(bubble.x, bubble.y);
+            bubblePaint.setColor(bubble.tip.color);
+            canvas.drawPath(bubble.path, bubblePaint);
+            canvas.translate(bubble.textLeft, bubble.textTop);
+            bubble.layout.draw(canvas);
+            canvas.restore();
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if(passingTouch){
+            // the rest of the passed touch is not received anymore
+            passingTouch = false;
+            final long now = SystemClock.uptimeMillis();
+            MotionEvent event = MotionEvent.obtain(now, now,
+                    MotionEvent.ACTION_CANCEL, 0F, 0F, 0);
+            callback.onPassTouch(event);
+            event.recycle();
+        }
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        final int action = event.getActionMasked();
+        final int x = (int) event.getX() + originX;
+        final int y = (int) event.getY() + originY;
+        if(passingTouch && action != MotionEvent.ACTION_DOWN){
+            passTouch(event);
+            if(action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL){
+                // the activity has received the whole touch
+                passingTouch = false;
+                callback.onOutsideTouch();
+            }
+            return true;
+        }
+        switch (action){
+            case MotionEvent.ACTION_OUTSIDE:
+                callback.onOutsideTouch();
+                return true;
+            case MotionEvent.ACTION_DOWN:
+                pressedBubble = findBubble(x, y);
+                if(pressedBubble == null){
+                    // only the scrim covers the activity between the bubbles,
+                    // otherwise the touch is passed to the activity just as
+                    // it is passed by the windows of the separate tip views
+                    if(!highlighting && passTouch(event)){
+                        passingTouch = true;
+                        return true;
+                    }
+                    callback.onOutsideTouch();
+                    return highlighting;
+                }
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if(pressedBubble != null && !isBubbleHit(pressedBubble, x, y)){
+                    pressedBubble = null;
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                Bubble bubble = pressedBubble;
+                pressedBubble = null;
+                if(bubble != null && isBubbleHit(bubble, x, y)){
+                    callback.onTipClick(bubble.tip);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                pressedBubble = null;
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Passes the given event to the activity in the screen coordinates,
+     * returns false if the touch is not passed by the callback.
+     */
+    private boolean passTouch(MotionEvent event){
+        event.offsetLocation(originX, originY);
+        final boolean passed = callback.onPassTouch(event);
+        event.offsetLocation(-originX, -originY);
+        return passed;
+    }
+
+    /**
+     * Finds the topmost bubble that contains the given point, if the
+     * highlighting is enabled the targets of the bubbles are also taken
+     * into account, just as the highlighting views do.
+     */
+    private Bubble findBubble(int x, int y){
+        final List<Bubble> bubbles = this.bubbles;
+        for(int i = bubbles.size() - 1; i >= 0; i--){
+            Bubble bubble = bubbles.get(i);
+            if(isBubbleShown(bubble) && isBubbleHit(bubble, x, y)){
+                return bubble;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBubbleShown(Bubble bubble){
+        return !bubble.removed && !bubble.hidden;
+    }
+
+    private boolean isBubbleHit(Bubble bubble, int x, int y){
+        final int left = bubble.x;
+        final int top = bubble.y;
+        final boolean inBubble = x >= left && x < left + bubble.width &&
+                y >= top && y < top + bubble.height;
+        return inBubble || highlighting && bubble.target.contains(x, y);
+    }
+
+    /**
+     * Layout and drawing state of a single tip.
+     */
+    private static final class Bubble {
+
+        final Tip tip;
+        final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        final Path path = new Path();
+        final float[] points = new float[PointerGeometry.POINTS_SIZE];
+        final Rect target = new Rect();
+
+        StaticLayout layout;
+        int bodyWidth;
+        int bodyHeight;
+        int mode;
+        int width;
+        int height;
+        int x;
+        int y;
+        float pointerPosition = 0.5F;
+        int pointerOffset;
+        float textLeft;
+        float textTop;
+        boolean removed;
+        boolean hidden;
+
+        Bubble(Tip tip){
+            this.tip = tip;
+        }
+    }
+
+    /**
+     * Receives the touches that are handled by the overlay.
+     */
+    interface Callback {
+
+        /**
+         * Called when the bubble of the tip (or it's highlighted
+         * target) is clicked.
+         */
+        void onTipClick(Tip tip);
+
+        /**
+         * Called when the user touches the screen outside of the
+         * bubbles.
+         */
+        void onOutsideTouch();
+
+        /**
+         * Called with the events of a touch that hits no bubble while
+         * the highlighting is disabled, the location of the event is in
+         * the screen coordinates. Returns false if the touch is not
+         * passed, then it is not taken by the overlay and reaches the
+         * activity by itself.
+         */
+        boolean onPassTouch(MotionEvent event);
+    }
+}
@@ -0,0 +1,175 @@
+package com.imogene.apptips;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an {@link AppTips} object that outlives it's screen does
+ * not retain the activity, the target views and the highlighting bitmaps
+ * once it is destroyed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class AppTipsRetentionTest {
+
+    private static final int GC_ATTEMPTS = 20;
+
+    private ActivityController<TestActivity> controller;
+    private long bitmapPoolMaxSize;
+
+    @Before
+    public void setUp(){
+        // the released bitmaps would be kept by the shared pool otherwise
+        HighlightBitmapPool bitmapPool = HighlightBitmapPool.getInstance();
+        bitmapPoolMaxSize = bitmapPool.getMaxSize();
+        bitmapPool.setMaxSize(0);
+        controller = Robolectric.buildActivity(TestActivity.class).setup();
+    }
+
+    @After
+    public void tearDown(){
+        HighlightBitmapPool.getInstance().setMaxSize(bitmapPoolMaxSize);
+    }
+
+    @Test
+    public void destroyReleasesActivityTargetsAndBitmaps(){
+        AppTips appTips = new AppTips(controller.get());
+        List<WeakReference<Object>> references = showTips(appTips);
+
+        appTips.destroy();
+        destroyActivity();
+
+        assertTrue(appTips.isDestroyed());
+        assertFalse(appTips.isShown());
+        assertCollected(references);
+    }
+
+    @Test
+    public void lifecycleDestroyReleasesActivityTargetsAndBitmaps(){
+        AppTips appTips = new AppTips(controller.get());
+        appTips.bindToLifecycle();
+        List<WeakReference<Object>> references = showTips(appTips);
+
+        destroyActivity();
+
+        assertTrue(appTips.isDestroyed());
+        assertFalse(appTips.isShown());
+        assertCollected(references);
+    }
+
+    @Test
+    public void showIsIgnoredAfterDestroy(){
+        AppTips appTips = new AppTips(controller.get());
+        appTips.bindToLifecycle();
+        List<WeakReference<Object>> references = showTips(appTips);
+
+        destroyActivity();
+        appTips.show();
+        appTips.showNext();
+
+        assertFalse(appTips.isShown());
+        assertCollected(references);
+    }
+
+    /**
+     * Shows a portion of tips with a target specified by the view and
+     * a target specified by the id. Returns the weak references to the
+     * activity, the targets and the highlighting bitmaps, the strong
+     * references do not outlive this method.
+     */
+    private List<WeakReference<Object>> showTips(AppTips appTips){
+        TestActivity activity = controller.get();
+        Tip viewTip = appTips.newTip(activity.findViewById(TestActivity.FIRST_TARGET_ID), "First");
+        Tip idTip = appTips.newTip(TestActivity.SECOND_TARGET_ID, "Second");
+        appTips.addTips(viewTip, idTip);
+        appTips.show();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertTrue(appTips.isShown());
+
+        List<WeakReference<Object>> references = new ArrayList<>();
+        references.add(new WeakReference<Object>(activity));
+        references.add(new WeakReference<Object>(activity.findViewById(TestActivity.FIRST_TARGET_ID)));
+        references.add(new WeakReference<Object>(activity.findViewById(TestActivity.SECOND_TARGET_ID)));
+        for(Tip tip = viewTip; tip != null; tip = tip.sibling){
+            Bitmap bitmap = tip.highlightingBitmap;
+            assertNotNull(bitmap);
+            references.add(new WeakReference<Object>(bitmap));
+        }
+        return references;
+    }
+
+    private void destroyActivity(){
+        controller.pause().stop().destroy();
+        controller = null;
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private static void assertCollected(List<WeakReference<Object>> references){
+        for(int i = 0; i < GC_ATTEMPTS && !isCollected(references); i++){
+            Runtime.getRuntime().gc();
+            Runtime.getRuntime().runFinalization();
+        }
+        for(int i = 0, size = references.size(); i < size; i++){
+            assertNull("Reference " + i + " is retained.", references.get(i).get());
+        }
+    }
+
+    private static boolean isCollected(List<WeakReference<Object>> references){
+        for(int i = 0, size = references.size(); i < size; i++){
+            if(references.get(i).get() != null){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class TestActivity extends FragmentActivity {
+
+        static final int FIRST_TARGET_ID = 1;
+        static final int SECOND_TARGET_ID = 2;
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            setTheme(R.style.Theme_AppCompat_Light);
+            super.onCreate(savedInstanceState);
+            FrameLayout root = new FrameLayout(this);
+            root.addView(newTarget(FIRST_TARGET_ID), newTargetLayoutParams(100));
+            root.addView(newTarget(SECOND_TARGET_ID), newTargetLayoutParams(400));
+            setContentView(root);
+        }
+
+        private View newTarget(int id){
+            View target = new View(this);
+            target.setId(id);
+            return target;
+        }
+
+        private FrameLayout.LayoutParams newTargetLayoutParams(int top){
+            FrameLayout.LayoutParams lp = new FrameLayout.LayoutParams(200, 100);
+            lp.topMargin = top;
+            return lp;
+        }
+    }
+}